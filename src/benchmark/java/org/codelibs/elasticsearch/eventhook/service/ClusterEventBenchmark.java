@@ -0,0 +1,72 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ClusterEventBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int nodeSize;
+
+    @Param({ "100", "5000", "50000" })
+    public int indexSize;
+
+    private ClusterState previousState;
+
+    private ClusterState nodeLeftState;
+
+    private ClusterState indexCreatedState;
+
+    @Setup
+    public void setup() {
+        final DiscoveryNodes nodes = ClusterStates.createNodes(nodeSize);
+        final MetaData metaData = ClusterStates.createMetaData(indexSize);
+        previousState = ClusterStates.createState(nodes, metaData);
+        nodeLeftState = ClusterStates.createState(
+                DiscoveryNodes.builder(nodes).remove("node1").build(),
+                metaData);
+        indexCreatedState = ClusterStates.createState(nodes,
+                ClusterStates.createMetaData(indexSize, "logs-1"));
+    }
+
+    @Benchmark
+    public int nodeLeftKinds() {
+        return EventKind.classify(new ClusterChangedEvent("node_left",
+                nodeLeftState, previousState), EventKind.ALL_MASK);
+    }
+
+    @Benchmark
+    public int indexCreatedKinds() {
+        return EventKind.classify(new ClusterChangedEvent("create-index",
+                indexCreatedState, previousState), EventKind.ALL_MASK);
+    }
+
+    // what a script checking event.indicesCreated() pays for
+    @Benchmark
+    public List<String> indicesCreated() {
+        return new ClusterChangedEvent("create-index", indexCreatedState,
+                previousState).indicesCreated();
+    }
+}
@@ -0,0 +1,66 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.collect.ImmutableMap;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+
+final class ClusterStates {
+
+    private static final ClusterName CLUSTER_NAME = new ClusterName(
+            "benchmark");
+
+    private static final Settings INDEX_SETTINGS = ImmutableSettings
+            .settingsBuilder()
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+            .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .build();
+
+    private ClusterStates() {
+    }
+
+    // node0 is a local master node, and every 10th node is a client node
+    static DiscoveryNodes createNodes(final int size) {
+        final DiscoveryNodes.Builder builder = DiscoveryNodes.builder();
+        for (int i = 0; i < size; i++) {
+            builder.put(createNode(i));
+        }
+        return builder.localNodeId("node0").masterNodeId("node0").build();
+    }
+
+    static DiscoveryNode createNode(final int number) {
+        final String id = "node" + number;
+        return new DiscoveryNode(id, id, DummyTransportAddress.INSTANCE,
+                ImmutableMap.of("rack", "r" + number % 3, "data",
+                        String.valueOf(number % 10 != 9)), Version.CURRENT);
+    }
+
+    static MetaData createMetaData(final int size, final String... others) {
+        final MetaData.Builder builder = MetaData.builder();
+        for (int i = 0; i < size; i++) {
+            builder.put(createIndex("index" + i));
+        }
+        for (final String index : others) {
+            builder.put(createIndex(index));
+        }
+        return builder.build();
+    }
+
+    private static IndexMetaData.Builder createIndex(final String index) {
+        return IndexMetaData.builder(index).settings(INDEX_SETTINGS);
+    }
+
+    static ClusterState createState(final DiscoveryNodes nodes,
+            final MetaData metaData) {
+        return ClusterState.builder(CLUSTER_NAME).nodes(nodes)
+                .metaData(metaData).build();
+    }
+}
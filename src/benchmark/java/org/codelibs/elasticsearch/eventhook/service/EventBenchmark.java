@@ -0,0 +1,52 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class EventBenchmark {
+
+    private static final ESLogger logger = Loggers
+            .getLogger(EventBenchmark.class);
+
+    @Param({ "zen-disco-node_left([node5][n5][inet[/127.0.0.1:9305]])",
+            "shard-started ([test][0], node[n1], [P], s[INITIALIZING])",
+            "create-index [logs-1], cause [api]" })
+    public String source;
+
+    @Benchmark
+    public String eventType() {
+        return EventHookService.toEventType(source);
+    }
+
+    // the implementation before the event type was parsed by hand
+    @Benchmark
+    public String eventTypeRegex() {
+        return source.replaceAll("[\\(\\[].*", "").trim()
+                .replaceAll("[\\s\\-]", "_");
+    }
+
+    @Benchmark
+    public Map<String, Object> eventVars() {
+        return new EventHookContext(source, null, null, null, true, null,
+                null, logger).vars();
+    }
+}
@@ -0,0 +1,108 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class HookLookupBenchmark {
+
+    private static final String EVENT_TYPE = "create_index";
+
+    @Param({ "10", "100", "1000" })
+    public int nodeSize;
+
+    @Param({ "100", "5000", "50000" })
+    public int indexSize;
+
+    private HookSet hookSet;
+
+    private DiscoveryNodes nodes;
+
+    private ClusterChangedEvent event;
+
+    @Setup
+    public void setup() {
+        nodes = ClusterStates.createNodes(nodeSize);
+        final MetaData metaData = ClusterStates.createMetaData(indexSize);
+        final ClusterState previousState = ClusterStates.createState(nodes,
+                metaData);
+        final ClusterState state = ClusterStates.createState(nodes,
+                ClusterStates.createMetaData(indexSize, "logs-1"));
+        event = new ClusterChangedEvent(EVENT_TYPE, state, previousState);
+
+        // 100 hooks in a typical mix
+        final List<Hook> hooks = new ArrayList<Hook>();
+        for (int i = 0; i < 50; i++) {
+            hooks.add(createHook("other" + i, "other_type" + i % 10, i, null));
+        }
+        for (int i = 0; i < 10; i++) {
+            hooks.add(createHook("typed" + i, EVENT_TYPE, i, null));
+        }
+        for (int i = 0; i < 10; i++) {
+            hooks.add(createHook("all" + i, HookSet.ALL_TYPE, i, null));
+        }
+        for (int i = 0; i < 10; i++) {
+            final Map<String, Object> source = new HashMap<String, Object>();
+            source.put("kinds", Arrays.asList("indices_created"));
+            hooks.add(createHook("kinds" + i, "unused", i, source));
+        }
+        for (int i = 0; i < 10; i++) {
+            final Map<String, Object> source = new HashMap<String, Object>();
+            source.put("run_on", i % 2 == 0 ? "master" : "rack=r1");
+            hooks.add(createHook("run_on" + i, EVENT_TYPE, i, source));
+        }
+        for (int i = 0; i < 10; i++) {
+            final Map<String, Object> source = new HashMap<String, Object>();
+            source.put("filter",
+                    ImmutableMap.of("indices", Arrays.asList("logs-*")));
+            hooks.add(createHook("filter" + i, EVENT_TYPE, i, source));
+        }
+        hookSet = new HookSet(hooks);
+    }
+
+    private static Hook createHook(final String id, final String type,
+            final long priority, final Map<String, Object> source) {
+        final Map<String, Object> map = source != null ? source
+                : new HashMap<String, Object>();
+        map.put("priority", priority);
+        map.put("lang", "groovy");
+        map.put("script", "true");
+        return new Hook(id, type, 1, map);
+    }
+
+    @Benchmark
+    public List<Hook> lookup() {
+        return hookSet.get(EVENT_TYPE, event, nodes, true);
+    }
+
+    @Benchmark
+    public List<Hook> lookupOnMaster() {
+        return hookSet.get("on_master", null, nodes, true);
+    }
+}
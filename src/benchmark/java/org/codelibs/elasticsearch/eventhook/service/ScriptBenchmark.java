@@ -0,0 +1,93 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.script.groovy.GroovyScriptEngineService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ScriptBenchmark {
+
+    private static final ESLogger logger = Loggers
+            .getLogger(ScriptBenchmark.class);
+
+    private static final String SCRIPT = "isMaster && eventType == \"create_index\"";
+
+    private GroovyScriptEngineService groovy;
+
+    private Object compiled;
+
+    private EventHook eventHook;
+
+    @Setup
+    public void setup() {
+        groovy = new GroovyScriptEngineService(ImmutableSettings.EMPTY);
+        compiled = groovy.compile(SCRIPT);
+        eventHook = new EventHook() {
+            @Override
+            public String id() {
+                return "benchmark";
+            }
+
+            @Override
+            public String type() {
+                return "create_index";
+            }
+
+            @Override
+            public long priority() {
+                return 1;
+            }
+
+            @Override
+            public boolean execute(final EventHookContext context) {
+                return context.isMaster()
+                        && "create_index".equals(context.eventType());
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        groovy.close();
+    }
+
+    private static EventHookContext createContext() {
+        return new EventHookContext("create_index", null, null, null, true,
+                null, null, logger);
+    }
+
+    // without ScriptCache, every event compiles a script
+    @Benchmark
+    public Object compile() {
+        return groovy.compile(SCRIPT);
+    }
+
+    @Benchmark
+    public Object execute() {
+        return groovy.executable(compiled, createContext().vars()).run();
+    }
+
+    @Benchmark
+    public boolean executeNative() {
+        return eventHook.execute(createContext());
+    }
+}
@@ -2,14 +2,40 @@ package org.codelibs.elasticsearch.eventhook;
 
 import java.util.Collection;
 
+import org.codelibs.elasticsearch.eventhook.action.history.EventHookHistoryAction;
+import org.codelibs.elasticsearch.eventhook.action.history.TransportEventHookHistoryAction;
+import org.codelibs.elasticsearch.eventhook.action.settings.EventHookSettingsAction;
+import org.codelibs.elasticsearch.eventhook.action.settings.TransportEventHookSettingsAction;
+import org.codelibs.elasticsearch.eventhook.action.stats.EventHookStatsAction;
+import org.codelibs.elasticsearch.eventhook.action.stats.TransportEventHookStatsAction;
 import org.codelibs.elasticsearch.eventhook.module.EventHookModule;
+import org.codelibs.elasticsearch.eventhook.rest.RestEventHookHistoryAction;
+import org.codelibs.elasticsearch.eventhook.rest.RestEventHookStatsAction;
+import org.codelibs.elasticsearch.eventhook.service.EventHookConfig;
 import org.codelibs.elasticsearch.eventhook.service.EventHookService;
+import org.codelibs.elasticsearch.eventhook.service.HookExecutor;
+import org.elasticsearch.action.ActionModule;
+import org.elasticsearch.cluster.settings.ClusterDynamicSettingsModule;
+import org.elasticsearch.cluster.settings.Validator;
 import org.elasticsearch.common.collect.Lists;
 import org.elasticsearch.common.component.LifecycleComponent;
 import org.elasticsearch.common.inject.Module;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.plugins.AbstractPlugin;
+import org.elasticsearch.rest.RestModule;
 
 public class EventHookPlugin extends AbstractPlugin {
+    private static final String THREAD_POOL_PREFIX = "threadpool."
+            + HookExecutor.THREAD_POOL_NAME + ".";
+
+    private final Settings settings;
+
+    public EventHookPlugin(final Settings settings) {
+        this.settings = settings;
+    }
+
     @Override
     public String name() {
         return "EventHookPlugin";
@@ -20,6 +46,64 @@ public class EventHookPlugin extends AbstractPlugin {
         return "This is a elasticsearch-eventhook plugin.";
     }
 
+    // for Action
+    public void onModule(final ActionModule module) {
+        module.registerAction(EventHookSettingsAction.INSTANCE,
+                TransportEventHookSettingsAction.class);
+        module.registerAction(EventHookStatsAction.INSTANCE,
+                TransportEventHookStatsAction.class);
+        module.registerAction(EventHookHistoryAction.INSTANCE,
+                TransportEventHookHistoryAction.class);
+    }
+
+    // for Rest API
+    public void onModule(final RestModule module) {
+        module.addRestAction(RestEventHookStatsAction.class);
+        module.addRestAction(RestEventHookHistoryAction.class);
+    }
+
+    // for Cluster Settings
+    public void onModule(final ClusterDynamicSettingsModule module) {
+        module.addDynamicSetting(EventHookConfig.CLUSTER_EVENTHOOK_ENABLE,
+                Validator.BOOLEAN);
+        module.addDynamicSetting(EventHookConfig.CLUSTER_EVENTHOOK_INDEX,
+                Validator.EMPTY);
+        module.addDynamicSetting(EventHookConfig.CLUSTER_EVENTHOOK_SIZE,
+                Validator.POSITIVE_INTEGER);
+        module.addDynamicSetting(EventHookConfig.CLUSTER_EVENTHOOK_LOGGER,
+                Validator.EMPTY);
+        module.addDynamicSetting(
+                EventHookConfig.CLUSTER_EVENTHOOK_REJECTION_POLICY,
+                EventHookConfig.REJECTION_POLICY_VALIDATOR);
+        module.addDynamicSetting(
+                EventHookConfig.CLUSTER_EVENTHOOK_SCRIPT_TIMEOUT,
+                Validator.TIME_NON_NEGATIVE);
+        module.addDynamicSetting(EventHookConfig.CLUSTER_EVENTHOOK_COALESCE
+                + "*", Validator.TIME_NON_NEGATIVE);
+        module.addDynamicSetting(EventHookConfig.CLUSTER_EVENTHOOK_RATE_LIMIT,
+                EventHookConfig.RATE_LIMIT_VALIDATOR);
+    }
+
+    // for ThreadPool
+    @Override
+    public Settings additionalSettings() {
+        final int availableProcessors = EsExecutors
+                .boundedNumberOfProcessors(settings);
+        final ImmutableSettings.Builder builder = ImmutableSettings
+                .settingsBuilder();
+        // plugin settings are applied over node settings
+        putIfAbsent(builder, THREAD_POOL_PREFIX + "type", "fixed");
+        putIfAbsent(builder, THREAD_POOL_PREFIX + "size",
+                Integer.toString(Math.min((availableProcessors + 1) / 2, 5)));
+        putIfAbsent(builder, THREAD_POOL_PREFIX + "queue_size", "1000");
+        return builder.build();
+    }
+
+    private void putIfAbsent(final ImmutableSettings.Builder builder,
+            final String key, final String value) {
+        builder.put(key, settings.get(key, value));
+    }
+
     // for Service
     @Override
     public Collection<Class<? extends Module>> modules() {
@@ -0,0 +1,28 @@
+package org.codelibs.elasticsearch.eventhook.action.history;
+
+import org.elasticsearch.action.admin.cluster.ClusterAction;
+import org.elasticsearch.client.ClusterAdminClient;
+
+public class EventHookHistoryAction
+        extends
+        ClusterAction<EventHookHistoryRequest, EventHookHistoryResponse, EventHookHistoryRequestBuilder> {
+
+    public static final EventHookHistoryAction INSTANCE = new EventHookHistoryAction();
+
+    public static final String NAME = "cluster:monitor/eventhook/history";
+
+    private EventHookHistoryAction() {
+        super(NAME);
+    }
+
+    @Override
+    public EventHookHistoryResponse newResponse() {
+        return new EventHookHistoryResponse();
+    }
+
+    @Override
+    public EventHookHistoryRequestBuilder newRequestBuilder(
+            final ClusterAdminClient client) {
+        return new EventHookHistoryRequestBuilder(client);
+    }
+}
@@ -0,0 +1,56 @@
+package org.codelibs.elasticsearch.eventhook.action.history;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.support.nodes.NodesOperationRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+public class EventHookHistoryRequest extends
+        NodesOperationRequest<EventHookHistoryRequest> {
+
+    private int size = 100;
+
+    private String[] hooks;
+
+    public EventHookHistoryRequest(final String... nodesIds) {
+        super(nodesIds);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the max number of entries in a response
+    public EventHookHistoryRequest size(final int size) {
+        this.size = size;
+        return this;
+    }
+
+    public String[] hooks() {
+        return hooks;
+    }
+
+    // type/id patterns like node_left/*
+    public EventHookHistoryRequest hooks(final String... hooks) {
+        this.hooks = hooks;
+        return this;
+    }
+
+    @Override
+    public void readFrom(final StreamInput in) throws IOException {
+        super.readFrom(in);
+        size = in.readVInt();
+        hooks = in.readStringArray();
+        if (hooks.length == 0) {
+            hooks = null;
+        }
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(size);
+        out.writeStringArrayNullable(hooks);
+    }
+}
@@ -0,0 +1,30 @@
+package org.codelibs.elasticsearch.eventhook.action.history;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.nodes.NodesOperationRequestBuilder;
+import org.elasticsearch.client.ClusterAdminClient;
+
+public class EventHookHistoryRequestBuilder
+        extends
+        NodesOperationRequestBuilder<EventHookHistoryRequest, EventHookHistoryResponse, EventHookHistoryRequestBuilder> {
+
+    public EventHookHistoryRequestBuilder(final ClusterAdminClient client) {
+        super(client, new EventHookHistoryRequest());
+    }
+
+    public EventHookHistoryRequestBuilder setSize(final int size) {
+        request.size(size);
+        return this;
+    }
+
+    public EventHookHistoryRequestBuilder setHooks(final String... hooks) {
+        request.hooks(hooks);
+        return this;
+    }
+
+    @Override
+    protected void doExecute(
+            final ActionListener<EventHookHistoryResponse> listener) {
+        client.execute(EventHookHistoryAction.INSTANCE, request, listener);
+    }
+}
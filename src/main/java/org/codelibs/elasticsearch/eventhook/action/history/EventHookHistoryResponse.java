@@ -0,0 +1,98 @@
+package org.codelibs.elasticsearch.eventhook.action.history;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.codelibs.elasticsearch.eventhook.service.HookHistory;
+import org.elasticsearch.action.support.nodes.NodesOperationResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+public class EventHookHistoryResponse extends
+        NodesOperationResponse<NodeEventHookHistory> implements ToXContent {
+
+    private static final Comparator<HookHistory.Entry> NEWER_FIRST = new Comparator<HookHistory.Entry>() {
+        @Override
+        public int compare(final HookHistory.Entry o1,
+                final HookHistory.Entry o2) {
+            if (o1.startTime() != o2.startTime()) {
+                return o1.startTime() > o2.startTime() ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    private int size;
+
+    EventHookHistoryResponse() {
+    }
+
+    EventHookHistoryResponse(final ClusterName clusterName,
+            final NodeEventHookHistory[] nodes, final int size) {
+        super(clusterName, nodes);
+        this.size = size;
+    }
+
+    // merges entries of all nodes, newer entries first
+    public List<HookHistory.Entry> getEntries() {
+        final List<HookHistory.Entry> entries = new ArrayList<HookHistory.Entry>();
+        for (final NodeEventHookHistory node : nodes) {
+            entries.addAll(node.getEntries());
+        }
+        Collections.sort(entries, NEWER_FIRST);
+        if (entries.size() > size) {
+            return entries.subList(0, size);
+        }
+        return entries;
+    }
+
+    @Override
+    public void readFrom(final StreamInput in) throws IOException {
+        super.readFrom(in);
+        size = in.readVInt();
+        nodes = new NodeEventHookHistory[in.readVInt()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = NodeEventHookHistory.readNodeEventHookHistory(in);
+        }
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(size);
+        out.writeVInt(nodes.length);
+        for (final NodeEventHookHistory node : nodes) {
+            node.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder,
+            final Params params) throws IOException {
+        builder.field("cluster_name", getClusterName().value());
+
+        builder.startObject("nodes");
+        for (final NodeEventHookHistory node : nodes) {
+            builder.startObject(node.getNode().id(),
+                    XContentBuilder.FieldCaseConversion.NONE);
+            builder.field("name", node.getNode().name(),
+                    XContentBuilder.FieldCaseConversion.NONE);
+            builder.field("recorded", node.getRecordedCount());
+            builder.endObject();
+        }
+        builder.endObject();
+
+        builder.startArray("history");
+        for (final HookHistory.Entry entry : getEntries()) {
+            entry.toXContent(builder, params);
+        }
+        builder.endArray();
+        return builder;
+    }
+}
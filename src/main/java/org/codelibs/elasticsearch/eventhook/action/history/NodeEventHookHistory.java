@@ -0,0 +1,68 @@
+package org.codelibs.elasticsearch.eventhook.action.history;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codelibs.elasticsearch.eventhook.service.HookHistory;
+import org.elasticsearch.action.support.nodes.NodeOperationResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+public class NodeEventHookHistory extends NodeOperationResponse {
+
+    private long recordedCount;
+
+    private List<HookHistory.Entry> entries;
+
+    NodeEventHookHistory() {
+    }
+
+    NodeEventHookHistory(final DiscoveryNode node,
+            final HookHistory hookHistory, final int size,
+            final String[] hooks) {
+        super(node);
+        recordedCount = hookHistory.recordedCount();
+        entries = hookHistory.entries(size, hooks);
+        for (final HookHistory.Entry entry : entries) {
+            entry.node(node.name());
+        }
+    }
+
+    public static NodeEventHookHistory readNodeEventHookHistory(
+            final StreamInput in) throws IOException {
+        final NodeEventHookHistory history = new NodeEventHookHistory();
+        history.readFrom(in);
+        return history;
+    }
+
+    public long getRecordedCount() {
+        return recordedCount;
+    }
+
+    public List<HookHistory.Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public void readFrom(final StreamInput in) throws IOException {
+        super.readFrom(in);
+        recordedCount = in.readVLong();
+        final int size = in.readVInt();
+        entries = new ArrayList<HookHistory.Entry>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(HookHistory.Entry.readEntry(in));
+        }
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVLong(recordedCount);
+        out.writeVInt(entries.size());
+        for (final HookHistory.Entry entry : entries) {
+            entry.writeTo(out);
+        }
+    }
+}
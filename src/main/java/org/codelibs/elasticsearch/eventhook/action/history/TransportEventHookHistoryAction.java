@@ -0,0 +1,122 @@
+package org.codelibs.elasticsearch.eventhook.action.history;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.codelibs.elasticsearch.eventhook.service.EventHookService;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.NodeOperationRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesOperationAction;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+public class TransportEventHookHistoryAction
+        extends
+        TransportNodesOperationAction<EventHookHistoryRequest, EventHookHistoryResponse, TransportEventHookHistoryAction.NodeRequest, NodeEventHookHistory> {
+
+    // the service depends on Client, which depends on this action
+    private final Provider<EventHookService> eventHookServiceProvider;
+
+    @Inject
+    public TransportEventHookHistoryAction(final Settings settings,
+            final ClusterName clusterName, final ThreadPool threadPool,
+            final ClusterService clusterService,
+            final TransportService transportService,
+            final ActionFilters actionFilters,
+            final Provider<EventHookService> eventHookServiceProvider) {
+        super(settings, EventHookHistoryAction.NAME, clusterName, threadPool,
+                clusterService, transportService, actionFilters);
+        this.eventHookServiceProvider = eventHookServiceProvider;
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.MANAGEMENT;
+    }
+
+    @Override
+    protected EventHookHistoryRequest newRequest() {
+        return new EventHookHistoryRequest();
+    }
+
+    @Override
+    protected EventHookHistoryResponse newResponse(
+            final EventHookHistoryRequest request,
+            final AtomicReferenceArray responses) {
+        final List<NodeEventHookHistory> nodes = new ArrayList<NodeEventHookHistory>();
+        for (int i = 0; i < responses.length(); i++) {
+            final Object response = responses.get(i);
+            if (response instanceof NodeEventHookHistory) {
+                nodes.add((NodeEventHookHistory) response);
+            }
+        }
+        return new EventHookHistoryResponse(clusterName,
+                nodes.toArray(new NodeEventHookHistory[nodes.size()]),
+                request.size());
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest() {
+        return new NodeRequest();
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(final String nodeId,
+            final EventHookHistoryRequest request) {
+        return new NodeRequest(nodeId, request);
+    }
+
+    @Override
+    protected NodeEventHookHistory newNodeResponse() {
+        return new NodeEventHookHistory();
+    }
+
+    @Override
+    protected NodeEventHookHistory nodeOperation(final NodeRequest request)
+            throws ElasticsearchException {
+        return new NodeEventHookHistory(clusterService.localNode(),
+                eventHookServiceProvider.get().hookHistory(),
+                request.request.size(), request.request.hooks());
+    }
+
+    @Override
+    protected boolean accumulateExceptions() {
+        return false;
+    }
+
+    static class NodeRequest extends NodeOperationRequest {
+
+        EventHookHistoryRequest request;
+
+        NodeRequest() {
+        }
+
+        NodeRequest(final String nodeId, final EventHookHistoryRequest request) {
+            super(request, nodeId);
+            this.request = request;
+        }
+
+        @Override
+        public void readFrom(final StreamInput in) throws IOException {
+            super.readFrom(in);
+            request = new EventHookHistoryRequest();
+            request.readFrom(in);
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+}
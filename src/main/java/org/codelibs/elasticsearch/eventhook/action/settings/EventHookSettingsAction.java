@@ -0,0 +1,28 @@
+package org.codelibs.elasticsearch.eventhook.action.settings;
+
+import org.elasticsearch.action.admin.cluster.ClusterAction;
+import org.elasticsearch.client.ClusterAdminClient;
+
+public class EventHookSettingsAction
+        extends
+        ClusterAction<EventHookSettingsRequest, EventHookSettingsResponse, EventHookSettingsRequestBuilder> {
+
+    public static final EventHookSettingsAction INSTANCE = new EventHookSettingsAction();
+
+    public static final String NAME = "cluster:admin/eventhook/settings/update";
+
+    private EventHookSettingsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public EventHookSettingsResponse newResponse() {
+        return new EventHookSettingsResponse();
+    }
+
+    @Override
+    public EventHookSettingsRequestBuilder newRequestBuilder(
+            final ClusterAdminClient client) {
+        return new EventHookSettingsRequestBuilder(client);
+    }
+}
@@ -0,0 +1,74 @@
+package org.codelibs.elasticsearch.eventhook.action.settings;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+import static org.elasticsearch.common.settings.ImmutableSettings.readSettingsFromStream;
+import static org.elasticsearch.common.settings.ImmutableSettings.writeSettingsToStream;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.master.MasterNodeOperationRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+
+public class EventHookSettingsRequest extends
+        MasterNodeOperationRequest<EventHookSettingsRequest> {
+
+    private Settings transientSettings = ImmutableSettings.EMPTY;
+
+    private Settings persistentSettings = ImmutableSettings.EMPTY;
+
+    public EventHookSettingsRequest() {
+    }
+
+    public EventHookSettingsRequest(final Settings transientSettings,
+            final Settings persistentSettings) {
+        this.transientSettings = transientSettings;
+        this.persistentSettings = persistentSettings;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = null;
+        if (transientSettings.getAsMap().isEmpty()
+                && persistentSettings.getAsMap().isEmpty()) {
+            validationException = addValidationError(
+                    "no settings to update", validationException);
+        }
+        return validationException;
+    }
+
+    public Settings transientSettings() {
+        return transientSettings;
+    }
+
+    public EventHookSettingsRequest transientSettings(final Settings settings) {
+        transientSettings = settings;
+        return this;
+    }
+
+    public Settings persistentSettings() {
+        return persistentSettings;
+    }
+
+    public EventHookSettingsRequest persistentSettings(final Settings settings) {
+        persistentSettings = settings;
+        return this;
+    }
+
+    @Override
+    public void readFrom(final StreamInput in) throws IOException {
+        super.readFrom(in);
+        transientSettings = readSettingsFromStream(in);
+        persistentSettings = readSettingsFromStream(in);
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        writeSettingsToStream(transientSettings, out);
+        writeSettingsToStream(persistentSettings, out);
+    }
+}
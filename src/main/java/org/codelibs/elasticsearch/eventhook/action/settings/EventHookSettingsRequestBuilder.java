@@ -0,0 +1,33 @@
+package org.codelibs.elasticsearch.eventhook.action.settings;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.master.MasterNodeOperationRequestBuilder;
+import org.elasticsearch.client.ClusterAdminClient;
+import org.elasticsearch.common.settings.Settings;
+
+public class EventHookSettingsRequestBuilder
+        extends
+        MasterNodeOperationRequestBuilder<EventHookSettingsRequest, EventHookSettingsResponse, EventHookSettingsRequestBuilder, ClusterAdminClient> {
+
+    public EventHookSettingsRequestBuilder(final ClusterAdminClient client) {
+        super(client, new EventHookSettingsRequest());
+    }
+
+    public EventHookSettingsRequestBuilder setTransientSettings(
+            final Settings settings) {
+        request.transientSettings(settings);
+        return this;
+    }
+
+    public EventHookSettingsRequestBuilder setPersistentSettings(
+            final Settings settings) {
+        request.persistentSettings(settings);
+        return this;
+    }
+
+    @Override
+    protected void doExecute(
+            final ActionListener<EventHookSettingsResponse> listener) {
+        client.execute(EventHookSettingsAction.INSTANCE, request, listener);
+    }
+}
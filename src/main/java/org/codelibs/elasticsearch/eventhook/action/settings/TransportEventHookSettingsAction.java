@@ -0,0 +1,174 @@
+package org.codelibs.elasticsearch.eventhook.action.settings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.cluster.settings.ClusterUpdateSettingsRequest;
+import org.elasticsearch.action.admin.cluster.settings.ClusterUpdateSettingsResponse;
+import org.elasticsearch.action.admin.cluster.settings.TransportClusterUpdateSettingsAction;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.master.TransportMasterNodeOperationAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+public class TransportEventHookSettingsAction
+        extends
+        TransportMasterNodeOperationAction<EventHookSettingsRequest, EventHookSettingsResponse> {
+
+    private final TransportClusterUpdateSettingsAction updateSettingsAction;
+
+    private final List<PendingUpdate> pendingUpdates = new ArrayList<PendingUpdate>();
+
+    private boolean inFlight = false;
+
+    @Inject
+    public TransportEventHookSettingsAction(final Settings settings,
+            final TransportService transportService,
+            final ClusterService clusterService, final ThreadPool threadPool,
+            final ActionFilters actionFilters,
+            final TransportClusterUpdateSettingsAction updateSettingsAction) {
+        super(settings, EventHookSettingsAction.NAME, transportService,
+                clusterService, threadPool, actionFilters);
+        this.updateSettingsAction = updateSettingsAction;
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.SAME;
+    }
+
+    @Override
+    protected EventHookSettingsRequest newRequest() {
+        return new EventHookSettingsRequest();
+    }
+
+    @Override
+    protected EventHookSettingsResponse newResponse() {
+        return new EventHookSettingsResponse();
+    }
+
+    @Override
+    protected ClusterBlockException checkBlock(
+            final EventHookSettingsRequest request, final ClusterState state) {
+        // checked by the cluster update settings action
+        return null;
+    }
+
+    @Override
+    protected void masterOperation(final EventHookSettingsRequest request,
+            final ClusterState state,
+            final ActionListener<EventHookSettingsResponse> listener)
+            throws ElasticsearchException {
+        final Settings transientSettings = changedSettings(
+                request.transientSettings(), state.metaData()
+                        .transientSettings());
+        final Settings persistentSettings = changedSettings(
+                request.persistentSettings(), state.metaData()
+                        .persistentSettings());
+        if (transientSettings.getAsMap().isEmpty()
+                && persistentSettings.getAsMap().isEmpty()) {
+            listener.onResponse(new EventHookSettingsResponse(true));
+            return;
+        }
+
+        // requests during an in-flight update are merged into the next one
+        synchronized (pendingUpdates) {
+            pendingUpdates.add(new PendingUpdate(transientSettings,
+                    persistentSettings, listener));
+            if (inFlight) {
+                return;
+            }
+            inFlight = true;
+        }
+        flush();
+    }
+
+    public static Settings changedSettings(final Settings settings,
+            final Settings currentSettings) {
+        final ImmutableSettings.Builder builder = ImmutableSettings
+                .settingsBuilder();
+        for (final Map.Entry<String, String> entry : settings.getAsMap()
+                .entrySet()) {
+            if (!entry.getValue().equals(currentSettings.get(entry.getKey()))) {
+                builder.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    private void flush() {
+        final List<PendingUpdate> updates;
+        synchronized (pendingUpdates) {
+            if (pendingUpdates.isEmpty()) {
+                inFlight = false;
+                return;
+            }
+            updates = new ArrayList<PendingUpdate>(pendingUpdates);
+            pendingUpdates.clear();
+        }
+
+        final ImmutableSettings.Builder transientBuilder = ImmutableSettings
+                .settingsBuilder();
+        final ImmutableSettings.Builder persistentBuilder = ImmutableSettings
+                .settingsBuilder();
+        for (final PendingUpdate update : updates) {
+            transientBuilder.put(update.transientSettings);
+            persistentBuilder.put(update.persistentSettings);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Updating settings for {} requests: {} {}",
+                    updates.size(), transientBuilder.internalMap(),
+                    persistentBuilder.internalMap());
+        }
+
+        final ClusterUpdateSettingsRequest request = new ClusterUpdateSettingsRequest();
+        request.transientSettings(transientBuilder);
+        request.persistentSettings(persistentBuilder);
+        updateSettingsAction.execute(request,
+                new ActionListener<ClusterUpdateSettingsResponse>() {
+                    @Override
+                    public void onResponse(
+                            final ClusterUpdateSettingsResponse response) {
+                        final EventHookSettingsResponse settingsResponse = new EventHookSettingsResponse(
+                                response.isAcknowledged());
+                        for (final PendingUpdate update : updates) {
+                            update.listener.onResponse(settingsResponse);
+                        }
+                        flush();
+                    }
+
+                    @Override
+                    public void onFailure(final Throwable e) {
+                        for (final PendingUpdate update : updates) {
+                            update.listener.onFailure(e);
+                        }
+                        flush();
+                    }
+                });
+    }
+
+    private static class PendingUpdate {
+        final Settings transientSettings;
+
+        final Settings persistentSettings;
+
+        final ActionListener<EventHookSettingsResponse> listener;
+
+        PendingUpdate(final Settings transientSettings,
+                final Settings persistentSettings,
+                final ActionListener<EventHookSettingsResponse> listener) {
+            this.transientSettings = transientSettings;
+            this.persistentSettings = persistentSettings;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.codelibs.elasticsearch.eventhook.action.stats;
+
+import org.elasticsearch.action.admin.cluster.ClusterAction;
+import org.elasticsearch.client.ClusterAdminClient;
+
+public class EventHookStatsAction
+        extends
+        ClusterAction<EventHookStatsRequest, EventHookStatsResponse, EventHookStatsRequestBuilder> {
+
+    public static final EventHookStatsAction INSTANCE = new EventHookStatsAction();
+
+    public static final String NAME = "cluster:monitor/eventhook/stats";
+
+    private EventHookStatsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public EventHookStatsResponse newResponse() {
+        return new EventHookStatsResponse();
+    }
+
+    @Override
+    public EventHookStatsRequestBuilder newRequestBuilder(
+            final ClusterAdminClient client) {
+        return new EventHookStatsRequestBuilder(client);
+    }
+}
@@ -0,0 +1,11 @@
+package org.codelibs.elasticsearch.eventhook.action.stats;
+
+import org.elasticsearch.action.support.nodes.NodesOperationRequest;
+
+public class EventHookStatsRequest extends
+        NodesOperationRequest<EventHookStatsRequest> {
+
+    public EventHookStatsRequest(final String... nodesIds) {
+        super(nodesIds);
+    }
+}
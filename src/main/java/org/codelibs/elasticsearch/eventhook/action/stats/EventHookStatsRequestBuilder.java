@@ -0,0 +1,20 @@
+package org.codelibs.elasticsearch.eventhook.action.stats;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.nodes.NodesOperationRequestBuilder;
+import org.elasticsearch.client.ClusterAdminClient;
+
+public class EventHookStatsRequestBuilder
+        extends
+        NodesOperationRequestBuilder<EventHookStatsRequest, EventHookStatsResponse, EventHookStatsRequestBuilder> {
+
+    public EventHookStatsRequestBuilder(final ClusterAdminClient client) {
+        super(client, new EventHookStatsRequest());
+    }
+
+    @Override
+    protected void doExecute(
+            final ActionListener<EventHookStatsResponse> listener) {
+        client.execute(EventHookStatsAction.INSTANCE, request, listener);
+    }
+}
@@ -0,0 +1,92 @@
+package org.codelibs.elasticsearch.eventhook.action.stats;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codelibs.elasticsearch.eventhook.service.HookStats;
+import org.elasticsearch.action.support.nodes.NodesOperationResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+public class EventHookStatsResponse extends
+        NodesOperationResponse<NodeEventHookStats> implements ToXContent {
+
+    EventHookStatsResponse() {
+    }
+
+    EventHookStatsResponse(final ClusterName clusterName,
+            final NodeEventHookStats[] nodes) {
+        super(clusterName, nodes);
+    }
+
+    // merges the stats of each hook across all nodes
+    public Map<String, HookStats> getTotalHookStats() {
+        final Map<String, HookStats> totals = new TreeMap<String, HookStats>();
+        for (final NodeEventHookStats node : nodes) {
+            for (final HookStats stats : node.getHookStats()) {
+                HookStats total = totals.get(stats.key());
+                if (total == null) {
+                    total = new HookStats(stats.type(), stats.id());
+                    totals.put(stats.key(), total);
+                }
+                total.merge(stats);
+            }
+        }
+        return totals;
+    }
+
+    @Override
+    public void readFrom(final StreamInput in) throws IOException {
+        super.readFrom(in);
+        nodes = new NodeEventHookStats[in.readVInt()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = NodeEventHookStats.readNodeEventHookStats(in);
+        }
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(nodes.length);
+        for (final NodeEventHookStats node : nodes) {
+            node.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder,
+            final Params params) throws IOException {
+        builder.field("cluster_name", getClusterName().value());
+
+        builder.startObject("total");
+        long droppedCount = 0;
+        for (final NodeEventHookStats node : nodes) {
+            droppedCount += node.getDroppedCount();
+        }
+        builder.field("dropped", droppedCount);
+        builder.startObject("hooks");
+        for (final Map.Entry<String, HookStats> entry : getTotalHookStats()
+                .entrySet()) {
+            builder.startObject(entry.getKey(),
+                    XContentBuilder.FieldCaseConversion.NONE);
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        builder.endObject();
+
+        builder.startObject("nodes");
+        for (final NodeEventHookStats node : nodes) {
+            builder.startObject(node.getNode().id(),
+                    XContentBuilder.FieldCaseConversion.NONE);
+            node.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,287 @@
+package org.codelibs.elasticsearch.eventhook.action.stats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codelibs.elasticsearch.eventhook.service.EventHookService;
+import org.codelibs.elasticsearch.eventhook.service.EventJournal;
+import org.codelibs.elasticsearch.eventhook.service.HookExecutor;
+import org.codelibs.elasticsearch.eventhook.service.HookRegistry;
+import org.codelibs.elasticsearch.eventhook.service.HookStats;
+import org.codelibs.elasticsearch.eventhook.service.HookWarmer;
+import org.codelibs.elasticsearch.eventhook.service.ScriptCache;
+import org.codelibs.elasticsearch.eventhook.service.WebhookSender;
+import org.elasticsearch.action.support.nodes.NodeOperationResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+public class NodeEventHookStats extends NodeOperationResponse implements
+        ToXContent {
+
+    private int hookCount;
+
+    private long registryHitCount;
+
+    private long registryMissCount;
+
+    private long reloadCount;
+
+    private long scriptCacheSize;
+
+    private long scriptCacheHitCount;
+
+    private long scriptCacheMissCount;
+
+    private long scriptCacheEvictionCount;
+
+    private boolean warmupEnabled;
+
+    private long warmupCount;
+
+    private long warmupCompiledCount;
+
+    private long warmupFailedCount;
+
+    private long lastWarmupNanos;
+
+    private String rejectionPolicy;
+
+    private int queueSize;
+
+    private int activeCount;
+
+    private long droppedCount;
+
+    private boolean journalEnabled;
+
+    private int journalQueueSize;
+
+    private long journalWrittenCount;
+
+    private long journalFailedCount;
+
+    private long journalDroppedCount;
+
+    private int webhookEndpointCount;
+
+    private int webhookQueueSize;
+
+    private long webhookRequestCount;
+
+    private long webhookSentCount;
+
+    private long webhookRetryCount;
+
+    private long webhookFailedCount;
+
+    private long webhookDroppedCount;
+
+    private List<HookStats> hookStats;
+
+    NodeEventHookStats() {
+    }
+
+    NodeEventHookStats(final DiscoveryNode node,
+            final EventHookService eventHookService) {
+        super(node);
+        final HookRegistry hookRegistry = eventHookService.hookRegistry();
+        hookCount = hookRegistry.hookCount();
+        registryHitCount = hookRegistry.hitCount();
+        registryMissCount = hookRegistry.missCount();
+        reloadCount = hookRegistry.reloadCount();
+        final ScriptCache scriptCache = eventHookService.scriptCache();
+        scriptCacheSize = scriptCache.size();
+        scriptCacheHitCount = scriptCache.hitCount();
+        scriptCacheMissCount = scriptCache.missCount();
+        scriptCacheEvictionCount = scriptCache.evictionCount();
+        final HookWarmer hookWarmer = eventHookService.hookWarmer();
+        warmupEnabled = hookWarmer.enabled();
+        warmupCount = hookWarmer.warmupCount();
+        warmupCompiledCount = hookWarmer.compiledCount();
+        warmupFailedCount = hookWarmer.failedCount();
+        lastWarmupNanos = hookWarmer.lastWarmupNanos();
+        final HookExecutor hookExecutor = eventHookService.hookExecutor();
+        rejectionPolicy = hookExecutor.rejectionPolicy().name();
+        queueSize = hookExecutor.queueSize();
+        activeCount = hookExecutor.activeCount();
+        droppedCount = hookExecutor.droppedCount();
+        final EventJournal eventJournal = eventHookService.eventJournal();
+        journalEnabled = eventJournal.enabled();
+        journalQueueSize = eventJournal.queueSize();
+        journalWrittenCount = eventJournal.writtenCount();
+        journalFailedCount = eventJournal.failedCount();
+        journalDroppedCount = eventJournal.droppedCount();
+        final WebhookSender webhookSender = eventHookService.webhookSender();
+        webhookEndpointCount = webhookSender.endpointCount();
+        webhookQueueSize = webhookSender.queueSize();
+        webhookRequestCount = webhookSender.requestCount();
+        webhookSentCount = webhookSender.sentCount();
+        webhookRetryCount = webhookSender.retryCount();
+        webhookFailedCount = webhookSender.failedCount();
+        webhookDroppedCount = webhookSender.droppedCount();
+        hookStats = eventHookService.hookMetrics().stats();
+    }
+
+    public static NodeEventHookStats readNodeEventHookStats(
+            final StreamInput in) throws IOException {
+        final NodeEventHookStats stats = new NodeEventHookStats();
+        stats.readFrom(in);
+        return stats;
+    }
+
+    public List<HookStats> getHookStats() {
+        return hookStats;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public long getWarmupCount() {
+        return warmupCount;
+    }
+
+    @Override
+    public void readFrom(final StreamInput in) throws IOException {
+        super.readFrom(in);
+        hookCount = in.readVInt();
+        registryHitCount = in.readVLong();
+        registryMissCount = in.readVLong();
+        reloadCount = in.readVLong();
+        scriptCacheSize = in.readVLong();
+        scriptCacheHitCount = in.readVLong();
+        scriptCacheMissCount = in.readVLong();
+        scriptCacheEvictionCount = in.readVLong();
+        warmupEnabled = in.readBoolean();
+        warmupCount = in.readVLong();
+        warmupCompiledCount = in.readVLong();
+        warmupFailedCount = in.readVLong();
+        lastWarmupNanos = in.readVLong();
+        rejectionPolicy = in.readString();
+        queueSize = in.readVInt();
+        activeCount = in.readVInt();
+        droppedCount = in.readVLong();
+        journalEnabled = in.readBoolean();
+        journalQueueSize = in.readVInt();
+        journalWrittenCount = in.readVLong();
+        journalFailedCount = in.readVLong();
+        journalDroppedCount = in.readVLong();
+        webhookEndpointCount = in.readVInt();
+        webhookQueueSize = in.readVInt();
+        webhookRequestCount = in.readVLong();
+        webhookSentCount = in.readVLong();
+        webhookRetryCount = in.readVLong();
+        webhookFailedCount = in.readVLong();
+        webhookDroppedCount = in.readVLong();
+        final int size = in.readVInt();
+        hookStats = new ArrayList<HookStats>(size);
+        for (int i = 0; i < size; i++) {
+            hookStats.add(HookStats.readHookStats(in));
+        }
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(hookCount);
+        out.writeVLong(registryHitCount);
+        out.writeVLong(registryMissCount);
+        out.writeVLong(reloadCount);
+        out.writeVLong(scriptCacheSize);
+        out.writeVLong(scriptCacheHitCount);
+        out.writeVLong(scriptCacheMissCount);
+        out.writeVLong(scriptCacheEvictionCount);
+        out.writeBoolean(warmupEnabled);
+        out.writeVLong(warmupCount);
+        out.writeVLong(warmupCompiledCount);
+        out.writeVLong(warmupFailedCount);
+        out.writeVLong(lastWarmupNanos);
+        out.writeString(rejectionPolicy);
+        out.writeVInt(queueSize);
+        out.writeVInt(activeCount);
+        out.writeVLong(droppedCount);
+        out.writeBoolean(journalEnabled);
+        out.writeVInt(journalQueueSize);
+        out.writeVLong(journalWrittenCount);
+        out.writeVLong(journalFailedCount);
+        out.writeVLong(journalDroppedCount);
+        out.writeVInt(webhookEndpointCount);
+        out.writeVInt(webhookQueueSize);
+        out.writeVLong(webhookRequestCount);
+        out.writeVLong(webhookSentCount);
+        out.writeVLong(webhookRetryCount);
+        out.writeVLong(webhookFailedCount);
+        out.writeVLong(webhookDroppedCount);
+        out.writeVInt(hookStats.size());
+        for (final HookStats stats : hookStats) {
+            stats.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder,
+            final Params params) throws IOException {
+        builder.field("name", getNode().name(),
+                XContentBuilder.FieldCaseConversion.NONE);
+        builder.startObject("registry");
+        builder.field("hooks", hookCount);
+        builder.field("hit_count", registryHitCount);
+        builder.field("miss_count", registryMissCount);
+        builder.field("reload_count", reloadCount);
+        builder.endObject();
+        builder.startObject("script_cache");
+        builder.field("size", scriptCacheSize);
+        builder.field("hit_count", scriptCacheHitCount);
+        builder.field("miss_count", scriptCacheMissCount);
+        builder.field("eviction_count", scriptCacheEvictionCount);
+        builder.endObject();
+        builder.startObject("warmup");
+        builder.field("enabled", warmupEnabled);
+        builder.field("count", warmupCount);
+        builder.field("compiled", warmupCompiledCount);
+        builder.field("failed", warmupFailedCount);
+        final TimeValue lastWarmupTime = TimeValue
+                .timeValueNanos(lastWarmupNanos);
+        if (builder.humanReadable()) {
+            builder.field("last_time", lastWarmupTime.toString());
+        }
+        builder.field("last_time_in_millis", lastWarmupTime.millis());
+        builder.endObject();
+        builder.startObject("executor");
+        builder.field("rejection_policy", rejectionPolicy);
+        builder.field("queue", queueSize);
+        builder.field("active", activeCount);
+        builder.field("dropped", droppedCount);
+        builder.endObject();
+        builder.startObject("journal");
+        builder.field("enabled", journalEnabled);
+        builder.field("queue", journalQueueSize);
+        builder.field("written", journalWrittenCount);
+        builder.field("failed", journalFailedCount);
+        builder.field("dropped", journalDroppedCount);
+        builder.endObject();
+        builder.startObject("webhook");
+        builder.field("endpoints", webhookEndpointCount);
+        builder.field("queue", webhookQueueSize);
+        builder.field("requests", webhookRequestCount);
+        builder.field("sent", webhookSentCount);
+        builder.field("retried", webhookRetryCount);
+        builder.field("failed", webhookFailedCount);
+        builder.field("dropped", webhookDroppedCount);
+        builder.endObject();
+        builder.startObject("hooks");
+        for (final HookStats stats : hookStats) {
+            builder.startObject(stats.key(),
+                    XContentBuilder.FieldCaseConversion.NONE);
+            stats.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,120 @@
+package org.codelibs.elasticsearch.eventhook.action.stats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.codelibs.elasticsearch.eventhook.service.EventHookService;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.NodeOperationRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesOperationAction;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+public class TransportEventHookStatsAction
+        extends
+        TransportNodesOperationAction<EventHookStatsRequest, EventHookStatsResponse, TransportEventHookStatsAction.NodeRequest, NodeEventHookStats> {
+
+    // the service depends on Client, which depends on this action
+    private final Provider<EventHookService> eventHookServiceProvider;
+
+    @Inject
+    public TransportEventHookStatsAction(final Settings settings,
+            final ClusterName clusterName, final ThreadPool threadPool,
+            final ClusterService clusterService,
+            final TransportService transportService,
+            final ActionFilters actionFilters,
+            final Provider<EventHookService> eventHookServiceProvider) {
+        super(settings, EventHookStatsAction.NAME, clusterName, threadPool,
+                clusterService, transportService, actionFilters);
+        this.eventHookServiceProvider = eventHookServiceProvider;
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.MANAGEMENT;
+    }
+
+    @Override
+    protected EventHookStatsRequest newRequest() {
+        return new EventHookStatsRequest();
+    }
+
+    @Override
+    protected EventHookStatsResponse newResponse(
+            final EventHookStatsRequest request,
+            final AtomicReferenceArray responses) {
+        final List<NodeEventHookStats> nodes = new ArrayList<NodeEventHookStats>();
+        for (int i = 0; i < responses.length(); i++) {
+            final Object response = responses.get(i);
+            if (response instanceof NodeEventHookStats) {
+                nodes.add((NodeEventHookStats) response);
+            }
+        }
+        return new EventHookStatsResponse(clusterName,
+                nodes.toArray(new NodeEventHookStats[nodes.size()]));
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest() {
+        return new NodeRequest();
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(final String nodeId,
+            final EventHookStatsRequest request) {
+        return new NodeRequest(nodeId, request);
+    }
+
+    @Override
+    protected NodeEventHookStats newNodeResponse() {
+        return new NodeEventHookStats();
+    }
+
+    @Override
+    protected NodeEventHookStats nodeOperation(final NodeRequest request)
+            throws ElasticsearchException {
+        return new NodeEventHookStats(clusterService.localNode(),
+                eventHookServiceProvider.get());
+    }
+
+    @Override
+    protected boolean accumulateExceptions() {
+        return false;
+    }
+
+    static class NodeRequest extends NodeOperationRequest {
+
+        EventHookStatsRequest request;
+
+        NodeRequest() {
+        }
+
+        NodeRequest(final String nodeId, final EventHookStatsRequest request) {
+            super(request, nodeId);
+            this.request = request;
+        }
+
+        @Override
+        public void readFrom(final StreamInput in) throws IOException {
+            super.readFrom(in);
+            request = new EventHookStatsRequest();
+            request.readFrom(in);
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+}
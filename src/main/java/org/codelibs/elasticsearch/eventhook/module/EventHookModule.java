@@ -1,12 +1,18 @@
 package org.codelibs.elasticsearch.eventhook.module;
 
+import org.codelibs.elasticsearch.eventhook.service.EventHook;
 import org.codelibs.elasticsearch.eventhook.service.EventHookService;
+import org.codelibs.elasticsearch.eventhook.service.HookRegistry;
 import org.elasticsearch.common.inject.AbstractModule;
+import org.elasticsearch.common.inject.multibindings.Multibinder;
 
 public class EventHookModule extends AbstractModule {
 
     @Override
     protected void configure() {
+        // other plugins add native hooks to this set
+        Multibinder.newSetBinder(binder(), EventHook.class);
+        bind(HookRegistry.class).asEagerSingleton();
         bind(EventHookService.class).asEagerSingleton();
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package org.codelibs.elasticsearch.eventhook.rest;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+import org.codelibs.elasticsearch.eventhook.action.history.EventHookHistoryAction;
+import org.codelibs.elasticsearch.eventhook.action.history.EventHookHistoryRequest;
+import org.codelibs.elasticsearch.eventhook.action.history.EventHookHistoryResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.support.RestToXContentListener;
+
+public class RestEventHookHistoryAction extends BaseRestHandler {
+
+    @Inject
+    public RestEventHookHistoryAction(final Settings settings,
+            final RestController controller, final Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(GET, "/_eventhook/history", this);
+        controller.registerHandler(GET, "/_eventhook/{nodeId}/history", this);
+    }
+
+    @Override
+    protected void handleRequest(final RestRequest request,
+            final RestChannel channel, final Client client) {
+        final String[] nodesIds = Strings.splitStringByCommaToArray(request
+                .param("nodeId"));
+        final EventHookHistoryRequest historyRequest = new EventHookHistoryRequest(
+                nodesIds);
+        historyRequest.timeout(request.param("timeout"));
+        historyRequest.size(request.paramAsInt("size", historyRequest.size()));
+        final String hooks = request.param("hook");
+        if (hooks != null) {
+            historyRequest.hooks(Strings.splitStringByCommaToArray(hooks));
+        }
+        client.admin()
+                .cluster()
+                .execute(
+                        EventHookHistoryAction.INSTANCE,
+                        historyRequest,
+                        new RestToXContentListener<EventHookHistoryResponse>(
+                                channel));
+    }
+}
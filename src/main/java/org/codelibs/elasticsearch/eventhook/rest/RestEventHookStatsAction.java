@@ -0,0 +1,44 @@
+package org.codelibs.elasticsearch.eventhook.rest;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+import org.codelibs.elasticsearch.eventhook.action.stats.EventHookStatsAction;
+import org.codelibs.elasticsearch.eventhook.action.stats.EventHookStatsRequest;
+import org.codelibs.elasticsearch.eventhook.action.stats.EventHookStatsResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.support.RestToXContentListener;
+
+public class RestEventHookStatsAction extends BaseRestHandler {
+
+    @Inject
+    public RestEventHookStatsAction(final Settings settings,
+            final RestController controller, final Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(GET, "/_eventhook/stats", this);
+        controller.registerHandler(GET, "/_eventhook/{nodeId}/stats", this);
+    }
+
+    @Override
+    protected void handleRequest(final RestRequest request,
+            final RestChannel channel, final Client client) {
+        final String[] nodesIds = Strings.splitStringByCommaToArray(request
+                .param("nodeId"));
+        final EventHookStatsRequest statsRequest = new EventHookStatsRequest(
+                nodesIds);
+        statsRequest.timeout(request.param("timeout"));
+        client.admin()
+                .cluster()
+                .execute(
+                        EventHookStatsAction.INSTANCE,
+                        statsRequest,
+                        new RestToXContentListener<EventHookStatsResponse>(
+                                channel));
+    }
+}
@@ -0,0 +1,132 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+
+public class EventCoalescer extends AbstractComponent {
+
+    private final ThreadPool threadPool;
+
+    private final HookRegistry hookRegistry;
+
+    private final Listener listener;
+
+    private volatile EventHookConfig config;
+
+    private final Map<String, PendingEvent> pendingEvents = new HashMap<String, PendingEvent>();
+
+    public EventCoalescer(final Settings settings, final ThreadPool threadPool,
+            final HookRegistry hookRegistry, final Listener listener) {
+        super(settings);
+        this.threadPool = threadPool;
+        this.hookRegistry = hookRegistry;
+        this.listener = listener;
+        config = new EventHookConfig(settings);
+    }
+
+    // pending events are flushed with the window they started with
+    public void applyConfig(final EventHookConfig config) {
+        this.config = config;
+    }
+
+    // returns false if the event should be dispatched now to hooks without
+    // a coalesce window
+    public boolean offer(final String type, final ClusterChangedEvent event) {
+        final TimeValue typeWindow = config.coalesceWindow(type);
+        if (typeWindow != null && typeWindow.millis() > 0) {
+            // the setting merges events for all hooks of the type
+            add(type, HookSet.ANY_WINDOW, typeWindow, event);
+            return true;
+        }
+
+        // each window of hooks merges events only for the hooks with it
+        final List<TimeValue> windows = hookRegistry.coalesceWindows(type);
+        for (int i = 0; i < windows.size(); i++) {
+            final TimeValue window = windows.get(i);
+            add(type, window.millis(), window, event);
+        }
+        return false;
+    }
+
+    private void add(final String type, final long window,
+            final TimeValue delay, final ClusterChangedEvent event) {
+        final String key = type + "@" + window;
+        synchronized (pendingEvents) {
+            final PendingEvent pendingEvent = pendingEvents.get(key);
+            if (pendingEvent != null) {
+                pendingEvent.lastEvent = event;
+                pendingEvent.count++;
+                return;
+            }
+            pendingEvents.put(key, new PendingEvent(type, window, event));
+        }
+
+        threadPool.schedule(delay, ThreadPool.Names.GENERIC, new Runnable() {
+            @Override
+            public void run() {
+                flush(key);
+            }
+        });
+    }
+
+    private void flush(final String key) {
+        final PendingEvent pendingEvent;
+        synchronized (pendingEvents) {
+            pendingEvent = pendingEvents.remove(key);
+        }
+        if (pendingEvent == null) {
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Coalesced {} {} events.", pendingEvent.count, key);
+        }
+        listener.onEvent(pendingEvent.type, pendingEvent.window,
+                pendingEvent.firstEvent, pendingEvent.lastEvent,
+                pendingEvent.count);
+    }
+
+    public void flushAll() {
+        final String[] keys;
+        synchronized (pendingEvents) {
+            keys = pendingEvents.keySet().toArray(
+                    new String[pendingEvents.size()]);
+        }
+        for (final String key : keys) {
+            flush(key);
+        }
+    }
+
+    public interface Listener {
+        // window selects hooks as HookSet.get does
+        void onEvent(String type, long window,
+                ClusterChangedEvent firstEvent, ClusterChangedEvent lastEvent,
+                int count);
+    }
+
+    private static class PendingEvent {
+        final String type;
+
+        final long window;
+
+        final ClusterChangedEvent firstEvent;
+
+        ClusterChangedEvent lastEvent;
+
+        int count = 1;
+
+        PendingEvent(final String type, final long window,
+                final ClusterChangedEvent event) {
+            this.type = type;
+            this.window = window;
+            firstEvent = event;
+            lastEvent = event;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+public interface EventHook {
+
+    String id();
+
+    // an event type or "all"
+    String type();
+
+    // 1 is a high priority
+    long priority();
+
+    // returns false if the hook failed
+    boolean execute(EventHookContext context);
+}
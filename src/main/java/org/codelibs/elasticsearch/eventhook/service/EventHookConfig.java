@@ -0,0 +1,160 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Map;
+
+import org.codelibs.elasticsearch.eventhook.service.HookExecutor.RejectionPolicy;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.cluster.settings.Validator;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.collect.ImmutableMap;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+
+// an immutable snapshot of dynamic settings, replaced as a whole on updates
+public class EventHookConfig {
+
+    public static final String CLUSTER_EVENTHOOK_ENABLE = "cluster.eventhook.enable";
+
+    public static final String CLUSTER_EVENTHOOK_INDEX = "cluster.eventhook.index";
+
+    public static final String CLUSTER_EVENTHOOK_SIZE = "cluster.eventhook.size";
+
+    public static final String CLUSTER_EVENTHOOK_LOGGER = "cluster.eventhook.logger";
+
+    public static final String CLUSTER_EVENTHOOK_REJECTION_POLICY = "cluster.eventhook.rejection_policy";
+
+    public static final String CLUSTER_EVENTHOOK_SCRIPT_TIMEOUT = "cluster.eventhook.script.timeout";
+
+    public static final String CLUSTER_EVENTHOOK_COALESCE = "cluster.eventhook.coalesce.";
+
+    public static final String CLUSTER_EVENTHOOK_RATE_LIMIT = "cluster.eventhook.rate_limit";
+
+    private static final String DEFAULT_EVENTHOOK_INDEX = ".eventhook";
+
+    private static final int DEFAULT_EVENTHOOK_SIZE = 100;
+
+    private static final String DEFAULT_EVENTHOOK_LOGGER = "org.codelibs.eventhook";
+
+    public static final Validator REJECTION_POLICY_VALIDATOR = new Validator() {
+        @Override
+        public String validate(final String setting, final String value) {
+            try {
+                RejectionPolicy.parse(value);
+            } catch (final ElasticsearchException e) {
+                return e.getMessage();
+            }
+            return null;
+        }
+    };
+
+    public static final Validator RATE_LIMIT_VALIDATOR = new Validator() {
+        @Override
+        public String validate(final String setting, final String value) {
+            try {
+                parseRateLimit(value);
+            } catch (final ElasticsearchException e) {
+                return e.getMessage();
+            }
+            return null;
+        }
+    };
+
+    private final boolean enabled;
+
+    private final String index;
+
+    private final int size;
+
+    private final ESLogger scriptLogger;
+
+    private final RejectionPolicy rejectionPolicy;
+
+    private final TimeValue scriptTimeout;
+
+    private final Map<String, TimeValue> coalesceWindows;
+
+    private final RateLimit rateLimit;
+
+    public EventHookConfig(final Settings settings) {
+        enabled = settings.getAsBoolean(CLUSTER_EVENTHOOK_ENABLE, true);
+        index = get(settings, CLUSTER_EVENTHOOK_INDEX, DEFAULT_EVENTHOOK_INDEX);
+        size = settings.getAsInt(CLUSTER_EVENTHOOK_SIZE,
+                DEFAULT_EVENTHOOK_SIZE);
+        scriptLogger = ESLoggerFactory.getLogger(get(settings,
+                CLUSTER_EVENTHOOK_LOGGER, DEFAULT_EVENTHOOK_LOGGER));
+        rejectionPolicy = RejectionPolicy.parse(settings.get(
+                CLUSTER_EVENTHOOK_REJECTION_POLICY,
+                RejectionPolicy.DROP_NEWEST.name()));
+        scriptTimeout = settings.getAsTime(CLUSTER_EVENTHOOK_SCRIPT_TIMEOUT,
+                TimeValue.timeValueMinutes(1));
+
+        final ImmutableMap.Builder<String, TimeValue> builder = ImmutableMap
+                .builder();
+        for (final Map.Entry<String, String> entry : settings
+                .getByPrefix(CLUSTER_EVENTHOOK_COALESCE).getAsMap()
+                .entrySet()) {
+            builder.put(entry.getKey(), TimeValue.parseTimeValue(
+                    entry.getValue(), TimeValue.timeValueMillis(0)));
+        }
+        coalesceWindows = builder.build();
+        rateLimit = parseRateLimit(settings.get(CLUSTER_EVENTHOOK_RATE_LIMIT));
+    }
+
+    private static String get(final Settings settings, final String key,
+            final String defaultValue) {
+        final String value = settings.get(key);
+        return Strings.hasLength(value) ? value : defaultValue;
+    }
+
+    // a dynamic setting cannot be removed, so an empty value disables it
+    private static RateLimit parseRateLimit(final String value) {
+        if (!Strings.hasLength(value) || "none".equals(value)) {
+            return null;
+        }
+        return RateLimit.parse(value);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public String index() {
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public ESLogger scriptLogger() {
+        return scriptLogger;
+    }
+
+    public RejectionPolicy rejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    public TimeValue scriptTimeout() {
+        return scriptTimeout;
+    }
+
+    public TimeValue coalesceWindow(final String type) {
+        return coalesceWindows.get(type);
+    }
+
+    // applied to hooks without their own rate_limit
+    public RateLimit rateLimit() {
+        return rateLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "enable=" + enabled + ", index=" + index + ", size=" + size
+                + ", logger=" + scriptLogger.getName() + ", rejection_policy="
+                + rejectionPolicy + ", script.timeout=" + scriptTimeout
+                + ", coalesce=" + coalesceWindows + ", rate_limit="
+                + rateLimit;
+    }
+}
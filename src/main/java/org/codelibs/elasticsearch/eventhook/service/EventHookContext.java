@@ -0,0 +1,93 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.common.logging.ESLogger;
+
+public class EventHookContext {
+
+    private final String eventType;
+
+    private final EventHookService.Event event;
+
+    private final EventHookService.Cluster cluster;
+
+    private final EventHookService.Nodes nodes;
+
+    private final boolean isMaster;
+
+    private final Client client;
+
+    private final ClusterService clusterService;
+
+    private final ESLogger logger;
+
+    private Map<String, Object> vars;
+
+    EventHookContext(final String eventType,
+            final EventHookService.Event event,
+            final EventHookService.Cluster cluster,
+            final EventHookService.Nodes nodes, final boolean isMaster,
+            final Client client, final ClusterService clusterService,
+            final ESLogger logger) {
+        this.eventType = eventType;
+        this.event = event;
+        this.cluster = cluster;
+        this.nodes = nodes;
+        this.isMaster = isMaster;
+        this.client = client;
+        this.clusterService = clusterService;
+        this.logger = logger;
+    }
+
+    public String eventType() {
+        return eventType;
+    }
+
+    public EventHookService.Event event() {
+        return event;
+    }
+
+    public EventHookService.Cluster cluster() {
+        return cluster;
+    }
+
+    public EventHookService.Nodes nodes() {
+        return nodes;
+    }
+
+    public boolean isMaster() {
+        return isMaster;
+    }
+
+    public Client client() {
+        return client;
+    }
+
+    public ClusterService clusterService() {
+        return clusterService;
+    }
+
+    public ESLogger logger() {
+        return logger;
+    }
+
+    // script variables are created only for scripted hooks
+    synchronized Map<String, Object> vars() {
+        if (vars == null) {
+            vars = new HashMap<String, Object>();
+            vars.put("isMaster", isMaster);
+            vars.put("client", client);
+            vars.put("clusterService", clusterService);
+            vars.put("nodes", nodes);
+            vars.put("cluster", cluster);
+            vars.put("logger", logger);
+            vars.put("eventType", eventType);
+            vars.put("event", event);
+        }
+        return vars;
+    }
+}
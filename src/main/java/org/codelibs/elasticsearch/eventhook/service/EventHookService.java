@@ -1,16 +1,24 @@
 package org.codelibs.elasticsearch.eventhook.service;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.elasticsearch.eventhook.action.settings.EventHookSettingsAction;
+import org.codelibs.elasticsearch.eventhook.action.settings.EventHookSettingsRequest;
+import org.codelibs.elasticsearch.eventhook.action.settings.EventHookSettingsResponse;
+import org.codelibs.elasticsearch.eventhook.action.settings.TransportEventHookSettingsAction;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ListenableActionFuture;
 import org.elasticsearch.action.admin.cluster.node.info.NodeInfo;
 import org.elasticsearch.action.admin.cluster.node.info.NodesInfoResponse;
-import org.elasticsearch.action.admin.cluster.settings.ClusterUpdateSettingsResponse;
 import org.elasticsearch.action.search.SearchPhaseExecutionException;
-import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.PlainListenableActionFuture;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.ClusterChangedEvent;
 import org.elasticsearch.cluster.ClusterService;
@@ -19,22 +27,24 @@ import org.elasticsearch.cluster.ClusterStateListener;
 import org.elasticsearch.cluster.LocalNodeMasterListener;
 import org.elasticsearch.cluster.block.ClusterBlockException;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.node.DiscoveryNodes.Delta;
-import org.elasticsearch.cluster.settings.DynamicSettings;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
 import org.elasticsearch.common.collect.ImmutableList;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.hppc.cursors.ObjectCursor;
 import org.elasticsearch.common.inject.Inject;
-import org.elasticsearch.common.logging.ESLogger;
-import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.UncheckedExecutionException;
+import org.elasticsearch.node.settings.NodeSettingsService;
 import org.elasticsearch.script.CompiledScript;
 import org.elasticsearch.script.ScriptService;
-import org.elasticsearch.script.ScriptService.ScriptType;
-import org.elasticsearch.search.SearchHit;
-import org.elasticsearch.search.SearchHits;
-import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.threadpool.ThreadPool;
 
 public class EventHookService extends
@@ -43,56 +53,135 @@ public class EventHookService extends
 
     private static final String EVENT_TYPE_UNKNOWN = "unknown";
 
-    private static final String DEFAULT_EVENTHOOK_INDEX = ".eventhook";
+    private static final String CLUSTER_EVENTHOOK_NODES_INFO_TTL = "cluster.eventhook.nodes.info.ttl";
 
-    private static final String DEFAULT_EVENTHOOK_LOGGER = "org.codelibs.eventhook";
+    // a script waiting for its own update is released after this delay
+    private static final TimeValue SETTINGS_BATCH_DELAY = TimeValue
+            .timeValueMillis(100);
 
-    private static final int DEFAULT_EVENTHOOK_SIZE = 100;
+    private ClusterService clusterService;
 
-    private static final String CLUSTER_EVENTHOOK_INDEX = "cluster.eventhook.index";
+    private ScriptService scriptService;
 
-    private static final String CLUSTER_EVENTHOOK_SIZE = "cluster.eventhook.size";
+    private Client client;
 
-    private static final String CLUSTER_EVENTHOOK_ENABLE = "cluster.eventhook.enable";
+    private ThreadPool threadPool;
 
-    private static final String CLUSTER_EVENTHOOK_LOGGER = "cluster.eventhook.logger";
+    private HookRegistry hookRegistry;
 
-    private ClusterService clusterService;
+    private ScriptCache scriptCache;
 
-    private ScriptService scriptService;
+    private EventCoalescer eventCoalescer;
 
-    private Client client;
+    private HookExecutor hookExecutor;
 
-    private ThreadPool threadPool;
+    private HookMetrics hookMetrics;
 
-    private volatile boolean isMaster = false;
+    private EventJournal eventJournal;
+
+    private HookCircuitBreaker hookCircuitBreaker;
 
-    private String index;
+    private HookRateLimiter hookRateLimiter;
 
-    private int eventSize;
+    private EventRecorder eventRecorder;
 
-    private ESLogger scriptLogger;
+    private HookWarmer hookWarmer;
+
+    private HookHistory hookHistory;
+
+    private WebhookSender webhookSender;
+
+    private Cache<String, NodeInfo[]> nodeInfoCache;
+
+    private volatile boolean isMaster = false;
+
+    // replaced on cluster settings updates, so events never read settings
+    private volatile EventHookConfig config;
 
     @Inject
     public EventHookService(final Settings settings,
-            final DynamicSettings dynamicSettings,
+            final NodeSettingsService nodeSettingsService,
             final ClusterService clusterService, final Client client,
-            final ScriptService scriptService, final ThreadPool threadPool) {
+            final ScriptService scriptService, final ThreadPool threadPool,
+            final HookRegistry hookRegistry) {
         super(settings);
         this.clusterService = clusterService;
         this.client = client;
         this.scriptService = scriptService;
         this.threadPool = threadPool;
+        this.hookRegistry = hookRegistry;
 
         logger.info("Creating EventHookService");
 
-        index = settings.get(CLUSTER_EVENTHOOK_INDEX, DEFAULT_EVENTHOOK_INDEX);
-        eventSize = settings.getAsInt(CLUSTER_EVENTHOOK_SIZE,
-                DEFAULT_EVENTHOOK_SIZE);
+        config = hookRegistry.config();
+        scriptCache = new ScriptCache(settings, scriptService);
+        hookWarmer = new HookWarmer(settings, threadPool, hookRegistry,
+                scriptCache);
+        hookExecutor = new HookExecutor(settings, threadPool);
+        hookMetrics = new HookMetrics();
+        hookCircuitBreaker = new HookCircuitBreaker(settings, hookMetrics);
+        hookRateLimiter = new HookRateLimiter(hookMetrics);
+        hookRateLimiter.applyConfig(config);
+        eventJournal = new EventJournal(settings, clusterService, client,
+                threadPool);
+        eventRecorder = new EventRecorder(settings, threadPool);
+        hookHistory = new HookHistory(settings);
+        webhookSender = new WebhookSender(settings, threadPool);
+        hookRegistry.addListener(new HookRegistry.Listener() {
+            @Override
+            public void onLoaded(final HookSet hookSet) {
+                // drops the state of hooks deleted from the index
+                hookMetrics.retain(hookSet);
+                hookCircuitBreaker.retain(hookSet);
+                hookRateLimiter.retain(hookSet);
+                webhookSender.retain(hookSet);
+            }
+        });
+        final TimeValue nodeInfoTtl = settings.getAsTime(
+                CLUSTER_EVENTHOOK_NODES_INFO_TTL, TimeValue.timeValueSeconds(5));
+        nodeInfoCache = CacheBuilder.newBuilder().maximumSize(16)
+                .expireAfterWrite(nodeInfoTtl.millis(), TimeUnit.MILLISECONDS)
+                .build();
+        eventCoalescer = new EventCoalescer(settings, threadPool, hookRegistry,
+                new EventCoalescer.Listener() {
+                    @Override
+                    public void onEvent(final String type, final long window,
+                            final ClusterChangedEvent firstEvent,
+                            final ClusterChangedEvent lastEvent,
+                            final int count) {
+                        invokeScript(type, window, new Event(firstEvent,
+                                lastEvent, count), null);
+                    }
+                });
+
+        nodeSettingsService.addListener(new NodeSettingsService.Listener() {
+            @Override
+            public void onRefreshSettings(final Settings clusterSettings) {
+                applySettings(clusterSettings);
+            }
+        });
+    }
 
-        final String loggerName = settings.get(CLUSTER_EVENTHOOK_LOGGER,
-                DEFAULT_EVENTHOOK_LOGGER);
-        scriptLogger = ESLoggerFactory.getLogger(loggerName);
+    // cluster settings override node settings, and removed ones fall back
+    void applySettings(final Settings clusterSettings) {
+        final EventHookConfig newConfig;
+        try {
+            newConfig = new EventHookConfig(ImmutableSettings
+                    .settingsBuilder().put(settings).put(clusterSettings)
+                    .build());
+        } catch (final Exception e) {
+            logger.warn("Failed to apply cluster settings.", e);
+            return;
+        }
+        final String previous = config.toString();
+        hookRegistry.applyConfig(newConfig);
+        hookExecutor.applyConfig(newConfig);
+        eventCoalescer.applyConfig(newConfig);
+        hookRateLimiter.applyConfig(newConfig);
+        config = newConfig;
+        if (!previous.equals(newConfig.toString())) {
+            logger.info("Applied settings: {}", newConfig);
+        }
     }
 
     @Override
@@ -101,18 +190,39 @@ public class EventHookService extends
 
         clusterService.add((ClusterStateListener) this);
         clusterService.add((LocalNodeMasterListener) this);
+
+        hookRegistry.start();
+        hookWarmer.start();
+        // hooks loaded before this service started
+        hookWarmer.warmUp();
+        eventJournal.start();
+        eventRecorder.start();
     }
 
     @Override
     protected void doStop() throws ElasticsearchException {
         logger.info("Stopping EventHookService");
 
+        hookRegistry.stop();
+        hookWarmer.stop();
+        eventCoalescer.flushAll();
+        eventJournal.stop();
+        eventRecorder.stop();
+        webhookSender.flushAll();
+
         clusterService.remove((LocalNodeMasterListener) this);
         clusterService.remove((ClusterStateListener) this);
     }
 
     @Override
     protected void doClose() throws ElasticsearchException {
+        scriptCache.clear();
+        hookMetrics.clear();
+        hookCircuitBreaker.clear();
+        hookRateLimiter.clear();
+        hookHistory.clear();
+        webhookSender.close();
+        nodeInfoCache.invalidateAll();
     }
 
     //
@@ -121,38 +231,73 @@ public class EventHookService extends
 
     @Override
     public void clusterChanged(final ClusterChangedEvent event) {
-        if (settings.getAsBoolean(CLUSTER_EVENTHOOK_ENABLE, true)) {
+        hookRegistry.clusterChanged(event);
+        if (config.enabled()) {
             final String type = getEventType(event.source());
             if (logger.isDebugEnabled()) {
-                logger.debug("Cluster Event: {}/{}: {}", index, type,
-                        event.source());
+                logger.debug("Cluster Event: {}/{}: {}", hookRegistry.index(),
+                        type, event.source());
+            }
+            eventJournal.recordEvent(type, event);
+            eventRecorder.record(event);
+            if (!eventCoalescer.offer(type, event)) {
+                invokeScript(type, HookSet.NO_WINDOW, new Event(event), null);
+            }
+            if (hookRegistry.hasHooks(HookSet.INDEX_CHANGED_TYPE)) {
+                invokeIndexChanged(event, null);
             }
-            invokeScript(type, event);
         }
     }
 
-    private Map<String, Object> createEventVars() {
-        final Map<String, Object> vars = new HashMap<String, Object>();
-        vars.put("isMaster", isMaster);
-        vars.put("client", client);
-        vars.put("clusterService", clusterService);
-        vars.put("nodes", new Nodes());
-        vars.put("cluster", new Cluster());
-        vars.put("logger", scriptLogger);
-        return vars;
+    // dispatches a recorded event to hooks without the registry, the
+    // journal, the recorder, the coalescer, rate limits, circuit breakers
+    // and stats of this node, and a dry run only compiles scripts instead of
+    // executing hooks
+    void replay(final ClusterChangedEvent event, final boolean dryRun,
+            final HookMetrics replayMetrics) {
+        final Replay replay = new Replay(dryRun, replayMetrics);
+        final String type = getEventType(event.source());
+        invokeScript(type, HookSet.ANY_WINDOW, new Event(event), replay);
+        if (hookRegistry.hasHooks(HookSet.INDEX_CHANGED_TYPE)) {
+            invokeIndexChanged(event, replay);
+        }
+    }
+
+    // one event with all changed indices instead of an event per index
+    private void invokeIndexChanged(final ClusterChangedEvent event,
+            final Replay replay) {
+        final List<IndexChange> changes = IndexDiff.diff(event);
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Index changes: {}", changes);
+        }
+        invokeScript(HookSet.INDEX_CHANGED_TYPE, HookSet.ANY_WINDOW,
+                new Event(new IndexChangedEvent(event, changes)), replay);
     }
 
-    private void invokeScript(final String type, final ClusterChangedEvent event) {
-        if (clusterService.state().metaData().hasIndex(index)) {
-            client.prepareSearch(index).setTypes(type, "all")
-                    .setQuery(QueryBuilders.matchAllQuery()).setSize(eventSize)
-                    .addSort("priority", SortOrder.ASC)
-                    .execute(new ActionListener<SearchResponse>() {
+    // replay is null for a live event
+    private void invokeScript(final String type, final long window,
+            final Event event, final Replay replay) {
+        final ClusterState state = event.event != null ? event.state()
+                : clusterService.state();
+        final EventHookConfig config = this.config;
+        final String index = config.index();
+        if (state.metaData().hasIndex(index)
+                || hookRegistry.hasNativeHooks()) {
+            // on_master and off_master events have no cluster state
+            final boolean localMaster = event.event != null ? state.nodes()
+                    .localNodeMaster() : isMaster;
+            hookRegistry.lookup(type, window, event.event, state.nodes(),
+                    localMaster, new ActionListener<List<Hook>>() {
                         @Override
-                        public void onResponse(final SearchResponse response) {
-                            final SearchHits hits = response.getHits();
-                            final long totalHits = hits.getTotalHits();
-                            if (totalHits == 0) {
+                        public void onResponse(final List<Hook> response) {
+                            // limited hooks are not scheduled at all, and a
+                            // replay does not take their tokens
+                            final List<Hook> hooks = replay != null ? response
+                                    : hookRateLimiter.acquire(response);
+                            if (hooks.isEmpty()) {
                                 if (logger.isDebugEnabled()) {
                                     logger.debug("No scripts for {} event.",
                                             type);
@@ -160,60 +305,57 @@ public class EventHookService extends
                                 return;
                             }
                             if (logger.isDebugEnabled()) {
-                                logger.debug("{}/{} scripts will be executed.",
-                                        hits.getHits().length, totalHits);
-                            }
-                            final Map<String, Object> vars = createEventVars();
-                            vars.put("eventType", type);
-                            vars.put("event", new Event(event));
-                            for (final SearchHit hit : hits.getHits()) {
-                                final Map<String, Object> source = hit
-                                        .getSource();
-                                final Object lang = source.get("lang");
-                                final Object script = source.get("script");
-                                final ScriptType scriptType = getScriptType(source
-                                        .get("script_type"));
-                                if (lang != null && script != null
-                                        && scriptType != null) {
-                                    threadPool.generic().execute(
-                                            new Runnable() {
-                                                @Override
-                                                public void run() {
-                                                    try {
-                                                        String langStr = lang
-                                                                .toString();
-                                                        String scriptStr = script
-                                                                .toString();
-                                                        final CompiledScript compiledScript = scriptService
-                                                                .compile(
-                                                                        langStr,
-                                                                        scriptStr,
-                                                                        scriptType);
-                                                        Object result = scriptService
-                                                                .executable(
-                                                                        compiledScript,
-                                                                        vars)
-                                                                .run();
-                                                        if (logger
-                                                                .isDebugEnabled()) {
-                                                            logger.debug(
-                                                                    "{}:{} => {}",
-                                                                    langStr,
-                                                                    scriptStr,
-                                                                    result != null ? result
-                                                                            : "none");
-                                                        }
-                                                    } catch (final Exception e) {
-                                                        logger.error(
-                                                                "Failed to execute a script: \nlang: {}\nscript: {}\nscriptType: {}",
-                                                                e, lang,
-                                                                script,
-                                                                scriptType);
-                                                    }
-                                                }
-                                            });
-                                }
+                                logger.debug("{} scripts will be executed.",
+                                        hooks.size());
                             }
+                            final Cluster cluster = new Cluster();
+                            final EventHookContext context = new EventHookContext(
+                                    type, event, cluster, new Nodes(event
+                                            .state()), isMaster, client,
+                                    clusterService, config.scriptLogger());
+                            new HookPipeline(logger, hookExecutor, hooks,
+                                    new HookPipeline.Runner() {
+                                        @Override
+                                        public boolean accept(final Hook hook) {
+                                            if (replay != null
+                                                    || hookCircuitBreaker
+                                                            .allow(hook)) {
+                                                return true;
+                                            }
+                                            if (logger.isDebugEnabled()) {
+                                                logger.debug(
+                                                        "Skipped {} because the circuit is open.",
+                                                        hook);
+                                            }
+                                            return false;
+                                        }
+
+                                        @Override
+                                        public HookPipeline.Outcome run(
+                                                final Hook hook,
+                                                final long queueNanos) {
+                                            return executeHook(hook, context,
+                                                    queueNanos, replay);
+                                        }
+
+                                        @Override
+                                        public void onCompleted(
+                                                final Hook hook,
+                                                final HookPipeline.Outcome outcome) {
+                                            if (replay == null) {
+                                                hookCircuitBreaker.record(
+                                                        hook, outcome);
+                                            }
+                                            // updates are not held for
+                                            // hooks in lower bands
+                                            cluster.flush();
+                                        }
+
+                                        @Override
+                                        public void onFinished() {
+                                            cluster.flush();
+                                        }
+                                    }).start();
                         }
 
                         @Override
@@ -223,8 +365,7 @@ public class EventHookService extends
                             } else if (e instanceof SearchPhaseExecutionException) {
                                 logger.debug(
                                         "{} is not available yet. The event is {}:{}",
-                                        e, index, type,
-                                        event != null ? event.source() : "");
+                                        e, index, type, event.source());
                             } else {
                                 logger.error(
                                         "Failed to find scripts for an event hook.",
@@ -232,30 +373,172 @@ public class EventHookService extends
                             }
                         }
                     });
-        } else {
-            logger.error("Failed to check if {} exists.", index);
+        } else if (logger.isDebugEnabled()) {
+            // no hooks until the index is created
+            logger.debug("{} does not exist. The event is {}.", index, type);
+        }
+    }
 
+    private HookPipeline.Outcome executeHook(final Hook hook,
+            final EventHookContext context, final long queueNanos,
+            final Replay replay) {
+        final long startMillis = System.currentTimeMillis();
+        final long startTime = System.nanoTime();
+        long compileNanos = -1;
+        HookPipeline.Outcome outcome = HookPipeline.Outcome.FAILURE;
+        Object result = null;
+        Throwable failure = null;
+        try {
+            final EventHook eventHook = hook.eventHook();
+            if (replay != null && replay.dryRun) {
+                // no side effects, so only scripts are compiled
+                if (eventHook == null && hook.webhook() == null) {
+                    scriptCache.compile(hook);
+                }
+                compileNanos = System.nanoTime() - startTime;
+            } else if (eventHook != null) {
+                // a native hook is called without the script service
+                compileNanos = 0;
+                result = eventHook.execute(context);
+            } else if (hook.webhook() != null) {
+                // only queued, and batches are sent in the background
+                compileNanos = 0;
+                result = webhookSender.send(hook, context);
+            } else {
+                final CompiledScript compiledScript = scriptCache
+                        .compile(hook);
+                compileNanos = System.nanoTime() - startTime;
+                result = scriptService.executable(compiledScript,
+                        context.vars()).run();
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("{}:{} => {}", hook.lang(), hook.script(),
+                        result != null ? result : "none");
+            }
+            outcome = HookPipeline.Outcome.of(result);
+        } catch (final Exception e) {
+            failure = e;
+            logger.error(
+                    "Failed to execute a script: \nlang: {}\nscript: {}\nscriptType: {}",
+                    e, hook.lang(), hook.script(), hook.scriptType());
+        } finally {
+            // false is still a failure in stats and the history
+            final boolean success = outcome == HookPipeline.Outcome.SUCCESS;
+            final long totalNanos = System.nanoTime() - startTime;
+            if (compileNanos < 0) {
+                // failed to compile
+                compileNanos = totalNanos;
+            }
+            final HookMetrics metrics = replay != null ? replay.hookMetrics
+                    : hookMetrics;
+            metrics.get(hook).record(queueNanos, compileNanos,
+                    totalNanos - compileNanos, success);
+            if (replay == null) {
+                eventJournal.recordHook(context.eventType(), hook,
+                        clusterService.localNode(), result, failure,
+                        totalNanos);
+                hookHistory.record(context.eventType(), context.event()
+                        .source(), hook, startMillis, queueNanos, totalNanos,
+                        success, result, failure);
+            }
         }
+        return outcome;
     }
 
     protected String getEventType(final String source) {
+        return toEventType(source);
+    }
+
+    static String toEventType(final String source) {
         if (source != null && source.length() > 0) {
-            return source.replaceAll("[\\(\\[].*", "").trim()
-                    .replaceAll("[\\s\\-]", "_");
+            // same as replaceAll("[\\(\\[].*", "").trim().replaceAll("[\\s\\-]", "_")
+            int end = source.length();
+            for (int i = 0; i < end; i++) {
+                final char c = source.charAt(i);
+                if (c == '(' || c == '[') {
+                    end = i;
+                }
+            }
+            int start = 0;
+            while (start < end && source.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && source.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            final char[] chars = new char[end - start];
+            for (int i = start; i < end; i++) {
+                final char c = source.charAt(i);
+                switch (c) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\u000B':
+                case '\f':
+                case '\r':
+                case '-':
+                    chars[i - start] = '_';
+                    break;
+                default:
+                    chars[i - start] = c;
+                    break;
+                }
+            }
+            return new String(chars);
         }
         return EVENT_TYPE_UNKNOWN;
     }
 
-    private static ScriptType getScriptType(final Object scriptType) {
-        if (scriptType == null) {
-            return ScriptType.INLINE;
-        } else if ("INDEXED".equalsIgnoreCase(scriptType.toString())) {
-            return ScriptType.INDEXED;
-        } else if ("FILE".equalsIgnoreCase(scriptType.toString())) {
-            return ScriptType.FILE;
-        } else {
-            return ScriptType.INLINE;
-        }
+    public ScriptCache scriptCache() {
+        return scriptCache;
+    }
+
+    public HookRegistry hookRegistry() {
+        return hookRegistry;
+    }
+
+    public HookExecutor hookExecutor() {
+        return hookExecutor;
+    }
+
+    public HookMetrics hookMetrics() {
+        return hookMetrics;
+    }
+
+    public HookCircuitBreaker hookCircuitBreaker() {
+        return hookCircuitBreaker;
+    }
+
+    public HookRateLimiter hookRateLimiter() {
+        return hookRateLimiter;
+    }
+
+    public HookHistory hookHistory() {
+        return hookHistory;
+    }
+
+    public WebhookSender webhookSender() {
+        return webhookSender;
+    }
+
+    public EventJournal eventJournal() {
+        return eventJournal;
+    }
+
+    public EventRecorder eventRecorder() {
+        return eventRecorder;
+    }
+
+    public EventCoalescer eventCoalescer() {
+        return eventCoalescer;
+    }
+
+    public HookWarmer hookWarmer() {
+        return hookWarmer;
+    }
+
+    public EventHookConfig config() {
+        return config;
     }
 
     //
@@ -266,14 +549,17 @@ public class EventHookService extends
     public void onMaster() {
         isMaster = true;
 
-        invokeScript("on_master", null);
+        // on the management thread, so on_master runs on compiled scripts
+        hookWarmer.warmUpNow();
+        invokeScript("on_master", HookSet.ANY_WINDOW, new Event(null), null);
     }
 
     @Override
     public void offMaster() {
         isMaster = false;
 
-        invokeScript("off_master", null);
+        invokeScript("off_master", HookSet.ANY_WINDOW, new Event(null),
+                null);
     }
 
     @Override
@@ -281,15 +567,128 @@ public class EventHookService extends
         return ThreadPool.Names.MANAGEMENT;
     }
 
+    // a replay records stats into its own metrics
+    private static class Replay {
+        final boolean dryRun;
+
+        final HookMetrics hookMetrics;
+
+        Replay(final boolean dryRun, final HookMetrics hookMetrics) {
+            this.dryRun = dryRun;
+            this.hookMetrics = hookMetrics;
+        }
+    }
+
     public class Nodes {
+        private final DiscoveryNodes discoveryNodes;
+
+        public Nodes(final ClusterState state) {
+            discoveryNodes = state.nodes();
+        }
+
+        public int size() {
+            return discoveryNodes.size();
+        }
+
+        public int dataNodeSize() {
+            return discoveryNodes.dataNodes().size();
+        }
+
+        public int masterNodeSize() {
+            return discoveryNodes.masterNodes().size();
+        }
+
+        public DiscoveryNode[] list() {
+            return toArray(discoveryNodes.nodes());
+        }
+
+        public DiscoveryNode[] dataNodes() {
+            return toArray(discoveryNodes.dataNodes());
+        }
+
+        public DiscoveryNode[] masterNodes() {
+            return toArray(discoveryNodes.masterNodes());
+        }
+
+        public DiscoveryNode[] withAttribute(final String name,
+                final String value) {
+            final List<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
+            for (final DiscoveryNode node : discoveryNodes) {
+                if (value.equals(node.attributes().get(name))) {
+                    nodes.add(node);
+                }
+            }
+            return nodes.toArray(new DiscoveryNode[nodes.size()]);
+        }
+
+        public DiscoveryNode get(final String nodeId) {
+            return discoveryNodes.get(nodeId);
+        }
+
+        public DiscoveryNode localNode() {
+            return discoveryNodes.localNode();
+        }
+
+        public DiscoveryNode masterNode() {
+            return discoveryNodes.masterNode();
+        }
+
+        public String attribute(final String nodeId, final String name) {
+            final DiscoveryNode node = discoveryNodes.get(nodeId);
+            if (node == null) {
+                return null;
+            }
+            return node.attributes().get(name);
+        }
+
         public NodeInfo[] nodeInfo(final String... nodesIds) {
-            final NodesInfoResponse response = client.admin().cluster()
-                    .prepareNodesInfo(nodesIds).execute().actionGet();
-            return response.getNodes();
+            final StringBuilder buf = new StringBuilder();
+            // a response is reused while the node set is not changed
+            for (final ObjectCursor<String> cursor : discoveryNodes.nodes()
+                    .keys()) {
+                buf.append(cursor.value).append(',');
+            }
+            buf.append('/');
+            for (final String nodeId : nodesIds) {
+                buf.append(nodeId).append(',');
+            }
+            try {
+                return nodeInfoCache.get(buf.toString(),
+                        new Callable<NodeInfo[]>() {
+                            @Override
+                            public NodeInfo[] call() throws Exception {
+                                final NodesInfoResponse response = client
+                                        .admin().cluster()
+                                        .prepareNodesInfo(nodesIds).execute()
+                                        .actionGet();
+                                return response.getNodes();
+                            }
+                        });
+            } catch (final ExecutionException e) {
+                throw ExceptionsHelper.convertToRuntime(e.getCause());
+            } catch (final UncheckedExecutionException e) {
+                throw ExceptionsHelper.convertToRuntime(e.getCause());
+            }
+        }
+
+        private DiscoveryNode[] toArray(
+                final ImmutableOpenMap<String, DiscoveryNode> nodes) {
+            final DiscoveryNode[] array = new DiscoveryNode[nodes.size()];
+            int i = 0;
+            for (final ObjectCursor<DiscoveryNode> cursor : nodes.values()) {
+                array[i++] = cursor.value;
+            }
+            return array;
         }
     }
 
     public class Cluster {
+        private ImmutableSettings.Builder transientBatch;
+
+        private ImmutableSettings.Builder persistentBatch;
+
+        private final List<PlainListenableActionFuture<Boolean>> batchFutures = new ArrayList<PlainListenableActionFuture<Boolean>>();
+
         public DiscoveryNode getLocalNode() {
             return clusterService.state().getNodes().getLocalNode();
         }
@@ -301,14 +700,10 @@ public class EventHookService extends
 
         public boolean setPersistentSettings(final String key,
                 final String value) {
-            final ClusterUpdateSettingsResponse response = client
-                    .admin()
-                    .cluster()
-                    .prepareUpdateSettings()
-                    .setPersistentSettings(
-                            "{\"" + key + "\":\"" + value + "\"}").execute()
-                    .actionGet();
-            return response.isAcknowledged();
+            return updateSettings(
+                    ImmutableSettings.EMPTY,
+                    ImmutableSettings.settingsBuilder().put(key, value)
+                            .build()).actionGet();
         }
 
         public String getTransientSettings(final String key) {
@@ -317,21 +712,182 @@ public class EventHookService extends
         }
 
         public boolean setTransientSettings(final String key, final String value) {
-            final ClusterUpdateSettingsResponse response = client
-                    .admin()
+            return updateSettings(
+                    ImmutableSettings.settingsBuilder().put(key, value)
+                            .build(), ImmutableSettings.EMPTY).actionGet();
+        }
+
+        // sent with other updates when a script finishes or after a short
+        // delay, so a script can wait for the future
+        public ListenableActionFuture<Boolean> updatePersistentSettings(
+                final String key, final String value) {
+            synchronized (batchFutures) {
+                if (persistentBatch == null) {
+                    persistentBatch = ImmutableSettings.settingsBuilder();
+                }
+                persistentBatch.put(key, value);
+                return newBatchFuture();
+            }
+        }
+
+        public ListenableActionFuture<Boolean> updateTransientSettings(
+                final String key, final String value) {
+            synchronized (batchFutures) {
+                if (transientBatch == null) {
+                    transientBatch = ImmutableSettings.settingsBuilder();
+                }
+                transientBatch.put(key, value);
+                return newBatchFuture();
+            }
+        }
+
+        private PlainListenableActionFuture<Boolean> newBatchFuture() {
+            final PlainListenableActionFuture<Boolean> future = new PlainListenableActionFuture<Boolean>(
+                    false, threadPool);
+            if (batchFutures.isEmpty()) {
+                threadPool.schedule(SETTINGS_BATCH_DELAY,
+                        ThreadPool.Names.GENERIC, new Runnable() {
+                            @Override
+                            public void run() {
+                                flush();
+                            }
+                        });
+            }
+            batchFutures.add(future);
+            return future;
+        }
+
+        void flush() {
+            final Settings transientSettings;
+            final Settings persistentSettings;
+            final List<PlainListenableActionFuture<Boolean>> futures;
+            synchronized (batchFutures) {
+                if (batchFutures.isEmpty()) {
+                    return;
+                }
+                transientSettings = transientBatch == null ? ImmutableSettings.EMPTY
+                        : transientBatch.build();
+                persistentSettings = persistentBatch == null ? ImmutableSettings.EMPTY
+                        : persistentBatch.build();
+                futures = new ArrayList<PlainListenableActionFuture<Boolean>>(
+                        batchFutures);
+                transientBatch = null;
+                persistentBatch = null;
+                batchFutures.clear();
+            }
+
+            updateSettings(transientSettings, persistentSettings).addListener(
+                    new ActionListener<Boolean>() {
+                        @Override
+                        public void onResponse(final Boolean acknowledged) {
+                            for (final PlainListenableActionFuture<Boolean> future : futures) {
+                                future.onResponse(acknowledged);
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(final Throwable e) {
+                            logger.error("Failed to update settings: {} {}",
+                                    e, transientSettings.getAsMap(),
+                                    persistentSettings.getAsMap());
+                            for (final PlainListenableActionFuture<Boolean> future : futures) {
+                                future.onFailure(e);
+                            }
+                        }
+                    });
+        }
+
+        private ListenableActionFuture<Boolean> updateSettings(
+                final Settings transientSettings,
+                final Settings persistentSettings) {
+            final PlainListenableActionFuture<Boolean> future = new PlainListenableActionFuture<Boolean>(
+                    false, threadPool);
+            final MetaData metaData = clusterService.state().metaData();
+            if (TransportEventHookSettingsAction
+                    .changedSettings(transientSettings,
+                            metaData.transientSettings()).getAsMap().isEmpty()
+                    && TransportEventHookSettingsAction
+                            .changedSettings(persistentSettings,
+                                    metaData.persistentSettings()).getAsMap()
+                            .isEmpty()) {
+                // already applied
+                future.onResponse(Boolean.TRUE);
+                return future;
+            }
+
+            client.admin()
                     .cluster()
-                    .prepareUpdateSettings()
-                    .setTransientSettings("{\"" + key + "\":\"" + value + "\"}")
-                    .execute().actionGet();
-            return response.isAcknowledged();
+                    .execute(
+                            EventHookSettingsAction.INSTANCE,
+                            new EventHookSettingsRequest(transientSettings,
+                                    persistentSettings),
+                            new ActionListener<EventHookSettingsResponse>() {
+                                @Override
+                                public void onResponse(
+                                        final EventHookSettingsResponse response) {
+                                    future.onResponse(response
+                                            .isAcknowledged());
+                                }
+
+                                @Override
+                                public void onFailure(final Throwable e) {
+                                    future.onFailure(e);
+                                }
+                            });
+            return future;
         }
     }
 
     public class Event {
         ClusterChangedEvent event;
 
+        ClusterChangedEvent firstEvent;
+
+        int count;
+
         public Event(final ClusterChangedEvent event) {
             this.event = event;
+            firstEvent = event;
+            count = event == null ? 0 : 1;
+        }
+
+        public Event(final ClusterChangedEvent firstEvent,
+                final ClusterChangedEvent lastEvent, final int count) {
+            // compares the state before the first event with the last state
+            event = new ClusterChangedEvent(lastEvent.source(),
+                    lastEvent.state(), firstEvent.previousState());
+            this.firstEvent = firstEvent;
+            this.count = count;
+        }
+
+        public int mergedEventCount() {
+            return count;
+        }
+
+        public ClusterState firstState() {
+            if (firstEvent == null) {
+                return state();
+            }
+            return firstEvent.state();
+        }
+
+        public ClusterState lastState() {
+            return state();
+        }
+
+        // computed on each call except for index_changed events
+        public List<IndexChange> indexChanges() {
+            if (event == null) {
+                return Collections.emptyList();
+            } else if (event instanceof IndexChangedEvent) {
+                return ((IndexChangedEvent) event).indexChanges();
+            }
+            return IndexDiff.diff(event);
+        }
+
+        public List<EventKind> kinds() {
+            return EventKind.fromMask(EventKind.classify(event,
+                    EventKind.ALL_MASK));
         }
 
         public String source() {
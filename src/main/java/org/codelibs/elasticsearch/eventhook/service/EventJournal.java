@@ -0,0 +1,289 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.joda.time.format.DateTimeFormat;
+import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+
+public class EventJournal extends AbstractComponent {
+
+    private static final String CLUSTER_EVENTHOOK_JOURNAL_ENABLE = "cluster.eventhook.journal.enable";
+
+    private static final String CLUSTER_EVENTHOOK_JOURNAL_INDEX_PREFIX = "cluster.eventhook.journal.index_prefix";
+
+    private static final String CLUSTER_EVENTHOOK_JOURNAL_QUEUE_SIZE = "cluster.eventhook.journal.queue_size";
+
+    private static final String CLUSTER_EVENTHOOK_JOURNAL_BULK_ACTIONS = "cluster.eventhook.journal.bulk_actions";
+
+    private static final String CLUSTER_EVENTHOOK_JOURNAL_FLUSH_INTERVAL = "cluster.eventhook.journal.flush_interval";
+
+    private static final String EVENT_TYPE = "event";
+
+    private static final String HOOK_TYPE = "hook";
+
+    private static final DateTimeFormatter INDEX_DATE_FORMAT = DateTimeFormat
+            .forPattern("yyyy.MM.dd").withZoneUTC();
+
+    private final ClusterService clusterService;
+
+    private final Client client;
+
+    private final ThreadPool threadPool;
+
+    private final boolean enabled;
+
+    private final String indexPrefix;
+
+    private final int bulkActions;
+
+    private final TimeValue flushInterval;
+
+    private final BlockingQueue<Record> queue;
+
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile ScheduledFuture<?> flushFuture;
+
+    public EventJournal(final Settings settings,
+            final ClusterService clusterService, final Client client,
+            final ThreadPool threadPool) {
+        super(settings);
+        this.clusterService = clusterService;
+        this.client = client;
+        this.threadPool = threadPool;
+
+        enabled = settings.getAsBoolean(CLUSTER_EVENTHOOK_JOURNAL_ENABLE,
+                false);
+        indexPrefix = settings.get(CLUSTER_EVENTHOOK_JOURNAL_INDEX_PREFIX,
+                ".eventhook-journal-");
+        bulkActions = settings.getAsInt(CLUSTER_EVENTHOOK_JOURNAL_BULK_ACTIONS,
+                500);
+        flushInterval = settings.getAsTime(
+                CLUSTER_EVENTHOOK_JOURNAL_FLUSH_INTERVAL,
+                TimeValue.timeValueSeconds(5));
+        queue = new ArrayBlockingQueue<Record>(settings.getAsInt(
+                CLUSTER_EVENTHOOK_JOURNAL_QUEUE_SIZE, 10000));
+    }
+
+    public void start() {
+        if (enabled) {
+            flushFuture = threadPool.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, flushInterval);
+        }
+    }
+
+    public void stop() {
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+        flush();
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public void recordEvent(final String type, final ClusterChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        final Map<String, Object> source = createSource(type,
+                event.state().nodes().localNode());
+        source.put("source", event.source());
+        source.put("version", event.state().version());
+        if (event.nodesChanged()) {
+            source.put("nodes_added", nodeIds(event.nodesDelta().addedNodes()));
+            source.put("nodes_removed",
+                    nodeIds(event.nodesDelta().removedNodes()));
+        }
+        if (event.metaDataChanged()) {
+            source.put("indices_created", event.indicesCreated());
+            source.put("indices_deleted", event.indicesDeleted());
+        }
+        offer(new Record(EVENT_TYPE, source));
+    }
+
+    public void recordHook(final String type, final Hook hook,
+            final DiscoveryNode localNode, final Object result,
+            final Throwable failure, final long tookNanos) {
+        if (!enabled) {
+            return;
+        }
+
+        final Map<String, Object> source = createSource(type, localNode);
+        source.put("hook_type", hook.type());
+        source.put("hook_id", hook.id());
+        source.put("hook_version", hook.version());
+        source.put("took_in_micros", tookNanos / 1000);
+        if (failure != null) {
+            source.put("success", false);
+            source.put("failure", failure.toString());
+        } else {
+            source.put("success", !Boolean.FALSE.equals(result));
+            if (result != null) {
+                source.put("result", result.toString());
+            }
+        }
+        offer(new Record(HOOK_TYPE, source));
+    }
+
+    private Map<String, Object> createSource(final String type,
+            final DiscoveryNode localNode) {
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("@timestamp", System.currentTimeMillis());
+        source.put("event_type", type);
+        if (localNode != null) {
+            source.put("node", localNode.name());
+        }
+        return source;
+    }
+
+    private static List<String> nodeIds(final List<DiscoveryNode> nodes) {
+        final List<String> ids = new ArrayList<String>(nodes.size());
+        for (final DiscoveryNode node : nodes) {
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    private void offer(final Record record) {
+        if (!queue.offer(record)) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        if (queue.size() >= bulkActions && !flushing.get()) {
+            threadPool.generic().execute(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+        }
+    }
+
+    public void flush() {
+        if (queue.isEmpty()
+                || clusterService.state().blocks()
+                        .hasGlobalBlock(ClusterBlockLevel.WRITE)) {
+            // keep records until the cluster is writable
+            return;
+        }
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+
+        final List<Record> records = new ArrayList<Record>(bulkActions);
+        queue.drainTo(records, bulkActions);
+        if (records.isEmpty()) {
+            flushing.set(false);
+            return;
+        }
+
+        final BulkRequestBuilder bulkRequest = client.prepareBulk();
+        for (final Record record : records) {
+            bulkRequest.add(client
+                    .prepareIndex(
+                            indexPrefix
+                                    + INDEX_DATE_FORMAT
+                                            .print(record.timestamp()),
+                            record.type).setSource(record.source));
+        }
+        bulkRequest.execute(new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(final BulkResponse response) {
+                int failures = 0;
+                if (response.hasFailures()) {
+                    for (final BulkItemResponse item : response.getItems()) {
+                        if (item.isFailed()) {
+                            failures++;
+                        }
+                    }
+                    logger.warn("Failed to write {} journal records: {}",
+                            failures, response.buildFailureMessage());
+                }
+                failedCount.addAndGet(failures);
+                writtenCount.addAndGet(records.size() - failures);
+                finishFlush();
+            }
+
+            @Override
+            public void onFailure(final Throwable e) {
+                logger.warn("Failed to write {} journal records.", e,
+                        records.size());
+                failedCount.addAndGet(records.size());
+                finishFlush();
+            }
+        });
+    }
+
+    private void finishFlush() {
+        flushing.set(false);
+        if (queue.size() >= bulkActions) {
+            flush();
+        }
+    }
+
+    public int queueSize() {
+        return queue.size();
+    }
+
+    public long writtenCount() {
+        return writtenCount.get();
+    }
+
+    public long failedCount() {
+        return failedCount.get();
+    }
+
+    public long droppedCount() {
+        return droppedCount.get();
+    }
+
+    private static class Record {
+        final String type;
+
+        final Map<String, Object> source;
+
+        Record(final String type, final Map<String, Object> source) {
+            this.type = type;
+            this.source = source;
+        }
+
+        long timestamp() {
+            return (Long) source.get("@timestamp");
+        }
+    }
+}
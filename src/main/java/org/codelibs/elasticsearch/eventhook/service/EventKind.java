@@ -0,0 +1,126 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.hppc.cursors.ObjectCursor;
+
+public enum EventKind {
+    INDICES_CREATED, INDICES_DELETED, NODES_ADDED, NODES_REMOVED, MASTER_CHANGED, BLOCKS_CHANGED, METADATA_CHANGED, ROUTING_TABLE_CHANGED;
+
+    private static final EventKind[] KINDS = values();
+
+    public static final int ALL_MASK = (1 << KINDS.length) - 1;
+
+    private final int mask;
+
+    private final String key;
+
+    private EventKind() {
+        mask = 1 << ordinal();
+        key = toKey(name());
+    }
+
+    public int mask() {
+        return mask;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String toKey(final String value) {
+        return value.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    // accepts both indices_created and indicesCreated
+    public static EventKind parse(final String value) {
+        final String key = toKey(value);
+        for (final EventKind kind : KINDS) {
+            if (kind.key.equals(key)) {
+                return kind;
+            }
+        }
+        throw new ElasticsearchIllegalArgumentException("Unknown event kind: "
+                + value);
+    }
+
+    public static int toMask(final Iterable<?> values) {
+        int mask = 0;
+        for (final Object value : values) {
+            mask |= parse(value.toString()).mask;
+        }
+        return mask;
+    }
+
+    public static List<EventKind> fromMask(final int mask) {
+        final List<EventKind> kinds = new ArrayList<EventKind>();
+        for (final EventKind kind : KINDS) {
+            if ((mask & kind.mask) != 0) {
+                kinds.add(kind);
+            }
+        }
+        return kinds;
+    }
+
+    // only kinds in the given mask are checked
+    public static int classify(final ClusterChangedEvent event, final int mask) {
+        if (event == null || mask == 0) {
+            return 0;
+        }
+
+        int kinds = 0;
+        final boolean metaDataChanged = event.metaDataChanged();
+        if (metaDataChanged) {
+            kinds |= METADATA_CHANGED.mask;
+            final MetaData metaData = event.state().metaData();
+            final MetaData previousMetaData = event.previousState().metaData();
+            if ((mask & INDICES_CREATED.mask) != 0
+                    && hasNewIndex(metaData, previousMetaData)) {
+                kinds |= INDICES_CREATED.mask;
+            }
+            if ((mask & INDICES_DELETED.mask) != 0
+                    && hasNewIndex(previousMetaData, metaData)) {
+                kinds |= INDICES_DELETED.mask;
+            }
+        }
+        if ((mask & (NODES_ADDED.mask | NODES_REMOVED.mask | MASTER_CHANGED.mask)) != 0
+                && event.state().nodes() != event.previousState().nodes()) {
+            if (event.nodesAdded()) {
+                kinds |= NODES_ADDED.mask;
+            }
+            if (event.nodesRemoved()) {
+                kinds |= NODES_REMOVED.mask;
+            }
+            if (event.nodesDelta().masterNodeChanged()) {
+                kinds |= MASTER_CHANGED.mask;
+            }
+        }
+        if (event.blocksChanged()) {
+            kinds |= BLOCKS_CHANGED.mask;
+        }
+        if (event.routingTableChanged()) {
+            kinds |= ROUTING_TABLE_CHANGED.mask;
+        }
+        return kinds & mask;
+    }
+
+    private static boolean hasNewIndex(final MetaData metaData,
+            final MetaData previousMetaData) {
+        for (final ObjectCursor<String> cursor : metaData.indices().keys()) {
+            if (!previousMetaData.hasIndex(cursor.value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
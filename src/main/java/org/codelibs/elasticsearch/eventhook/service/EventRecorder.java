@@ -0,0 +1,492 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlocks;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.hppc.cursors.ObjectCursor;
+import org.elasticsearch.common.io.stream.InputStreamStreamInput;
+import org.elasticsearch.common.io.stream.OutputStreamStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+
+public class EventRecorder extends AbstractComponent {
+
+    private static final String CLUSTER_EVENTHOOK_RECORDER_PATH = "cluster.eventhook.recorder.path";
+
+    private static final String CLUSTER_EVENTHOOK_RECORDER_QUEUE_SIZE = "cluster.eventhook.recorder.queue_size";
+
+    private static final String FORMAT_NAME = "eventhook-events";
+
+    private static final int FORMAT_VERSION = 2;
+
+    private static final byte UNCHANGED = 0;
+
+    private static final byte FULL = 1;
+
+    private static final byte INDICES = 2;
+
+    private final ThreadPool threadPool;
+
+    private final String path;
+
+    private final BlockingQueue<PendingEvent> queue;
+
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean started;
+
+    private StreamOutput out;
+
+    private File file;
+
+    // events are written as changes from the last written state
+    private ClusterState lastState;
+
+    private long recordedCount;
+
+    public EventRecorder(final Settings settings, final ThreadPool threadPool) {
+        super(settings);
+        this.threadPool = threadPool;
+        path = settings.get(CLUSTER_EVENTHOOK_RECORDER_PATH);
+        queue = new ArrayBlockingQueue<PendingEvent>(settings.getAsInt(
+                CLUSTER_EVENTHOOK_RECORDER_QUEUE_SIZE, 1000));
+    }
+
+    public boolean enabled() {
+        return path != null;
+    }
+
+    public synchronized void start() {
+        started = enabled();
+    }
+
+    public void stop() {
+        synchronized (this) {
+            // events queued before stopping are still written, and a file
+            // is opened for them if no event is written yet
+            drain();
+            started = false;
+            if (out != null) {
+                try {
+                    out.writeBoolean(false);
+                } catch (final IOException e) {
+                    logger.warn("Failed to finish {}.", e, file);
+                }
+                close();
+                logger.info("Recorded {} events to {}. {} events dropped.",
+                        recordedCount, file, droppedCount.get());
+            }
+        }
+    }
+
+    private void close() {
+        try {
+            out.close();
+        } catch (final IOException e) {
+            logger.warn("Failed to close {}.", e, file);
+        }
+        out = null;
+        lastState = null;
+    }
+
+    // called on the cluster state thread, so events are queued in order and
+    // serialized on a generic thread
+    public void record(final ClusterChangedEvent event) {
+        if (!started) {
+            return;
+        }
+
+        if (!queue.offer(new PendingEvent(System.currentTimeMillis(), event))) {
+            // the next written event includes changes of dropped ones
+            droppedCount.incrementAndGet();
+            return;
+        }
+        if (!writing.get()) {
+            threadPool.generic().execute(new Runnable() {
+                @Override
+                public void run() {
+                    write();
+                }
+            });
+        }
+    }
+
+    private void write() {
+        if (!writing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                drain();
+            }
+        } finally {
+            writing.set(false);
+        }
+        if (started && !queue.isEmpty()) {
+            // queued after the last poll
+            write();
+        }
+    }
+
+    private void drain() {
+        PendingEvent pendingEvent;
+        while ((pendingEvent = queue.poll()) != null) {
+            if (out == null && !started) {
+                continue;
+            }
+            try {
+                if (out == null && !open(pendingEvent.event)) {
+                    continue;
+                }
+                writeEvent(pendingEvent);
+                recordedCount++;
+            } catch (final IOException e) {
+                logger.warn(
+                        "Failed to record an event to {}. Recording stopped.",
+                        e, file);
+                started = false;
+                close();
+                queue.clear();
+            }
+        }
+    }
+
+    private boolean open(final ClusterChangedEvent event) throws IOException {
+        final DiscoveryNode localNode = event.state().nodes().localNode();
+        if (localNode == null) {
+            return false;
+        }
+
+        final File dir = new File(path);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        file = new File(dir, localNode.name().replaceAll("[^\\w\\-]", "_")
+                + "-" + System.currentTimeMillis() + ".events");
+        // flush each record so that a crashed node leaves readable events
+        out = new OutputStreamStreamOutput(new GZIPOutputStream(
+                new FileOutputStream(file), 8192, true));
+        out.writeString(FORMAT_NAME);
+        out.writeVInt(FORMAT_VERSION);
+        out.writeVInt(Version.CURRENT.id);
+        localNode.writeTo(out);
+        // the only full state in a file
+        lastState = event.previousState();
+        ClusterState.Builder.writeTo(lastState, out);
+        logger.info("Recording events to {}.", file);
+        return true;
+    }
+
+    private void writeEvent(final PendingEvent pendingEvent) throws IOException {
+        final ClusterState state = pendingEvent.event.state();
+        out.writeBoolean(true);
+        out.writeVLong(pendingEvent.timestamp);
+        out.writeString(pendingEvent.event.source());
+        out.writeVLong(state.version());
+
+        if (state.nodes() != lastState.nodes()) {
+            out.writeBoolean(true);
+            DiscoveryNodes.Builder.writeTo(state.nodes(), out);
+        } else {
+            out.writeBoolean(false);
+        }
+
+        if (sameBlocks(state.blocks(), lastState.blocks())) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            ClusterBlocks.Builder.writeClusterBlocks(state.blocks(), out);
+        }
+
+        writeMetaData(state.metaData(), lastState.metaData());
+        writeRoutingTable(state.routingTable(), lastState.routingTable());
+        out.flush();
+        lastState = state;
+    }
+
+    private void writeMetaData(final MetaData metaData,
+            final MetaData previous) throws IOException {
+        if (metaData == previous) {
+            out.writeByte(UNCHANGED);
+        } else if (!sameGlobalMetaData(metaData, previous)) {
+            out.writeByte(FULL);
+            MetaData.Builder.writeTo(metaData, out);
+        } else {
+            // only changed indices
+            out.writeByte(INDICES);
+            out.writeVLong(metaData.version());
+            writeRemoved(previous.indices().keys(), metaData);
+            final List<IndexMetaData> changed = new ArrayList<IndexMetaData>();
+            for (final ObjectCursor<IndexMetaData> cursor : metaData
+                    .indices().values()) {
+                final IndexMetaData current = cursor.value;
+                final IndexMetaData last = previous.index(current.index());
+                if (current != last
+                        && (last == null || current.version() != last
+                                .version())) {
+                    changed.add(current);
+                }
+            }
+            out.writeVInt(changed.size());
+            for (final IndexMetaData indexMetaData : changed) {
+                IndexMetaData.Builder.writeTo(indexMetaData, out);
+            }
+        }
+    }
+
+    private void writeRemoved(final Iterable<ObjectCursor<String>> names,
+            final MetaData metaData) throws IOException {
+        final List<String> removed = new ArrayList<String>();
+        for (final ObjectCursor<String> cursor : names) {
+            if (!metaData.hasIndex(cursor.value)) {
+                removed.add(cursor.value);
+            }
+        }
+        out.writeStringArray(removed.toArray(new String[removed.size()]));
+    }
+
+    private void writeRoutingTable(final RoutingTable routingTable,
+            final RoutingTable previous) throws IOException {
+        if (routingTable == previous) {
+            out.writeByte(UNCHANGED);
+            return;
+        }
+
+        // routing tables are rebuilt on each reroute, so shards are compared
+        out.writeByte(INDICES);
+        out.writeVLong(routingTable.version());
+        final List<String> removed = new ArrayList<String>();
+        for (final IndexRoutingTable indexRoutingTable : previous) {
+            if (!routingTable.hasIndex(indexRoutingTable.index())) {
+                removed.add(indexRoutingTable.index());
+            }
+        }
+        out.writeStringArray(removed.toArray(new String[removed.size()]));
+        final List<IndexRoutingTable> changed = new ArrayList<IndexRoutingTable>();
+        for (final IndexRoutingTable indexRoutingTable : routingTable) {
+            if (!sameRouting(indexRoutingTable,
+                    previous.index(indexRoutingTable.index()))) {
+                changed.add(indexRoutingTable);
+            }
+        }
+        out.writeVInt(changed.size());
+        for (final IndexRoutingTable indexRoutingTable : changed) {
+            IndexRoutingTable.Builder.writeTo(indexRoutingTable, out);
+        }
+    }
+
+    private static boolean sameGlobalMetaData(final MetaData metaData,
+            final MetaData previous) {
+        return metaData.transientSettings().equals(
+                previous.transientSettings())
+                && metaData.persistentSettings().equals(
+                        previous.persistentSettings())
+                && metaData.templates().equals(previous.templates())
+                && metaData.customs().equals(previous.customs());
+    }
+
+    private static boolean sameBlocks(final ClusterBlocks blocks,
+            final ClusterBlocks previous) {
+        return blocks == previous || blocks.global().equals(previous.global())
+                && blocks.indices().equals(previous.indices());
+    }
+
+    private static boolean sameRouting(final IndexRoutingTable routing,
+            final IndexRoutingTable previous) {
+        if (routing == previous) {
+            return true;
+        }
+        if (previous == null
+                || routing.shards().size() != previous.shards().size()) {
+            return false;
+        }
+        for (final IndexShardRoutingTable shardTable : routing) {
+            final IndexShardRoutingTable previousShardTable = previous
+                    .shard(shardTable.shardId().id());
+            if (previousShardTable == null
+                    || !shardTable.shards().equals(
+                            previousShardTable.shards())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized File file() {
+        return file;
+    }
+
+    public synchronized long recordedCount() {
+        return recordedCount;
+    }
+
+    public long droppedCount() {
+        return droppedCount.get();
+    }
+
+    public int queueSize() {
+        return queue.size();
+    }
+
+    private static class PendingEvent {
+        final long timestamp;
+
+        final ClusterChangedEvent event;
+
+        PendingEvent(final long timestamp, final ClusterChangedEvent event) {
+            this.timestamp = timestamp;
+            this.event = event;
+        }
+    }
+
+    public static class Reader implements Closeable {
+        private final StreamInput in;
+
+        private final DiscoveryNode localNode;
+
+        private ClusterState previousState;
+
+        public Reader(final File file) throws IOException {
+            in = new InputStreamStreamInput(new GZIPInputStream(
+                    new BufferedInputStream(new FileInputStream(file))));
+            try {
+                if (!FORMAT_NAME.equals(in.readString())) {
+                    throw new IOException(file + " is not an event file.");
+                }
+                final int formatVersion = in.readVInt();
+                if (formatVersion != FORMAT_VERSION) {
+                    throw new IOException("Unsupported format version: "
+                            + formatVersion);
+                }
+                in.setVersion(Version.fromId(in.readVInt()));
+                localNode = DiscoveryNode.readNode(in);
+                previousState = ClusterState.Builder.readFrom(in, localNode,
+                        null);
+            } catch (final IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        public DiscoveryNode localNode() {
+            return localNode;
+        }
+
+        // returns null at the end of events
+        public RecordedEvent next() throws IOException {
+            try {
+                if (!in.readBoolean()) {
+                    return null;
+                }
+            } catch (final EOFException e) {
+                // the node did not stop normally
+                return null;
+            }
+            final long timestamp = in.readVLong();
+            final String source = in.readString();
+            final ClusterState state = readState();
+            final ClusterChangedEvent event = new ClusterChangedEvent(source,
+                    state, previousState);
+            previousState = state;
+            return new RecordedEvent(timestamp, event);
+        }
+
+        // unchanged parts are shared with the previous state, same as a
+        // published state on zen discovery, so *Changed() of an event works
+        private ClusterState readState() throws IOException {
+            final ClusterState.Builder builder = ClusterState.builder(
+                    previousState).version(in.readVLong());
+            if (in.readBoolean()) {
+                builder.nodes(DiscoveryNodes.Builder.readFrom(in, localNode));
+            }
+            if (in.readBoolean()) {
+                builder.blocks(ClusterBlocks.Builder.readClusterBlocks(in));
+            }
+
+            final byte metaDataMode = in.readByte();
+            if (metaDataMode == FULL) {
+                builder.metaData(MetaData.Builder.readFrom(in));
+            } else if (metaDataMode == INDICES) {
+                final MetaData.Builder metaDataBuilder = MetaData.builder(
+                        previousState.metaData()).version(in.readVLong());
+                for (final String index : in.readStringArray()) {
+                    metaDataBuilder.remove(index);
+                }
+                final int size = in.readVInt();
+                for (int i = 0; i < size; i++) {
+                    metaDataBuilder.put(IndexMetaData.Builder.readFrom(in),
+                            false);
+                }
+                builder.metaData(metaDataBuilder.build());
+            }
+
+            if (in.readByte() == INDICES) {
+                final RoutingTable.Builder routingBuilder = RoutingTable
+                        .builder(previousState.routingTable()).version(
+                                in.readVLong());
+                for (final String index : in.readStringArray()) {
+                    routingBuilder.remove(index);
+                }
+                final int size = in.readVInt();
+                for (int i = 0; i < size; i++) {
+                    routingBuilder.add(IndexRoutingTable.Builder.readFrom(in));
+                }
+                builder.routingTable(routingBuilder.build());
+            }
+            return builder.build();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    public static class RecordedEvent {
+        private final long timestamp;
+
+        private final ClusterChangedEvent event;
+
+        RecordedEvent(final long timestamp, final ClusterChangedEvent event) {
+            this.timestamp = timestamp;
+            this.event = event;
+        }
+
+        public long timestamp() {
+            return timestamp;
+        }
+
+        public ClusterChangedEvent event() {
+            return event;
+        }
+    }
+}
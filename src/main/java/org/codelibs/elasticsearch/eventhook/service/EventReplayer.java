@@ -0,0 +1,141 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.TimeValue;
+
+public class EventReplayer {
+
+    private static final ESLogger logger = Loggers
+            .getLogger(EventReplayer.class);
+
+    private static final long IDLE_CHECK_INTERVAL = 10;
+
+    private final EventHookService eventHookService;
+
+    private final ClusterService clusterService;
+
+    private final String index;
+
+    private IndexMetaData localIndexMetaData;
+
+    private MetaData lastRecordedMetaData;
+
+    private MetaData lastMetaData;
+
+    public EventReplayer(final EventHookService eventHookService,
+            final ClusterService clusterService) {
+        this.eventHookService = eventHookService;
+        this.clusterService = clusterService;
+        index = eventHookService.hookRegistry().index();
+    }
+
+    // a dry run, so hooks have no side effects on a live node
+    public ReplayReport replay(final File file, final double speed,
+            final TimeValue idleTimeout) throws IOException,
+            InterruptedException {
+        return replay(file, speed, idleTimeout, true);
+    }
+
+    // speed is 1 for real time, 2 for twice as fast and 0 for max speed
+    public synchronized ReplayReport replay(final File file,
+            final double speed, final TimeValue idleTimeout,
+            final boolean dryRun) throws IOException, InterruptedException {
+        final HookExecutor hookExecutor = eventHookService.hookExecutor();
+        // stats of the node are not touched by a replay
+        final HookMetrics hookMetrics = new HookMetrics();
+        // hooks are loaded from this node instead of recorded states
+        localIndexMetaData = clusterService.state().metaData().index(index);
+        lastRecordedMetaData = null;
+        lastMetaData = null;
+        final long droppedCount = hookExecutor.droppedCount();
+
+        logger.info("Replaying {} at {}{}.", file, speed > 0 ? speed + "x"
+                : "max speed", dryRun ? " as a dry run" : "");
+        int eventCount = 0;
+        int maxQueueSize = 0;
+        final long startTime = System.nanoTime();
+        final EventRecorder.Reader reader = new EventRecorder.Reader(file);
+        try {
+            long firstTimestamp = -1;
+            ClusterState previousState = null;
+            EventRecorder.RecordedEvent recorded;
+            while ((recorded = reader.next()) != null) {
+                if (speed > 0) {
+                    if (firstTimestamp < 0) {
+                        firstTimestamp = recorded.timestamp();
+                    }
+                    final long offset = recorded.timestamp() - firstTimestamp;
+                    final long delay = (long) (offset / speed)
+                            - TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                                    - startTime);
+                    if (delay > 0) {
+                        Thread.sleep(delay);
+                    }
+                }
+
+                final ClusterChangedEvent event = recorded.event();
+                if (previousState == null) {
+                    previousState = toLocalState(event.previousState());
+                }
+                final ClusterState state = toLocalState(event.state());
+                eventHookService.replay(new ClusterChangedEvent(event
+                        .source(), state, previousState), dryRun,
+                        hookMetrics);
+                previousState = state;
+                eventCount++;
+                maxQueueSize = Math.max(maxQueueSize, hookExecutor.queueSize());
+            }
+        } finally {
+            reader.close();
+        }
+        final long dispatchNanos = System.nanoTime() - startTime;
+
+        // twice in a row because a next band is queued after a band
+        final long timeout = System.nanoTime() + idleTimeout.nanos();
+        int idleCount = 0;
+        while (idleCount < 2 && System.nanoTime() < timeout) {
+            final int queueSize = hookExecutor.queueSize();
+            maxQueueSize = Math.max(maxQueueSize, queueSize);
+            if (queueSize == 0 && hookExecutor.activeCount() == 0) {
+                idleCount++;
+            } else {
+                idleCount = 0;
+            }
+            Thread.sleep(IDLE_CHECK_INTERVAL);
+        }
+        if (idleCount < 2) {
+            logger.warn("Hooks are still running after {}.", idleTimeout);
+        }
+
+        return new ReplayReport(file.getName(), dryRun, eventCount,
+                dispatchNanos, System.nanoTime() - startTime, maxQueueSize,
+                hookExecutor.droppedCount() - droppedCount,
+                hookMetrics.stats());
+    }
+
+    private ClusterState toLocalState(final ClusterState state) {
+        // keep the same instance for unchanged metadata
+        if (state.metaData() != lastRecordedMetaData) {
+            final MetaData.Builder builder = MetaData.builder(state
+                    .metaData());
+            if (localIndexMetaData != null) {
+                builder.put(localIndexMetaData, false);
+            } else {
+                builder.remove(index);
+            }
+            lastRecordedMetaData = state.metaData();
+            lastMetaData = builder.build();
+        }
+        return ClusterState.builder(state).metaData(lastMetaData).build();
+    }
+}
@@ -0,0 +1,79 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+
+// shared by all hooks in one lookup so that an event is inspected once
+final class FilterContext {
+
+    final ClusterChangedEvent event;
+
+    final int kinds;
+
+    final DiscoveryNodes nodes;
+
+    final DiscoveryNode localNode;
+
+    final boolean localMaster;
+
+    private final HookRing ring;
+
+    private List<String> changedIndices;
+
+    FilterContext(final ClusterChangedEvent event, final int kinds,
+            final DiscoveryNodes nodes, final boolean localMaster,
+            final HookRing ring) {
+        this.event = event;
+        this.kinds = kinds;
+        this.nodes = nodes;
+        this.localMaster = localMaster;
+        this.ring = ring;
+        localNode = nodes != null ? nodes.localNode() : null;
+    }
+
+    // all nodes agree on an owner because they see the same state version,
+    // and at most one node owns a hook for an event
+    boolean owns(final Hook hook) {
+        if (event == null || ring == null) {
+            // on_master and off_master events are local
+            return true;
+        }
+        if (hook.masterOwned()) {
+            // a node chosen by HookRing might never receive the event
+            return localMaster;
+        }
+        return localNode != null
+                && localNode.id().equals(
+                        ring.owner(HookRing.key(hook, event.state()
+                                .version())));
+    }
+
+    // created and deleted indices, or changed indices for index_changed
+    List<String> changedIndices() {
+        if (changedIndices == null) {
+            if (event instanceof IndexChangedEvent) {
+                final List<IndexChange> changes = ((IndexChangedEvent) event)
+                        .indexChanges();
+                final List<String> indices = new ArrayList<String>(
+                        changes.size());
+                for (final IndexChange change : changes) {
+                    indices.add(change.index());
+                }
+                changedIndices = indices;
+            } else if (event == null || !event.metaDataChanged()) {
+                changedIndices = Collections.emptyList();
+            } else {
+                final List<String> indices = new ArrayList<String>(
+                        event.indicesCreated());
+                indices.addAll(event.indicesDeleted());
+                changedIndices = indices;
+            }
+        }
+        return changedIndices;
+    }
+}
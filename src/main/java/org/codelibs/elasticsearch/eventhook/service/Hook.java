@@ -0,0 +1,270 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.script.ScriptService.ScriptType;
+import org.elasticsearch.search.SearchHit;
+
+public class Hook implements Comparable<Hook> {
+
+    public static final String JAVA_LANG = "java";
+
+    public static final String WEBHOOK_LANG = "webhook";
+
+    private final String id;
+
+    private final String type;
+
+    private final long version;
+
+    private final long priority;
+
+    private final String lang;
+
+    private final String script;
+
+    private final ScriptType scriptType;
+
+    private final TimeValue coalesce;
+
+    private final boolean stopOnFailure;
+
+    private final int kinds;
+
+    private final RunOn runOn;
+
+    private final boolean masterOwned;
+
+    private final TimeValue timeout;
+
+    private final HookFilter filter;
+
+    private final RateLimit rateLimit;
+
+    private final TimeValue cooldown;
+
+    private final EventHook eventHook;
+
+    private final Webhook webhook;
+
+    public Hook(final String id, final String type, final long version,
+            final Map<String, Object> source) {
+        this.id = id;
+        this.type = type;
+        this.version = version;
+        priority = getPriority(source.get("priority"));
+        webhook = Webhook.parse(source.get("webhook"));
+        if (webhook != null) {
+            // sent by WebhookSender instead of the script service
+            lang = WEBHOOK_LANG;
+            script = webhook.endpoint();
+        } else {
+            lang = source.get("lang").toString();
+            script = source.get("script").toString();
+        }
+        scriptType = getScriptType(source.get("script_type"));
+        coalesce = getTimeValue(source.get("coalesce"));
+        stopOnFailure = getBoolean(source.get("stop_on_failure"));
+        kinds = EventKind.toMask(getList(source.get("kinds")));
+        runOn = RunOn.parse(source.get("run_on"));
+        // other nodes receive a published state with another source, so
+        // only the master sees events of a type
+        masterOwned = runOn.isSharded() && kinds == 0
+                && !HookSet.ALL_TYPE.equals(type)
+                && !HookSet.INDEX_CHANGED_TYPE.equals(type);
+        timeout = getTimeValue(source.get("timeout"));
+        filter = HookFilter.parse(source.get("filter"));
+        rateLimit = RateLimit.parse(source.get("rate_limit"));
+        cooldown = getTimeValue(source.get("cooldown"));
+        eventHook = null;
+    }
+
+    public Hook(final EventHook eventHook) {
+        id = eventHook.id();
+        type = eventHook.type();
+        version = 0;
+        priority = eventHook.priority();
+        lang = JAVA_LANG;
+        script = eventHook.getClass().getName();
+        scriptType = ScriptType.INLINE;
+        coalesce = null;
+        stopOnFailure = false;
+        kinds = 0;
+        runOn = RunOn.ALL;
+        masterOwned = false;
+        timeout = null;
+        filter = null;
+        rateLimit = null;
+        cooldown = null;
+        this.eventHook = eventHook;
+        webhook = null;
+    }
+
+    public static Hook parse(final SearchHit hit) {
+        final Map<String, Object> source = hit.getSource();
+        if (source == null
+                || source.get("webhook") == null
+                && (source.get("lang") == null || source.get("script") == null)) {
+            return null;
+        }
+        return new Hook(hit.getId(), hit.getType(), hit.getVersion(), source);
+    }
+
+    private static List<?> getList(final Object value) {
+        if (value instanceof List) {
+            return (List<?>) value;
+        } else if (value != null) {
+            return Collections.singletonList(value);
+        }
+        return Collections.emptyList();
+    }
+
+    private static boolean getBoolean(final Object value) {
+        if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue();
+        } else if (value != null) {
+            return Boolean.parseBoolean(value.toString());
+        }
+        return false;
+    }
+
+    private static long getPriority(final Object priority) {
+        if (priority instanceof Number) {
+            return ((Number) priority).longValue();
+        } else if (priority != null) {
+            try {
+                return Long.parseLong(priority.toString());
+            } catch (final NumberFormatException e) {
+                // use the lowest priority
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static TimeValue getTimeValue(final Object value) {
+        if (value instanceof Number) {
+            return TimeValue.timeValueMillis(((Number) value).longValue());
+        } else if (value != null) {
+            return TimeValue.parseTimeValue(value.toString(), null);
+        }
+        return null;
+    }
+
+    private static ScriptType getScriptType(final Object scriptType) {
+        if (scriptType == null) {
+            return ScriptType.INLINE;
+        } else if ("INDEXED".equalsIgnoreCase(scriptType.toString())) {
+            return ScriptType.INDEXED;
+        } else if ("FILE".equalsIgnoreCase(scriptType.toString())) {
+            return ScriptType.FILE;
+        } else {
+            return ScriptType.INLINE;
+        }
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String type() {
+        return type;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public long priority() {
+        return priority;
+    }
+
+    public String lang() {
+        return lang;
+    }
+
+    public String script() {
+        return script;
+    }
+
+    public ScriptType scriptType() {
+        return scriptType;
+    }
+
+    public TimeValue coalesce() {
+        return coalesce;
+    }
+
+    public boolean stopOnFailure() {
+        return stopOnFailure;
+    }
+
+    public int kinds() {
+        return kinds;
+    }
+
+    public RunOn runOn() {
+        return runOn;
+    }
+
+    // true if a sharded hook is owned by the master instead of HookRing
+    boolean masterOwned() {
+        return masterOwned;
+    }
+
+    public TimeValue timeout() {
+        return timeout;
+    }
+
+    // null if no filter is defined
+    public HookFilter filter() {
+        return filter;
+    }
+
+    // null if not limited
+    public RateLimit rateLimit() {
+        return rateLimit;
+    }
+
+    // a minimum time between invocations on a node
+    public TimeValue cooldown() {
+        return cooldown;
+    }
+
+    // true if this hook should be scheduled for the event on this node
+    boolean matches(final FilterContext context) {
+        if (runOn.isSharded()) {
+            if (!context.owns(this)) {
+                return false;
+            }
+        } else if (!runOn.matches(context.localNode, context.localMaster)) {
+            return false;
+        }
+        return filter == null || filter.matches(context);
+    }
+
+    // null for a scripted hook
+    public EventHook eventHook() {
+        return eventHook;
+    }
+
+    // null if not a webhook
+    public Webhook webhook() {
+        return webhook;
+    }
+
+    @Override
+    public int compareTo(final Hook o) {
+        if (priority != o.priority) {
+            return priority < o.priority ? -1 : 1;
+        }
+        return id.compareTo(o.id);
+    }
+
+    @Override
+    public String toString() {
+        return type + "/" + id + "[" + version + "]";
+    }
+}
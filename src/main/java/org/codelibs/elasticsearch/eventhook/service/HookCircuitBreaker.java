@@ -0,0 +1,181 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+
+public class HookCircuitBreaker extends AbstractComponent {
+
+    private static final String CLUSTER_EVENTHOOK_BREAKER_FAILURE_THRESHOLD = "cluster.eventhook.breaker.failure_threshold";
+
+    private static final String CLUSTER_EVENTHOOK_BREAKER_WINDOW = "cluster.eventhook.breaker.window";
+
+    private static final String CLUSTER_EVENTHOOK_BREAKER_OPEN_TIME = "cluster.eventhook.breaker.open_time";
+
+    private final HookMetrics hookMetrics;
+
+    private final int failureThreshold;
+
+    private final long windowMillis;
+
+    private final long openMillis;
+
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<String, Circuit>();
+
+    public HookCircuitBreaker(final Settings settings,
+            final HookMetrics hookMetrics) {
+        super(settings);
+        this.hookMetrics = hookMetrics;
+        failureThreshold = settings.getAsInt(
+                CLUSTER_EVENTHOOK_BREAKER_FAILURE_THRESHOLD, 5);
+        windowMillis = settings.getAsTime(CLUSTER_EVENTHOOK_BREAKER_WINDOW,
+                TimeValue.timeValueMinutes(1)).millis();
+        openMillis = settings.getAsTime(CLUSTER_EVENTHOOK_BREAKER_OPEN_TIME,
+                TimeValue.timeValueSeconds(30)).millis();
+    }
+
+    // returns false if the hook should be skipped
+    public boolean allow(final Hook hook) {
+        if (failureThreshold <= 0) {
+            return true;
+        }
+        final boolean allowed = circuit(hook).allow(
+                System.currentTimeMillis());
+        if (!allowed) {
+            hookMetrics.get(hook).skipped();
+        }
+        return allowed;
+    }
+
+    // a hook returning false is not a failure, so a guard does not open
+    // its circuit
+    public void record(final Hook hook, final HookPipeline.Outcome outcome) {
+        if (outcome == HookPipeline.Outcome.TIMEOUT) {
+            hookMetrics.get(hook).timedOut();
+        }
+        if (failureThreshold <= 0) {
+            return;
+        }
+        circuit(hook).record(!outcome.isError(), System.currentTimeMillis());
+    }
+
+    public State state(final Hook hook) {
+        final Circuit circuit = circuits.get(key(hook));
+        return circuit != null ? circuit.state : State.CLOSED;
+    }
+
+    // removes circuits of deleted hooks
+    public void retain(final HookSet hookSet) {
+        circuits.keySet().retainAll(hookSet.keys());
+    }
+
+    public void clear() {
+        circuits.clear();
+    }
+
+    private static String key(final Hook hook) {
+        return hook.type() + "/" + hook.id();
+    }
+
+    private Circuit circuit(final Hook hook) {
+        final String key = key(hook);
+        Circuit circuit = circuits.get(key);
+        if (circuit == null) {
+            circuit = new Circuit(hook);
+            final Circuit current = circuits.putIfAbsent(key, circuit);
+            if (current != null) {
+                circuit = current;
+            }
+        }
+        return circuit;
+    }
+
+    private class Circuit {
+        private final Hook hook;
+
+        private volatile State state = State.CLOSED;
+
+        private int failureCount;
+
+        private long firstFailureTime;
+
+        private long openedTime;
+
+        Circuit(final Hook hook) {
+            this.hook = hook;
+        }
+
+        synchronized boolean allow(final long now) {
+            switch (state) {
+            case OPEN:
+                if (now - openedTime < openMillis) {
+                    return false;
+                }
+                // let one execution probe the hook
+                openedTime = now;
+                changeState(State.HALF_OPEN);
+                return true;
+            case HALF_OPEN:
+                if (now - openedTime < openMillis) {
+                    return false;
+                }
+                // the probe was not recorded, e.g. rejected
+                openedTime = now;
+                return true;
+            case CLOSED:
+            default:
+                return true;
+            }
+        }
+
+        synchronized void record(final boolean success, final long now) {
+            if (success) {
+                failureCount = 0;
+                if (state != State.CLOSED) {
+                    logger.info("Closed a circuit for {}.", hook);
+                    changeState(State.CLOSED);
+                }
+                return;
+            }
+
+            if (state == State.HALF_OPEN) {
+                open(now);
+                return;
+            }
+            if (failureCount == 0 || now - firstFailureTime > windowMillis) {
+                failureCount = 0;
+                firstFailureTime = now;
+            }
+            failureCount++;
+            if (state == State.CLOSED && failureCount >= failureThreshold) {
+                logger.warn("Opened a circuit for {} after {} failures.",
+                        hook, failureCount);
+                open(now);
+            }
+        }
+
+        private void open(final long now) {
+            openedTime = now;
+            failureCount = 0;
+            changeState(State.OPEN);
+        }
+
+        private void changeState(final State newState) {
+            state = newState;
+            hookMetrics.get(hook).breakerState(newState);
+        }
+    }
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+}
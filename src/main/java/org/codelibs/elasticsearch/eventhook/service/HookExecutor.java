@@ -0,0 +1,135 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.threadpool.ThreadPool;
+
+public class HookExecutor extends AbstractComponent {
+
+    public static final String THREAD_POOL_NAME = "eventhook";
+
+    private final ThreadPool threadPool;
+
+    private volatile EventHookConfig config;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    public HookExecutor(final Settings settings, final ThreadPool threadPool) {
+        super(settings);
+        this.threadPool = threadPool;
+        config = new EventHookConfig(settings);
+    }
+
+    public void applyConfig(final EventHookConfig config) {
+        this.config = config;
+    }
+
+    // looked up on each call because a new queue_size replaces the pool
+    private Executor executor() {
+        return threadPool.executor(THREAD_POOL_NAME);
+    }
+
+    public void execute(final Runnable command) {
+        final Executor executor = executor();
+        try {
+            executor.execute(command);
+        } catch (final EsRejectedExecutionException e) {
+            switch (config.rejectionPolicy()) {
+            case DROP_OLDEST:
+                if (executor instanceof ThreadPoolExecutor) {
+                    final Runnable oldest = ((ThreadPoolExecutor) executor)
+                            .getQueue().poll();
+                    if (oldest != null) {
+                        drop(oldest, e);
+                        try {
+                            executor.execute(command);
+                            break;
+                        } catch (final EsRejectedExecutionException e1) {
+                            // drop the new one
+                        }
+                    }
+                }
+                drop(command, e);
+                break;
+            case DROP_NEWEST:
+            default:
+                drop(command, e);
+                break;
+            }
+        }
+    }
+
+    public TimeValue timeout(final Hook hook) {
+        return hook.timeout() != null ? hook.timeout() : config
+                .scriptTimeout();
+    }
+
+    public ScheduledFuture<?> schedule(final TimeValue delay,
+            final Runnable command) {
+        return threadPool.schedule(delay, ThreadPool.Names.GENERIC,
+                command);
+    }
+
+    private void drop(final Runnable command,
+            final EsRejectedExecutionException e) {
+        droppedCount.incrementAndGet();
+        logger.debug("Dropped a hook execution.", e);
+        if (command instanceof Task) {
+            ((Task) command).onRejected();
+        }
+    }
+
+    public RejectionPolicy rejectionPolicy() {
+        return config.rejectionPolicy();
+    }
+
+    public int queueSize() {
+        final Executor executor = executor();
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        return 0;
+    }
+
+    public int activeCount() {
+        final Executor executor = executor();
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getActiveCount();
+        }
+        return 0;
+    }
+
+    public long droppedCount() {
+        return droppedCount.get();
+    }
+
+    public abstract static class Task implements Runnable {
+        public void onRejected() {
+        }
+    }
+
+    public enum RejectionPolicy {
+        // no caller runs policy, because the caller is a cluster state
+        // update thread which hooks must not block
+        DROP_OLDEST, DROP_NEWEST;
+
+        public static RejectionPolicy parse(final String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT).replace('-',
+                        '_'));
+            } catch (final IllegalArgumentException e) {
+                throw new ElasticsearchIllegalArgumentException(
+                        "Unknown rejection policy: " + value, e);
+            }
+        }
+    }
+}
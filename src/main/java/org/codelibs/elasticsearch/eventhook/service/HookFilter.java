@@ -0,0 +1,156 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.regex.Regex;
+
+public class HookFilter {
+
+    private final String[] indices;
+
+    private final Map<String, String> nodeAttributes;
+
+    private final Boolean isMaster;
+
+    private final int minNodes;
+
+    private final int maxNodes;
+
+    private final int changed;
+
+    private HookFilter(final String[] indices,
+            final Map<String, String> nodeAttributes, final Boolean isMaster,
+            final int minNodes, final int maxNodes, final int changed) {
+        this.indices = indices;
+        this.nodeAttributes = nodeAttributes;
+        this.isMaster = isMaster;
+        this.minNodes = minNodes;
+        this.maxNodes = maxNodes;
+        this.changed = changed;
+    }
+
+    // returns null if no filter is defined
+    public static HookFilter parse(final Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof Map)) {
+            throw new ElasticsearchIllegalArgumentException(
+                    "filter is not an object: " + value);
+        }
+
+        final Map<?, ?> source = (Map<?, ?>) value;
+        String[] indices = null;
+        Map<String, String> nodeAttributes = null;
+        Boolean isMaster = null;
+        int minNodes = 0;
+        int maxNodes = Integer.MAX_VALUE;
+        int changed = 0;
+        for (final Map.Entry<?, ?> entry : source.entrySet()) {
+            final String name = entry.getKey().toString();
+            final Object fieldValue = entry.getValue();
+            if (fieldValue == null) {
+                continue;
+            }
+            if ("indices".equals(name)) {
+                final List<?> list = getList(fieldValue);
+                indices = new String[list.size()];
+                for (int i = 0; i < indices.length; i++) {
+                    indices[i] = list.get(i).toString();
+                }
+            } else if ("node_attributes".equals(name)) {
+                if (!(fieldValue instanceof Map)) {
+                    throw new ElasticsearchIllegalArgumentException(
+                            "node_attributes is not an object: " + fieldValue);
+                }
+                nodeAttributes = new HashMap<String, String>();
+                for (final Map.Entry<?, ?> attr : ((Map<?, ?>) fieldValue)
+                        .entrySet()) {
+                    nodeAttributes.put(attr.getKey().toString(),
+                            String.valueOf(attr.getValue()));
+                }
+            } else if ("is_master".equals(name)) {
+                isMaster = Boolean.valueOf(fieldValue.toString());
+            } else if ("min_nodes".equals(name)) {
+                minNodes = getInt(name, fieldValue);
+            } else if ("max_nodes".equals(name)) {
+                maxNodes = getInt(name, fieldValue);
+            } else if ("changed".equals(name)) {
+                changed = EventKind.toMask(getList(fieldValue));
+            } else {
+                throw new ElasticsearchIllegalArgumentException(
+                        "Unknown filter: " + name);
+            }
+        }
+        return new HookFilter(indices, nodeAttributes, isMaster, minNodes,
+                maxNodes, changed);
+    }
+
+    private static List<?> getList(final Object value) {
+        if (value instanceof List) {
+            return (List<?>) value;
+        }
+        return Collections.singletonList(value);
+    }
+
+    private static int getInt(final String name, final Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        try {
+            return Integer.parseInt(value.toString());
+        } catch (final NumberFormatException e) {
+            throw new ElasticsearchIllegalArgumentException(name
+                    + " is not a number: " + value);
+        }
+    }
+
+    int changed() {
+        return changed;
+    }
+
+    // cheap checks first, event checks last
+    boolean matches(final FilterContext context) {
+        if (isMaster != null && isMaster.booleanValue() != context.localMaster) {
+            return false;
+        }
+        if (context.nodes != null) {
+            final int size = context.nodes.size();
+            if (size < minNodes || size > maxNodes) {
+                return false;
+            }
+        }
+        if (nodeAttributes != null) {
+            if (context.localNode == null) {
+                return false;
+            }
+            final Map<String, String> attributes = context.localNode
+                    .attributes();
+            for (final Map.Entry<String, String> entry : nodeAttributes
+                    .entrySet()) {
+                if (!entry.getValue().equals(attributes.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+        }
+        // context.kinds is classified once with the union of kinds and
+        // filters of all hooks, so only the kinds of this filter count
+        if (changed != 0 && (context.kinds & changed) == 0) {
+            return false;
+        }
+        if (indices != null) {
+            // on_master and off_master events have no indices
+            for (final String name : context.changedIndices()) {
+                if (Regex.simpleMatch(indices, name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+}
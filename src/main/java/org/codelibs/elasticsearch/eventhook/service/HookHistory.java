@@ -0,0 +1,321 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+// results of successful runs are mostly booleans or numbers, which are kept
+// as they are and converted to strings only when entries are read; other
+// results and failures are summarized when recorded, so a slot never keeps
+// a live object or exception reachable
+public class HookHistory extends AbstractComponent {
+
+    private static final String CLUSTER_EVENTHOOK_HISTORY_SIZE = "cluster.eventhook.history.size";
+
+    private static final int MAX_SUMMARY_LENGTH = 256;
+
+    private final Slot[] slots;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    public HookHistory(final Settings settings) {
+        super(settings);
+        final int size = Math.max(
+                settings.getAsInt(CLUSTER_EVENTHOOK_HISTORY_SIZE, 1000), 0);
+        // preallocated, so recording does not create entries
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    public boolean enabled() {
+        return slots.length > 0;
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    public void record(final String eventType, final String source,
+            final Hook hook, final long startTime, final long queueNanos,
+            final long tookNanos, final boolean success, final Object result,
+            final Throwable failure) {
+        if (slots.length == 0) {
+            return;
+        }
+
+        final Object resultValue = isImmutable(result) ? result
+                : summary(result);
+        final String failureSummary = failure != null ? summary(failure)
+                : null;
+        final long seq = sequence.getAndIncrement();
+        final Slot slot = slots[(int) (seq % slots.length)];
+        // a lock per slot is not contended unless writers wrap around
+        synchronized (slot) {
+            if (slot.seq > seq) {
+                // overwritten by a newer writer
+                return;
+            }
+            slot.seq = seq;
+            slot.eventType = eventType;
+            slot.source = source;
+            slot.hookType = hook.type();
+            slot.hookId = hook.id();
+            slot.hookVersion = hook.version();
+            slot.startTime = startTime;
+            slot.queueNanos = queueNanos;
+            slot.tookNanos = tookNanos;
+            slot.success = success;
+            slot.result = resultValue;
+            slot.failure = failureSummary;
+        }
+    }
+
+    // returns newer entries first
+    public List<Entry> entries(final int size, final String[] hookPatterns) {
+        final List<Entry> entries = new ArrayList<Entry>();
+        final long last = sequence.get() - 1;
+        final long first = Math.max(last - slots.length + 1, 0);
+        for (long seq = last; seq >= first && entries.size() < size; seq--) {
+            final Slot slot = slots[(int) (seq % slots.length)];
+            final Entry entry;
+            synchronized (slot) {
+                if (slot.seq != seq || slot.hookType == null) {
+                    // not written yet or overwritten
+                    continue;
+                }
+                if (hookPatterns != null
+                        && !Regex.simpleMatch(hookPatterns, slot.hookType
+                                + "/" + slot.hookId)) {
+                    continue;
+                }
+                entry = new Entry(slot);
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    public long recordedCount() {
+        return sequence.get();
+    }
+
+    public void clear() {
+        for (final Slot slot : slots) {
+            synchronized (slot) {
+                slot.hookType = null;
+                slot.hookId = null;
+                slot.source = null;
+                slot.result = null;
+                slot.failure = null;
+            }
+        }
+    }
+
+    // values kept in a slot without a copy
+    private static boolean isImmutable(final Object value) {
+        return value == null || value instanceof Boolean
+                || value instanceof Integer || value instanceof Long
+                || value instanceof Double || value instanceof Float
+                || value instanceof Short || value instanceof Byte
+                || value instanceof String
+                && ((String) value).length() <= MAX_SUMMARY_LENGTH;
+    }
+
+    // an exception is summarized by its class name and message
+    private static String summary(final Object value) {
+        final String summary = value.toString();
+        if (summary.length() > MAX_SUMMARY_LENGTH) {
+            return summary.substring(0, MAX_SUMMARY_LENGTH) + "...";
+        }
+        return summary;
+    }
+
+    private static class Slot {
+        long seq = -1;
+
+        String eventType;
+
+        String source;
+
+        String hookType;
+
+        String hookId;
+
+        long hookVersion;
+
+        long startTime;
+
+        long queueNanos;
+
+        long tookNanos;
+
+        boolean success;
+
+        // null, a boxed primitive, or a string
+        Object result;
+
+        String failure;
+    }
+
+    public static class Entry implements Streamable, ToXContent {
+        private long startTime;
+
+        private String eventType;
+
+        private String source;
+
+        private String hookType;
+
+        private String hookId;
+
+        private long hookVersion;
+
+        private long queueNanos;
+
+        private long tookNanos;
+
+        private boolean success;
+
+        private String result;
+
+        private String failure;
+
+        private String node;
+
+        Entry() {
+        }
+
+        Entry(final Slot slot) {
+            startTime = slot.startTime;
+            eventType = slot.eventType;
+            source = slot.source;
+            hookType = slot.hookType;
+            hookId = slot.hookId;
+            hookVersion = slot.hookVersion;
+            queueNanos = slot.queueNanos;
+            tookNanos = slot.tookNanos;
+            success = slot.success;
+            result = slot.result != null ? slot.result.toString() : null;
+            failure = slot.failure;
+        }
+
+        public static Entry readEntry(final StreamInput in) throws IOException {
+            final Entry entry = new Entry();
+            entry.readFrom(in);
+            return entry;
+        }
+
+        public long startTime() {
+            return startTime;
+        }
+
+        public String eventType() {
+            return eventType;
+        }
+
+        public String hookKey() {
+            return hookType + "/" + hookId;
+        }
+
+        public boolean success() {
+            return success;
+        }
+
+        public String result() {
+            return result;
+        }
+
+        // null if no exception is thrown
+        public String failure() {
+            return failure;
+        }
+
+        public String node() {
+            return node;
+        }
+
+        // set by the node which returns the entry
+        public void node(final String node) {
+            this.node = node;
+        }
+
+        @Override
+        public void readFrom(final StreamInput in) throws IOException {
+            startTime = in.readVLong();
+            eventType = in.readString();
+            source = in.readString();
+            hookType = in.readString();
+            hookId = in.readString();
+            hookVersion = in.readVLong();
+            queueNanos = in.readVLong();
+            tookNanos = in.readVLong();
+            success = in.readBoolean();
+            result = in.readOptionalString();
+            failure = in.readOptionalString();
+            node = in.readOptionalString();
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            out.writeVLong(startTime);
+            out.writeString(eventType);
+            out.writeString(source);
+            out.writeString(hookType);
+            out.writeString(hookId);
+            out.writeVLong(hookVersion);
+            out.writeVLong(queueNanos);
+            out.writeVLong(tookNanos);
+            out.writeBoolean(success);
+            out.writeOptionalString(result);
+            out.writeOptionalString(failure);
+            out.writeOptionalString(node);
+        }
+
+        @Override
+        public XContentBuilder toXContent(final XContentBuilder builder,
+                final Params params) throws IOException {
+            builder.startObject();
+            builder.field("timestamp", startTime);
+            if (node != null) {
+                builder.field("node", node);
+            }
+            builder.field("event_type", eventType);
+            builder.field("source", source);
+            builder.field("hook", hookKey());
+            builder.field("hook_version", hookVersion);
+            timeField(builder, "queue_time", queueNanos);
+            timeField(builder, "took", tookNanos);
+            builder.field("success", success);
+            if (result != null) {
+                builder.field("result", result);
+            }
+            if (failure != null) {
+                builder.field("failure", failure);
+            }
+            builder.endObject();
+            return builder;
+        }
+
+        private static void timeField(final XContentBuilder builder,
+                final String name, final long nanos) throws IOException {
+            final TimeValue time = TimeValue.timeValueNanos(nanos);
+            if (builder.humanReadable()) {
+                builder.field(name, time.toString());
+            }
+            builder.field(name + "_in_micros", nanos / 1000);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class HookMetrics {
+
+    private final ConcurrentMap<String, HookStats> statsMap = new ConcurrentHashMap<String, HookStats>();
+
+    public HookStats get(final Hook hook) {
+        final String key = hook.type() + "/" + hook.id();
+        HookStats stats = statsMap.get(key);
+        if (stats == null) {
+            stats = new HookStats(hook.type(), hook.id());
+            final HookStats current = statsMap.putIfAbsent(key, stats);
+            if (current != null) {
+                stats = current;
+            }
+        }
+        return stats;
+    }
+
+    public List<HookStats> stats() {
+        return new ArrayList<HookStats>(statsMap.values());
+    }
+
+    // removes stats of deleted hooks
+    public void retain(final HookSet hookSet) {
+        statsMap.keySet().retainAll(hookSet.keys());
+    }
+
+    public void clear() {
+        statsMap.clear();
+    }
+}
@@ -0,0 +1,187 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.unit.TimeValue;
+
+public class HookPipeline {
+
+    private final ESLogger logger;
+
+    private final HookExecutor hookExecutor;
+
+    private final List<List<Hook>> bands;
+
+    private final Runner runner;
+
+    public HookPipeline(final ESLogger logger,
+            final HookExecutor hookExecutor, final List<Hook> hooks,
+            final Runner runner) {
+        this.logger = logger;
+        this.hookExecutor = hookExecutor;
+        this.runner = runner;
+        bands = createBands(hooks);
+    }
+
+    // hooks are sorted by priority
+    private static List<List<Hook>> createBands(final List<Hook> hooks) {
+        final List<List<Hook>> bands = new ArrayList<List<Hook>>();
+        List<Hook> band = null;
+        long priority = 0;
+        for (final Hook hook : hooks) {
+            if (band == null || hook.priority() != priority) {
+                band = new ArrayList<Hook>();
+                bands.add(band);
+                priority = hook.priority();
+            }
+            band.add(hook);
+        }
+        return bands;
+    }
+
+    public void start() {
+        runBand(0);
+    }
+
+    private void runBand(final int bandIndex) {
+        if (bandIndex >= bands.size()) {
+            runner.onFinished();
+            return;
+        }
+
+        final List<Hook> band = bands.get(bandIndex);
+        final AtomicInteger remaining = new AtomicInteger(band.size());
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        for (final Hook hook : band) {
+            final long queuedTime = System.nanoTime();
+            hookExecutor.execute(new HookExecutor.Task() {
+                private final AtomicBoolean completed = new AtomicBoolean(
+                        false);
+
+                private final Object workerLock = new Object();
+
+                private Thread worker;
+
+                @Override
+                public void run() {
+                    if (!runner.accept(hook)) {
+                        // skipped hooks are handled as failures
+                        if (completed.compareAndSet(false, true)) {
+                            done(false);
+                        }
+                        return;
+                    }
+                    synchronized (workerLock) {
+                        worker = Thread.currentThread();
+                    }
+                    final ScheduledFuture<?> watchdog = scheduleWatchdog();
+                    Outcome outcome = Outcome.FAILURE;
+                    try {
+                        outcome = runner.run(hook, System.nanoTime()
+                                - queuedTime);
+                    } finally {
+                        synchronized (workerLock) {
+                            worker = null;
+                        }
+                        // the watchdog may have interrupted this thread
+                        Thread.interrupted();
+                        if (watchdog != null) {
+                            watchdog.cancel(false);
+                        }
+                        // ignored if the hook timed out
+                        if (completed.compareAndSet(false, true)) {
+                            runner.onCompleted(hook, outcome);
+                            done(outcome == Outcome.SUCCESS);
+                        }
+                    }
+                }
+
+                private ScheduledFuture<?> scheduleWatchdog() {
+                    final TimeValue timeout = hookExecutor.timeout(hook);
+                    if (timeout == null || timeout.millis() <= 0) {
+                        return null;
+                    }
+                    return hookExecutor.schedule(timeout, new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!completed.compareAndSet(false, true)) {
+                                return;
+                            }
+                            logger.warn("{} timed out after {}.", hook,
+                                    timeout);
+                            synchronized (workerLock) {
+                                if (worker != null) {
+                                    // a script may ignore the interruption
+                                    worker.interrupt();
+                                }
+                            }
+                            runner.onCompleted(hook, Outcome.TIMEOUT);
+                            done(false);
+                        }
+                    });
+                }
+
+                @Override
+                public void onRejected() {
+                    done(false);
+                }
+
+                private void done(final boolean success) {
+                    if (!success && hook.stopOnFailure()) {
+                        stopped.set(true);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        if (stopped.get()) {
+                            if (logger.isDebugEnabled()) {
+                                logger.debug(
+                                        "Skipped {} bands after priority {}.",
+                                        bands.size() - bandIndex - 1,
+                                        hook.priority());
+                            }
+                            runner.onFinished();
+                        } else {
+                            runBand(bandIndex + 1);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    public interface Runner {
+        // returns false to skip the hook
+        boolean accept(Hook hook);
+
+        Outcome run(Hook hook, long queueNanos);
+
+        // called once for each executed hook
+        void onCompleted(Hook hook, Outcome outcome);
+
+        void onFinished();
+    }
+
+    // only SUCCESS lets a stop_on_failure hook continue to lower bands
+    public enum Outcome {
+        SUCCESS,
+        // returned false, e.g. a guard, which is not an error
+        DECLINED,
+        // threw an exception
+        FAILURE,
+        // stopped by the watchdog
+        TIMEOUT;
+
+        public static Outcome of(final Object result) {
+            return Boolean.FALSE.equals(result) ? DECLINED : SUCCESS;
+        }
+
+        // counted by the circuit breaker
+        public boolean isError() {
+            return this == FAILURE || this == TIMEOUT;
+        }
+    }
+}
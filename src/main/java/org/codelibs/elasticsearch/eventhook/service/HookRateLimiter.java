@@ -0,0 +1,171 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.elasticsearch.common.unit.TimeValue;
+
+public class HookRateLimiter {
+
+    private final HookMetrics hookMetrics;
+
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+
+    // cluster.eventhook.rate_limit for hooks without their own rate_limit
+    private volatile RateLimit defaultRateLimit;
+
+    public HookRateLimiter(final HookMetrics hookMetrics) {
+        this.hookMetrics = hookMetrics;
+    }
+
+    public void applyConfig(final EventHookConfig config) {
+        defaultRateLimit = config.rateLimit();
+    }
+
+    // removes hooks over their limits before they are scheduled
+    public List<Hook> acquire(final List<Hook> hooks) {
+        final long now = System.nanoTime();
+        final RateLimit defaultRateLimit = this.defaultRateLimit;
+        List<Hook> targets = null;
+        for (int i = 0; i < hooks.size(); i++) {
+            final Hook hook = hooks.get(i);
+            if (acquire(hook, defaultRateLimit, now)) {
+                if (targets != null) {
+                    targets.add(hook);
+                }
+            } else if (targets == null) {
+                targets = new ArrayList<Hook>(hooks.subList(0, i));
+            }
+        }
+        return targets != null ? targets : hooks;
+    }
+
+    boolean acquire(final Hook hook, final long now) {
+        return acquire(hook, defaultRateLimit, now);
+    }
+
+    private boolean acquire(final Hook hook, final RateLimit defaultRateLimit,
+            final long now) {
+        final RateLimit rateLimit = hook.rateLimit() != null ? hook
+                .rateLimit() : defaultRateLimit;
+        if (rateLimit == null && hook.cooldown() == null) {
+            return true;
+        }
+        final boolean acquired = bucket(hook, rateLimit).acquire(now);
+        if (!acquired) {
+            hookMetrics.get(hook).rateLimited();
+        }
+        return acquired;
+    }
+
+    // removes buckets of deleted hooks
+    public void retain(final HookSet hookSet) {
+        buckets.keySet().retainAll(hookSet.keys());
+    }
+
+    public void clear() {
+        buckets.clear();
+    }
+
+    private Bucket bucket(final Hook hook, final RateLimit rateLimit) {
+        final String key = hook.type() + "/" + hook.id();
+        Bucket bucket = buckets.get(key);
+        if (bucket == null
+                || !bucket.hasSameLimits(rateLimit, hook.cooldown())) {
+            // limits are changed by an update of the hook or the settings
+            final Bucket newBucket = new Bucket(rateLimit, hook.cooldown());
+            if (bucket == null) {
+                bucket = buckets.putIfAbsent(key, newBucket);
+                if (bucket == null) {
+                    bucket = newBucket;
+                }
+            } else if (buckets.replace(key, bucket, newBucket)) {
+                bucket = newBucket;
+            } else {
+                bucket = buckets.get(key);
+            }
+        }
+        return bucket;
+    }
+
+    private static class Bucket {
+        private final RateLimit rateLimit;
+
+        private final TimeValue cooldown;
+
+        // a token bucket as a theoretical arrival time, see GCRA
+        private final long emissionNanos;
+
+        private final long burstNanos;
+
+        private final long cooldownNanos;
+
+        private final AtomicReference<State> state = new AtomicReference<State>(
+                State.INITIAL);
+
+        Bucket(final RateLimit rateLimit, final TimeValue cooldown) {
+            this.rateLimit = rateLimit;
+            this.cooldown = cooldown;
+            if (rateLimit != null) {
+                emissionNanos = rateLimit.emissionNanos();
+                burstNanos = emissionNanos * (rateLimit.events() - 1);
+            } else {
+                emissionNanos = 0;
+                burstNanos = 0;
+            }
+            cooldownNanos = cooldown != null ? cooldown.nanos() : 0;
+        }
+
+        boolean hasSameLimits(final RateLimit rateLimit,
+                final TimeValue cooldown) {
+            return equals(this.rateLimit, rateLimit)
+                    && equals(this.cooldown, cooldown);
+        }
+
+        private static boolean equals(final Object o1, final Object o2) {
+            return o1 == null ? o2 == null : o1.equals(o2);
+        }
+
+        boolean acquire(final long now) {
+            while (true) {
+                final State current = state.get();
+                if (current.lastTime != State.NONE
+                        && now - current.lastTime < cooldownNanos) {
+                    return false;
+                }
+                long arrivalTime = current.arrivalTime;
+                if (emissionNanos > 0) {
+                    if (arrivalTime == State.NONE || arrivalTime - now < 0) {
+                        arrivalTime = now;
+                    }
+                    if (arrivalTime - now > burstNanos) {
+                        // no tokens left
+                        return false;
+                    }
+                    arrivalTime += emissionNanos;
+                }
+                if (state.compareAndSet(current, new State(arrivalTime, now))) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static class State {
+        static final long NONE = Long.MIN_VALUE;
+
+        static final State INITIAL = new State(NONE, NONE);
+
+        final long arrivalTime;
+
+        final long lastTime;
+
+        State(final long arrivalTime, final long lastTime) {
+            this.arrivalTime = arrivalTime;
+            this.lastTime = lastTime;
+        }
+    }
+}
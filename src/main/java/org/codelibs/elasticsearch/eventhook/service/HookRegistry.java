@@ -0,0 +1,691 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.collect.ImmutableList;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.gateway.GatewayService;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.indexing.IndexingOperationListener;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.shard.IndexShardState;
+import org.elasticsearch.index.shard.service.IndexShard;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
+import org.elasticsearch.indices.IndicesLifecycle;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.threadpool.ThreadPool;
+
+public class HookRegistry extends AbstractComponent {
+
+    private static final int DEFAULT_EVENTHOOK_WARN_THRESHOLD = 1000;
+
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue
+            .timeValueMinutes(1);
+
+    private static final String CLUSTER_EVENTHOOK_WARN_THRESHOLD = "cluster.eventhook.warn_threshold";
+
+    private static final String CLUSTER_EVENTHOOK_RELOAD_DELAY = "cluster.eventhook.reload.delay";
+
+    private static final String CLUSTER_EVENTHOOK_RELOAD_INTERVAL = "cluster.eventhook.reload.interval";
+
+    private static final String CLUSTER_EVENTHOOK_INDEX_AUTO_CREATE = "cluster.eventhook.index.auto_create";
+
+    private static final String CLUSTER_EVENTHOOK_PRELOAD = "cluster.eventhook.preload";
+
+    private final ClusterService clusterService;
+
+    private final Client client;
+
+    private final ThreadPool threadPool;
+
+    private volatile EventHookConfig config;
+
+    private final int warnThreshold;
+
+    private final TimeValue reloadDelay;
+
+    private final TimeValue reloadInterval;
+
+    private final boolean autoCreate;
+
+    private final boolean preload;
+
+    private volatile HookSet hookSet;
+
+    private final List<Hook> nativeHooks;
+
+    private final HookSet nativeHookSet;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    // indices whose local shards have the indexing listener
+    private final Set<String> observedIndices = ConcurrentCollections
+            .newConcurrentSet();
+
+    // local shards of the index, refreshed before a reload
+    private final Set<IndexShard> localShards = ConcurrentCollections
+            .newConcurrentSet();
+
+    private final List<ActionListener<HookSet>> pendingListeners = new ArrayList<ActionListener<HookSet>>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicBoolean loading = new AtomicBoolean(false);
+
+    private final AtomicBoolean reloadScheduled = new AtomicBoolean(false);
+
+    private final AtomicBoolean creating = new AtomicBoolean(false);
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong reloadCount = new AtomicLong();
+
+    private volatile ScheduledFuture<?> reloadFuture;
+
+    // package-private so tests can write to the index without a shard
+    final IndexingOperationListener indexingListener = new IndexingOperationListener() {
+        @Override
+        public void postCreate(final Engine.Create create) {
+            invalidate();
+        }
+
+        @Override
+        public void postIndex(final Engine.Index indexOp) {
+            invalidate();
+        }
+
+        @Override
+        public void postDelete(final Engine.Delete delete) {
+            invalidate();
+        }
+
+        @Override
+        public void postDeleteByQuery(
+                final Engine.DeleteByQuery deleteByQuery) {
+            invalidate();
+        }
+    };
+
+    @Inject
+    public HookRegistry(final Settings settings,
+            final ClusterService clusterService, final Client client,
+            final ThreadPool threadPool,
+            final IndicesLifecycle indicesLifecycle,
+            final Set<EventHook> eventHooks) {
+        super(settings);
+        this.clusterService = clusterService;
+        this.client = client;
+        this.threadPool = threadPool;
+
+        final List<Hook> hookList = new ArrayList<Hook>(eventHooks.size());
+        for (final EventHook eventHook : eventHooks) {
+            logger.info("Registered a native hook: {}/{}", eventHook.type(),
+                    eventHook.id());
+            hookList.add(new Hook(eventHook));
+        }
+        nativeHooks = hookList;
+        nativeHookSet = new HookSet(nativeHooks);
+
+        config = new EventHookConfig(settings);
+        warnThreshold = settings.getAsInt(CLUSTER_EVENTHOOK_WARN_THRESHOLD,
+                DEFAULT_EVENTHOOK_WARN_THRESHOLD);
+        reloadDelay = settings.getAsTime(CLUSTER_EVENTHOOK_RELOAD_DELAY,
+                TimeValue.timeValueMillis(500));
+        reloadInterval = settings.getAsTime(
+                CLUSTER_EVENTHOOK_RELOAD_INTERVAL, TimeValue.timeValueMinutes(1));
+        autoCreate = settings.getAsBoolean(CLUSTER_EVENTHOOK_INDEX_AUTO_CREATE,
+                true);
+        preload = settings.getAsBoolean(CLUSTER_EVENTHOOK_PRELOAD, true);
+
+        indicesLifecycle.addListener(new IndicesLifecycle.Listener() {
+            @Override
+            public void afterIndexShardCreated(final IndexShard indexShard) {
+                final String name = indexShard.shardId().index().name();
+                if (index().equals(name)) {
+                    indexShard.indexingService().addListener(
+                            indexingListener);
+                    observedIndices.add(name);
+                    localShards.add(indexShard);
+                }
+            }
+
+            @Override
+            public void afterIndexShardStarted(final IndexShard indexShard) {
+                if (index().equals(indexShard.shardId().index().name())) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    public void start() {
+        if (reloadInterval.millis() > 0) {
+            // a node without a local copy cannot observe writes to the index
+            reloadFuture = threadPool.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    final ClusterState state = clusterService.state();
+                    final String index = index();
+                    // shards opened before the index setting changed are
+                    // not observed either
+                    if (state.metaData().hasIndex(index)
+                            && (!hasLocalCopy(state) || !observedIndices
+                                    .contains(index))) {
+                        invalidate();
+                    }
+                }
+            }, reloadInterval);
+        }
+    }
+
+    public void stop() {
+        if (reloadFuture != null) {
+            reloadFuture.cancel(false);
+            reloadFuture = null;
+        }
+    }
+
+    public String index() {
+        return config.index();
+    }
+
+    public EventHookConfig config() {
+        return config;
+    }
+
+    public void applyConfig(final EventHookConfig newConfig) {
+        final String previousIndex = config.index();
+        config = newConfig;
+        if (!previousIndex.equals(newConfig.index())) {
+            logger.info("Hooks are loaded from {} instead of {}.",
+                    newConfig.index(), previousIndex);
+            generation.incrementAndGet();
+            // loaded again on the next lookup
+            hookSet = null;
+        }
+    }
+
+    public void clusterChanged(final ClusterChangedEvent event) {
+        final String index = index();
+        final IndexMetaData current = event.state().metaData().index(index);
+        final IndexMetaData previous = event.previousState().metaData()
+                .index(index);
+        if (current == null) {
+            if (previous != null) {
+                generation.incrementAndGet();
+                hookSet = nativeHookSet;
+            }
+            if (autoCreate
+                    && event.localNodeMaster()
+                    && !event.state().blocks()
+                            .hasGlobalBlock(GatewayService.STATE_NOT_RECOVERED_BLOCK)) {
+                createIndex();
+            }
+        } else if (previous == null || current.version() != previous.version()) {
+            invalidate();
+        }
+        if (current != null && preload && hookSet == null
+                && isReadable(event.state())) {
+            // load hooks before the first event needs them
+            load();
+        }
+    }
+
+    private boolean isReadable(final ClusterState state) {
+        if (state.blocks().hasGlobalBlock(ClusterBlockLevel.READ)) {
+            return false;
+        }
+        final IndexRoutingTable routingTable = state.routingTable().index(
+                index());
+        return routingTable != null && routingTable.allPrimaryShardsActive();
+    }
+
+    private void createIndex() {
+        if (!creating.compareAndSet(false, true)) {
+            return;
+        }
+
+        final String index = index();
+        // a copy on each node to read hooks locally
+        final Settings indexSettings = ImmutableSettings.settingsBuilder()
+                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+                .put(IndexMetaData.SETTING_AUTO_EXPAND_REPLICAS, "0-all")
+                .build();
+        final XContentBuilder mappingBuilder;
+        try {
+            mappingBuilder = createMapping();
+        } catch (final IOException e) {
+            creating.set(false);
+            logger.error("Failed to create a mapping for {}.", e, index);
+            return;
+        }
+        client.admin().indices().prepareCreate(index)
+                .setSettings(indexSettings)
+                .addMapping(MapperService.DEFAULT_MAPPING, mappingBuilder)
+                .execute(new ActionListener<CreateIndexResponse>() {
+                    @Override
+                    public void onResponse(final CreateIndexResponse response) {
+                        creating.set(false);
+                        logger.info("Created {}.", index);
+                    }
+
+                    @Override
+                    public void onFailure(final Throwable e) {
+                        creating.set(false);
+                        if (ExceptionsHelper.unwrapCause(e) instanceof IndexAlreadyExistsException) {
+                            logger.debug("{} already exists.", index);
+                        } else {
+                            logger.warn("Failed to create {}.", e, index);
+                        }
+                    }
+                });
+    }
+
+    private static XContentBuilder createMapping() throws IOException {
+        return XContentFactory.jsonBuilder()//
+                .startObject()//
+                .startObject(MapperService.DEFAULT_MAPPING)//
+                .startObject("properties")//
+
+                // priority
+                .startObject("priority")//
+                .field("type", "long")//
+                .endObject()//
+
+                // lang
+                .startObject("lang")//
+                .field("type", "string")//
+                .field("index", "not_analyzed")//
+                .endObject()//
+
+                // script
+                .startObject("script")//
+                .field("type", "string")//
+                .field("index", "no")//
+                .endObject()//
+
+                // script_type
+                .startObject("script_type")//
+                .field("type", "string")//
+                .field("index", "not_analyzed")//
+                .endObject()//
+
+                // coalesce
+                .startObject("coalesce")//
+                .field("type", "string")//
+                .field("index", "not_analyzed")//
+                .endObject()//
+
+                // stop_on_failure
+                .startObject("stop_on_failure")//
+                .field("type", "boolean")//
+                .endObject()//
+
+                // kinds
+                .startObject("kinds")//
+                .field("type", "string")//
+                .field("index", "not_analyzed")//
+                .endObject()//
+
+                // run_on
+                .startObject("run_on")//
+                .field("type", "string")//
+                .field("index", "not_analyzed")//
+                .endObject()//
+
+                // rate_limit
+                .startObject("rate_limit")//
+                .field("type", "string")//
+                .field("index", "not_analyzed")//
+                .endObject()//
+
+                // cooldown
+                .startObject("cooldown")//
+                .field("type", "string")//
+                .field("index", "not_analyzed")//
+                .endObject()//
+
+                // filter
+                .startObject("filter")//
+                .field("type", "object")//
+                .field("enabled", false)//
+                .endObject()//
+
+                // webhook, not indexed to keep headers out of the index
+                .startObject("webhook")//
+                .field("type", "object")//
+                .field("enabled", false)//
+                .endObject()//
+
+                .endObject()//
+                .endObject()//
+                .endObject();
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        if (hookSet == null) {
+            return;
+        }
+        scheduleReload();
+    }
+
+    private void scheduleReload() {
+        if (reloadScheduled.compareAndSet(false, true)) {
+            threadPool.schedule(reloadDelay, ThreadPool.Names.GENERIC,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            reloadScheduled.set(false);
+                            refreshAndLoad();
+                        }
+                    });
+        }
+    }
+
+    public void lookup(final String type, final long window,
+            final ClusterChangedEvent event, final DiscoveryNodes nodes,
+            final boolean localMaster, final ActionListener<List<Hook>> listener) {
+        final HookSet current = hookSet;
+        if (current != null) {
+            hitCount.incrementAndGet();
+            listener.onResponse(current.get(type, window, event, nodes,
+                    localMaster));
+            return;
+        }
+
+        if (!clusterService.state().metaData().hasIndex(index())) {
+            // only native hooks without the index
+            listener.onResponse(nativeHookSet.get(type, window, event,
+                    nodes, localMaster));
+            return;
+        }
+
+        missCount.incrementAndGet();
+        synchronized (pendingListeners) {
+            pendingListeners.add(new ActionListener<HookSet>() {
+                @Override
+                public void onResponse(final HookSet loadedHookSet) {
+                    // hookSet may be reset by a new index setting
+                    listener.onResponse(loadedHookSet.get(type, window, event,
+                            nodes, localMaster));
+                }
+
+                @Override
+                public void onFailure(final Throwable e) {
+                    listener.onFailure(e);
+                }
+            });
+        }
+        load();
+    }
+
+    private boolean hasLocalCopy(final ClusterState state) {
+        final IndexRoutingTable routingTable = state.routingTable().index(
+                index());
+        if (routingTable == null) {
+            return false;
+        }
+        final String localNodeId = state.nodes().localNodeId();
+        for (final IndexShardRoutingTable shardRoutingTable : routingTable) {
+            for (final ShardRouting shardRouting : shardRoutingTable) {
+                if (shardRouting.active()
+                        && localNodeId.equals(shardRouting.currentNodeId())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // each node refreshes only its own copy, so a write does not make every
+    // node send a refresh to all copies
+    private void refreshAndLoad() {
+        final String index = index();
+        for (final IndexShard indexShard : localShards) {
+            if (indexShard.state() == IndexShardState.CLOSED) {
+                localShards.remove(indexShard);
+            } else if (index.equals(indexShard.shardId().index().name())) {
+                try {
+                    indexShard.refresh(new Engine.Refresh("eventhook_reload")
+                            .force(false));
+                } catch (final Exception e) {
+                    logger.debug("Failed to refresh {}.", e,
+                            indexShard.shardId());
+                }
+            }
+        }
+        load();
+    }
+
+    private void load() {
+        if (!loading.compareAndSet(false, true)) {
+            return;
+        }
+
+        final long loadGeneration = generation.get();
+        final EventHookConfig config = this.config;
+        search(config.index(), config.size(), new LoadListener(config.index(),
+                loadGeneration));
+    }
+
+    // search, searchScroll and clearScroll are package-private so tests can
+    // load hooks without a client
+    void search(final String index, final int size,
+            final ActionListener<SearchResponse> listener) {
+        client.prepareSearch(index).setQuery(QueryBuilders.matchAllQuery())
+                .setSize(size).setVersion(true).setPreference("_local")
+                .setScroll(SCROLL_KEEP_ALIVE)
+                .addSort("priority", SortOrder.ASC).execute(listener);
+    }
+
+    void searchScroll(final String scrollId,
+            final ActionListener<SearchResponse> listener) {
+        client.prepareSearchScroll(scrollId).setScroll(SCROLL_KEEP_ALIVE)
+                .execute(listener);
+    }
+
+    // reads all hooks page by page
+    private class LoadListener implements ActionListener<SearchResponse> {
+
+        private final long loadGeneration;
+
+        private final List<Hook> hookList = new ArrayList<Hook>();
+
+        private long loadedCount = 0;
+
+        private final String index;
+
+        private String scrollId;
+
+        LoadListener(final String index, final long loadGeneration) {
+            this.index = index;
+            this.loadGeneration = loadGeneration;
+        }
+
+        @Override
+        public void onResponse(final SearchResponse response) {
+            scrollId = response.getScrollId();
+            final SearchHits hits = response.getHits();
+            for (final SearchHit hit : hits.getHits()) {
+                try {
+                    final Hook hook = Hook.parse(hit);
+                    if (hook != null) {
+                        hookList.add(hook);
+                    }
+                } catch (final Exception e) {
+                    logger.warn("Invalid hook: {}/{}", e, hit.getType(),
+                            hit.getId());
+                }
+            }
+            loadedCount += hits.getHits().length;
+
+            if (hits.getHits().length > 0
+                    && loadedCount < hits.getTotalHits()) {
+                searchScroll(response.getScrollId(), this);
+                return;
+            }
+
+            clearScroll(scrollId);
+            if (loadGeneration != generation.get()) {
+                // the index changed while loading, so pending lookups wait
+                // for hooks loaded after a refresh
+                logger.debug("Dropped hooks loaded from {} before a change.",
+                        index);
+                synchronized (pendingListeners) {
+                    loading.set(false);
+                }
+                scheduleReload();
+                return;
+            }
+            if (hookList.size() > warnThreshold) {
+                logger.warn(
+                        "{} hooks are loaded from {}. Many hooks slow down event handling.",
+                        hookList.size(), index);
+            }
+            hookList.addAll(nativeHooks);
+            final HookSet loadedHookSet = new HookSet(hookList);
+            hookSet = loadedHookSet;
+            reloadCount.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Loaded {} hooks from {}.", hookList.size(),
+                        index);
+            }
+            for (final Listener listener : listeners) {
+                listener.onLoaded(loadedHookSet);
+            }
+            finishLoading(loadedHookSet, null, loadGeneration);
+        }
+
+        @Override
+        public void onFailure(final Throwable e) {
+            // a failed page leaves the scroll context open
+            clearScroll(scrollId);
+            finishLoading(null, e, loadGeneration);
+        }
+    }
+
+    void clearScroll(final String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        client.prepareClearScroll().addScrollId(scrollId)
+                .execute(new ActionListener<ClearScrollResponse>() {
+                    @Override
+                    public void onResponse(final ClearScrollResponse response) {
+                    }
+
+                    @Override
+                    public void onFailure(final Throwable e) {
+                        logger.debug("Failed to clear a scroll.", e);
+                    }
+                });
+    }
+
+    private void finishLoading(final HookSet loadedHookSet, final Throwable e,
+            final long loadGeneration) {
+        final List<ActionListener<HookSet>> listeners;
+        synchronized (pendingListeners) {
+            loading.set(false);
+            listeners = new ArrayList<ActionListener<HookSet>>(
+                    pendingListeners);
+            pendingListeners.clear();
+        }
+        for (final ActionListener<HookSet> listener : listeners) {
+            if (e == null) {
+                listener.onResponse(loadedHookSet);
+            } else {
+                listener.onFailure(e);
+            }
+        }
+        if (e == null && loadGeneration != generation.get()) {
+            // changed while loading
+            invalidate();
+        }
+    }
+
+    public List<TimeValue> coalesceWindows(final String type) {
+        final HookSet current = hookSet;
+        if (current == null) {
+            return ImmutableList.<TimeValue> of();
+        }
+        return current.coalesceWindows(type);
+    }
+
+    public void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    // null until hooks are loaded
+    public HookSet hookSet() {
+        return hookSet;
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    public long reloadCount() {
+        return reloadCount.get();
+    }
+
+    public boolean hasNativeHooks() {
+        return !nativeHooks.isEmpty();
+    }
+
+    public boolean hasHooks(final String type) {
+        final HookSet current = hookSet;
+        return current != null && current.hasType(type);
+    }
+
+    public int hookCount() {
+        final HookSet current = hookSet;
+        if (current == null) {
+            return 0;
+        }
+        return current.size();
+    }
+
+    public interface Listener {
+        // called on a search thread, so heavy work should be forked
+        void onLoaded(HookSet hookSet);
+    }
+}
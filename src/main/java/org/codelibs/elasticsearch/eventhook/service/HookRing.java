@@ -0,0 +1,102 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.base.Charsets;
+import org.elasticsearch.common.hash.MurmurHash3;
+
+// a consistent hash ring of nodes to pick one owner for a key
+public class HookRing {
+
+    private static final int VIRTUAL_NODES = 64;
+
+    private final DiscoveryNodes nodes;
+
+    private final long[] points;
+
+    private final String[] nodeIds;
+
+    public HookRing(final DiscoveryNodes nodes) {
+        this.nodes = nodes;
+
+        final int size = nodes.size() * VIRTUAL_NODES;
+        final long[] hashes = new long[size];
+        final String[] ids = new String[size];
+        int i = 0;
+        for (final DiscoveryNode node : nodes) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                hashes[i] = hash(node.id() + "#" + v);
+                ids[i] = node.id();
+                i++;
+            }
+        }
+
+        // sort points with their node ids
+        final Integer[] order = new Integer[size];
+        for (int j = 0; j < size; j++) {
+            order[j] = j;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer o1, final Integer o2) {
+                final long h1 = hashes[o1];
+                final long h2 = hashes[o2];
+                if (h1 != h2) {
+                    return h1 < h2 ? -1 : 1;
+                }
+                return ids[o1].compareTo(ids[o2]);
+            }
+        });
+        points = new long[size];
+        nodeIds = new String[size];
+        for (int j = 0; j < size; j++) {
+            points[j] = hashes[order[j]];
+            nodeIds[j] = ids[order[j]];
+        }
+    }
+
+    static long hash(final String key) {
+        final byte[] bytes = key.getBytes(Charsets.UTF_8);
+        return MurmurHash3.hash128(bytes, 0, bytes.length, 0,
+                new MurmurHash3.Hash128()).h1;
+    }
+
+    public DiscoveryNodes nodes() {
+        return nodes;
+    }
+
+    public boolean hasSameNodes(final DiscoveryNodes other) {
+        if (nodes == other) {
+            return true;
+        }
+        if (nodes.size() != other.size()) {
+            return false;
+        }
+        for (final DiscoveryNode node : other) {
+            if (!nodes.nodeExists(node.id())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // returns null if no node exists
+    public String owner(final String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int pos = Arrays.binarySearch(points, hash(key));
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        // wrap around the ring
+        return nodeIds[pos < points.length ? pos : 0];
+    }
+
+    public static String key(final Hook hook, final long version) {
+        return hook.type() + "/" + hook.id() + "@" + version;
+    }
+}
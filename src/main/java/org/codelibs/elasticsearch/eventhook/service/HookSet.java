@@ -0,0 +1,258 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.collect.ImmutableList;
+import org.elasticsearch.common.collect.ImmutableMap;
+import org.elasticsearch.common.unit.TimeValue;
+
+public class HookSet {
+
+    public static final String ALL_TYPE = "all";
+
+    // a derived event only for hooks of this type
+    public static final String INDEX_CHANGED_TYPE = "index_changed";
+
+    // all hooks of a type regardless of their coalesce windows
+    public static final long ANY_WINDOW = -1;
+
+    // hooks of a type without a coalesce window
+    public static final long NO_WINDOW = 0;
+
+    public static final HookSet EMPTY = new HookSet(
+            ImmutableList.<Hook> of());
+
+    private final List<Hook> hooks;
+
+    private final Map<String, List<Hook>> typeHooks;
+
+    private final List<Hook> allHooks;
+
+    private final List<Hook> kindHooks;
+
+    private final int kindMask;
+
+    private final int classifyMask;
+
+    private final Map<String, List<TimeValue>> coalesceWindows;
+
+    private final boolean filtered;
+
+    private final boolean sharded;
+
+    private volatile HookRing ring;
+
+    public HookSet(final List<Hook> hookList) {
+        hooks = ImmutableList.copyOf(hookList);
+
+        final Map<String, List<Hook>> typeMap = new HashMap<String, List<Hook>>();
+        final List<Hook> kindList = new ArrayList<Hook>();
+        final Map<String, List<TimeValue>> windowMap = new HashMap<String, List<TimeValue>>();
+        int mask = 0;
+        int filterMask = 0;
+        boolean hasFilter = false;
+        boolean hasSharded = false;
+        for (final Hook hook : hookList) {
+            if (hook.runOn().isSharded()) {
+                hasSharded = true;
+            }
+            if (!hook.runOn().isAll() || hook.filter() != null) {
+                hasFilter = true;
+            }
+            if (hook.filter() != null) {
+                filterMask |= hook.filter().changed();
+            }
+            if (hook.kinds() != 0) {
+                // subscribed by event kinds instead of the type
+                kindList.add(hook);
+                mask |= hook.kinds();
+                continue;
+            }
+            List<Hook> list = typeMap.get(hook.type());
+            if (list == null) {
+                list = new ArrayList<Hook>();
+                typeMap.put(hook.type(), list);
+            }
+            list.add(hook);
+
+            final long window = window(hook);
+            if (window != NO_WINDOW) {
+                List<TimeValue> windows = windowMap.get(hook.type());
+                if (windows == null) {
+                    windows = new ArrayList<TimeValue>();
+                    windowMap.put(hook.type(), windows);
+                }
+                if (!containsWindow(windows, window)) {
+                    windows.add(hook.coalesce());
+                }
+            }
+        }
+
+        final List<Hook> all = typeMap.get(ALL_TYPE);
+        final ImmutableMap.Builder<String, List<Hook>> builder = ImmutableMap
+                .builder();
+        for (final Map.Entry<String, List<Hook>> entry : typeMap.entrySet()) {
+            final List<Hook> list = entry.getValue();
+            if (all != null && !ALL_TYPE.equals(entry.getKey())
+                    && !INDEX_CHANGED_TYPE.equals(entry.getKey())) {
+                list.addAll(all);
+            }
+            Collections.sort(list);
+            builder.put(entry.getKey(), ImmutableList.copyOf(list));
+        }
+        typeHooks = builder.build();
+        allHooks = typeHooks.containsKey(ALL_TYPE) ? typeHooks.get(ALL_TYPE)
+                : ImmutableList.<Hook> of();
+        Collections.sort(kindList);
+        kindHooks = ImmutableList.copyOf(kindList);
+        kindMask = mask;
+        classifyMask = mask | filterMask;
+        final ImmutableMap.Builder<String, List<TimeValue>> windowBuilder = ImmutableMap
+                .builder();
+        for (final Map.Entry<String, List<TimeValue>> entry : windowMap
+                .entrySet()) {
+            windowBuilder.put(entry.getKey(),
+                    ImmutableList.copyOf(entry.getValue()));
+        }
+        coalesceWindows = windowBuilder.build();
+        filtered = hasFilter;
+        sharded = hasSharded;
+    }
+
+    // a window of a hook applies only to events of its own type, so all and
+    // kinds hooks are never coalesced by it
+    private static long window(final Hook hook) {
+        final TimeValue window = hook.coalesce();
+        if (window == null || window.millis() <= 0 || hook.kinds() != 0
+                || ALL_TYPE.equals(hook.type())
+                || INDEX_CHANGED_TYPE.equals(hook.type())) {
+            return NO_WINDOW;
+        }
+        return window.millis();
+    }
+
+    private static boolean containsWindow(final List<TimeValue> windows,
+            final long window) {
+        for (final TimeValue value : windows) {
+            if (value.millis() == window) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Hook> get(final String type, final ClusterChangedEvent event,
+            final DiscoveryNodes nodes, final boolean localMaster) {
+        return get(type, ANY_WINDOW, event, nodes, localMaster);
+    }
+
+    // window selects hooks by their coalesce window: NO_WINDOW for hooks
+    // receiving each event, a window in millis for hooks receiving events
+    // merged in it, or ANY_WINDOW for all hooks
+    public List<Hook> get(final String type, final long window,
+            final ClusterChangedEvent event, final DiscoveryNodes nodes,
+            final boolean localMaster) {
+        List<Hook> list = typeHooks.get(type);
+        if (window > 0 && !coalesceWindows.containsKey(type)) {
+            list = ImmutableList.<Hook> of();
+        } else if (list == null) {
+            list = INDEX_CHANGED_TYPE.equals(type) ? ImmutableList
+                    .<Hook> of() : allHooks;
+        } else if (window != ANY_WINDOW && coalesceWindows.containsKey(type)) {
+            final List<Hook> windowList = new ArrayList<Hook>(list.size());
+            for (final Hook hook : list) {
+                if (window(hook) == window) {
+                    windowList.add(hook);
+                }
+            }
+            list = windowList;
+        }
+        // classified once for kinds and filters
+        final int kinds = EventKind.classify(event, classifyMask);
+        // kinds hooks have no windows
+        if ((kinds & kindMask) != 0 && window <= 0
+                && !INDEX_CHANGED_TYPE.equals(type)) {
+            final List<Hook> merged = new ArrayList<Hook>(list);
+            for (final Hook hook : kindHooks) {
+                if ((hook.kinds() & kinds) != 0) {
+                    merged.add(hook);
+                }
+            }
+            Collections.sort(merged);
+            list = merged;
+        }
+        if (!filtered || list.isEmpty()) {
+            return list;
+        }
+        return filter(list, event, kinds, nodes, localMaster);
+    }
+
+    // skips hooks which do not run on this node or for this event
+    private List<Hook> filter(final List<Hook> list,
+            final ClusterChangedEvent event, final int kinds,
+            final DiscoveryNodes nodes, final boolean localMaster) {
+        final FilterContext context = new FilterContext(event, kinds, nodes,
+                localMaster, sharded ? ring(nodes) : null);
+        List<Hook> targets = null;
+        for (int i = 0; i < list.size(); i++) {
+            final Hook hook = list.get(i);
+            if (hook.matches(context)) {
+                if (targets != null) {
+                    targets.add(hook);
+                }
+            } else if (targets == null) {
+                targets = new ArrayList<Hook>(list.subList(0, i));
+            }
+        }
+        return targets != null ? targets : list;
+    }
+
+    // rebuilt when nodes join or leave
+    private HookRing ring(final DiscoveryNodes nodes) {
+        if (nodes == null) {
+            return null;
+        }
+        HookRing current = ring;
+        // published states have new instances even if nodes are the same
+        if (current == null || !current.hasSameNodes(nodes)) {
+            current = new HookRing(nodes);
+            ring = current;
+        }
+        return current;
+    }
+
+    // distinct coalesce windows of hooks of the type
+    public List<TimeValue> coalesceWindows(final String type) {
+        final List<TimeValue> windows = coalesceWindows.get(type);
+        return windows != null ? windows : ImmutableList.<TimeValue> of();
+    }
+
+    public boolean hasType(final String type) {
+        return typeHooks.containsKey(type);
+    }
+
+    public List<Hook> hooks() {
+        return hooks;
+    }
+
+    // type/id of each hook, which keys its stats, circuit and bucket
+    public Set<String> keys() {
+        final Set<String> keys = new HashSet<String>(hooks.size() * 2);
+        for (final Hook hook : hooks) {
+            keys.add(hook.type() + "/" + hook.id());
+        }
+        return keys;
+    }
+
+    public int size() {
+        return hooks.size();
+    }
+}
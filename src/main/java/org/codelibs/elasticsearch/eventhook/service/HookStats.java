@@ -0,0 +1,191 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+public class HookStats implements Streamable, ToXContent {
+
+    private String type;
+
+    private String id;
+
+    private final AtomicLong invocationCount = new AtomicLong();
+
+    private final AtomicLong failureCount = new AtomicLong();
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    private final AtomicLong rateLimitedCount = new AtomicLong();
+
+    private volatile HookCircuitBreaker.State breakerState = HookCircuitBreaker.State.CLOSED;
+
+    private final LatencyHistogram compileTime = new LatencyHistogram();
+
+    private final LatencyHistogram executionTime = new LatencyHistogram();
+
+    private final LatencyHistogram queueTime = new LatencyHistogram();
+
+    HookStats() {
+    }
+
+    public HookStats(final String type, final String id) {
+        this.type = type;
+        this.id = id;
+    }
+
+    public void record(final long queueNanos, final long compileNanos,
+            final long executionNanos, final boolean success) {
+        invocationCount.incrementAndGet();
+        if (!success) {
+            failureCount.incrementAndGet();
+        }
+        queueTime.record(queueNanos);
+        compileTime.record(compileNanos);
+        executionTime.record(executionNanos);
+    }
+
+    public void timedOut() {
+        timeoutCount.incrementAndGet();
+    }
+
+    public void skipped() {
+        skippedCount.incrementAndGet();
+    }
+
+    public void rateLimited() {
+        rateLimitedCount.incrementAndGet();
+    }
+
+    public void breakerState(final HookCircuitBreaker.State state) {
+        breakerState = state;
+    }
+
+    public void merge(final HookStats other) {
+        invocationCount.addAndGet(other.invocationCount.get());
+        failureCount.addAndGet(other.failureCount.get());
+        timeoutCount.addAndGet(other.timeoutCount.get());
+        skippedCount.addAndGet(other.skippedCount.get());
+        rateLimitedCount.addAndGet(other.rateLimitedCount.get());
+        // shows the worst state across nodes
+        if (other.breakerState.ordinal() > breakerState.ordinal()) {
+            breakerState = other.breakerState;
+        }
+        compileTime.merge(other.compileTime);
+        executionTime.merge(other.executionTime);
+        queueTime.merge(other.queueTime);
+    }
+
+    public String key() {
+        return type + "/" + id;
+    }
+
+    public String type() {
+        return type;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public long invocationCount() {
+        return invocationCount.get();
+    }
+
+    public long failureCount() {
+        return failureCount.get();
+    }
+
+    public long timeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long skippedCount() {
+        return skippedCount.get();
+    }
+
+    public long rateLimitedCount() {
+        return rateLimitedCount.get();
+    }
+
+    public HookCircuitBreaker.State breakerState() {
+        return breakerState;
+    }
+
+    public LatencyHistogram compileTime() {
+        return compileTime;
+    }
+
+    public LatencyHistogram executionTime() {
+        return executionTime;
+    }
+
+    public LatencyHistogram queueTime() {
+        return queueTime;
+    }
+
+    public static HookStats readHookStats(final StreamInput in)
+            throws IOException {
+        final HookStats stats = new HookStats();
+        stats.readFrom(in);
+        return stats;
+    }
+
+    @Override
+    public void readFrom(final StreamInput in) throws IOException {
+        type = in.readString();
+        id = in.readString();
+        invocationCount.set(in.readVLong());
+        failureCount.set(in.readVLong());
+        timeoutCount.set(in.readVLong());
+        skippedCount.set(in.readVLong());
+        rateLimitedCount.set(in.readVLong());
+        breakerState = HookCircuitBreaker.State.values()[in.readVInt()];
+        compileTime.readFrom(in);
+        executionTime.readFrom(in);
+        queueTime.readFrom(in);
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        out.writeString(type);
+        out.writeString(id);
+        out.writeVLong(invocationCount.get());
+        out.writeVLong(failureCount.get());
+        out.writeVLong(timeoutCount.get());
+        out.writeVLong(skippedCount.get());
+        out.writeVLong(rateLimitedCount.get());
+        out.writeVInt(breakerState.ordinal());
+        compileTime.writeTo(out);
+        executionTime.writeTo(out);
+        queueTime.writeTo(out);
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder,
+            final Params params) throws IOException {
+        builder.field("invocations", invocationCount.get());
+        builder.field("failures", failureCount.get());
+        builder.field("timeouts", timeoutCount.get());
+        builder.field("skipped", skippedCount.get());
+        builder.field("rate_limited", rateLimitedCount.get());
+        builder.field("breaker", breakerState.toString());
+        builder.startObject("compile_time");
+        compileTime.toXContent(builder, params);
+        builder.endObject();
+        builder.startObject("execution_time");
+        executionTime.toXContent(builder, params);
+        builder.endObject();
+        builder.startObject("queue_time");
+        queueTime.toXContent(builder, params);
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,171 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+
+public class HookWarmer extends AbstractComponent {
+
+    private static final String CLUSTER_EVENTHOOK_WARMUP_ENABLE = "cluster.eventhook.warmup.enable";
+
+    private static final String CLUSTER_EVENTHOOK_WARMUP_INTERVAL = "cluster.eventhook.warmup.interval";
+
+    private final ThreadPool threadPool;
+
+    private final HookRegistry hookRegistry;
+
+    private final ScriptCache scriptCache;
+
+    private final boolean enabled;
+
+    private final TimeValue interval;
+
+    private final AtomicBoolean warming = new AtomicBoolean(false);
+
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+
+    private final AtomicLong warmupCount = new AtomicLong();
+
+    private final AtomicLong compiledCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private volatile long lastWarmupNanos;
+
+    private volatile ScheduledFuture<?> refreshFuture;
+
+    public HookWarmer(final Settings settings, final ThreadPool threadPool,
+            final HookRegistry hookRegistry, final ScriptCache scriptCache) {
+        super(settings);
+        this.threadPool = threadPool;
+        this.hookRegistry = hookRegistry;
+        this.scriptCache = scriptCache;
+
+        enabled = settings.getAsBoolean(CLUSTER_EVENTHOOK_WARMUP_ENABLE, true);
+        interval = settings.getAsTime(CLUSTER_EVENTHOOK_WARMUP_INTERVAL,
+                TimeValue.timeValueMinutes(5));
+
+        if (enabled) {
+            hookRegistry.addListener(new HookRegistry.Listener() {
+                @Override
+                public void onLoaded(final HookSet hookSet) {
+                    warmUp();
+                }
+            });
+        }
+    }
+
+    public void start() {
+        if (enabled && interval.millis() > 0) {
+            // keeps compiled scripts from expiring in the script cache
+            refreshFuture = threadPool.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    warmUp();
+                }
+            }, interval);
+        }
+    }
+
+    public void stop() {
+        if (refreshFuture != null) {
+            refreshFuture.cancel(false);
+            refreshFuture = null;
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        pending.set(true);
+        if (!warming.compareAndSet(false, true)) {
+            // the running warm-up picks up the pending request
+            return;
+        }
+        threadPool.generic().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (pending.getAndSet(false)) {
+                        warmUp(hookRegistry.hookSet());
+                    }
+                } finally {
+                    warming.set(false);
+                }
+                if (pending.get()) {
+                    warmUp();
+                }
+            }
+        });
+    }
+
+    // warms up on the calling thread
+    public void warmUpNow() {
+        if (enabled) {
+            warmUp(hookRegistry.hookSet());
+        }
+    }
+
+    private void warmUp(final HookSet hookSet) {
+        if (hookSet == null) {
+            return;
+        }
+
+        final long startTime = System.nanoTime();
+        int compiled = 0;
+        int failed = 0;
+        for (final Hook hook : hookSet.hooks()) {
+            if (hook.eventHook() != null || hook.webhook() != null) {
+                // native hooks and webhooks have nothing to compile
+                continue;
+            }
+            try {
+                if (scriptCache.warm(hook)) {
+                    compiled++;
+                }
+            } catch (final Exception e) {
+                failed++;
+                logger.warn("Failed to compile {}.", e, hook);
+            }
+        }
+        final long tookNanos = System.nanoTime() - startTime;
+        lastWarmupNanos = tookNanos;
+        warmupCount.incrementAndGet();
+        compiledCount.addAndGet(compiled);
+        failedCount.addAndGet(failed);
+        if (compiled > 0 || failed > 0) {
+            logger.info("Warmed up {} hooks in {}: compiled {}, failed {}",
+                    hookSet.size(), TimeValue.timeValueNanos(tookNanos),
+                    compiled, failed);
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("Warmed up {} hooks in {}.", hookSet.size(),
+                    TimeValue.timeValueNanos(tookNanos));
+        }
+    }
+
+    public long warmupCount() {
+        return warmupCount.get();
+    }
+
+    public long compiledCount() {
+        return compiledCount.get();
+    }
+
+    public long failedCount() {
+        return failedCount.get();
+    }
+
+    public long lastWarmupNanos() {
+        return lastWarmupNanos;
+    }
+}
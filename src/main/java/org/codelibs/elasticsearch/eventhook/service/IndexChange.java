@@ -0,0 +1,159 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+public class IndexChange implements ToXContent {
+
+    private final String index;
+
+    private final ClusterHealthStatus health;
+
+    private final ClusterHealthStatus previousHealth;
+
+    private final boolean created;
+
+    private final boolean deleted;
+
+    private final int shardsStarted;
+
+    private final int shardsRelocating;
+
+    private final int shardsRelocated;
+
+    private final int shardsFailed;
+
+    private final boolean mappingsChanged;
+
+    private final boolean settingsChanged;
+
+    IndexChange(final String index, final ClusterHealthStatus health,
+            final ClusterHealthStatus previousHealth, final boolean created,
+            final boolean deleted, final int shardsStarted,
+            final int shardsRelocating, final int shardsRelocated,
+            final int shardsFailed, final boolean mappingsChanged,
+            final boolean settingsChanged) {
+        this.index = index;
+        this.health = health;
+        this.previousHealth = previousHealth;
+        this.created = created;
+        this.deleted = deleted;
+        this.shardsStarted = shardsStarted;
+        this.shardsRelocating = shardsRelocating;
+        this.shardsRelocated = shardsRelocated;
+        this.shardsFailed = shardsFailed;
+        this.mappingsChanged = mappingsChanged;
+        this.settingsChanged = settingsChanged;
+    }
+
+    public String index() {
+        return index;
+    }
+
+    // green, yellow or red, null without shards
+    public String health() {
+        return toString(health);
+    }
+
+    public String previousHealth() {
+        return toString(previousHealth);
+    }
+
+    public boolean healthChanged() {
+        return health != previousHealth;
+    }
+
+    public boolean created() {
+        return created;
+    }
+
+    public boolean deleted() {
+        return deleted;
+    }
+
+    // initializing copies which became active
+    public int shardsStarted() {
+        return shardsStarted;
+    }
+
+    // copies which started to move to another node
+    public int shardsRelocating() {
+        return shardsRelocating;
+    }
+
+    // copies which finished moving to another node
+    public int shardsRelocated() {
+        return shardsRelocated;
+    }
+
+    // copies which disappeared from their nodes without a relocation
+    public int shardsFailed() {
+        return shardsFailed;
+    }
+
+    public boolean mappingsChanged() {
+        return mappingsChanged;
+    }
+
+    public boolean settingsChanged() {
+        return settingsChanged;
+    }
+
+    private static String toString(final ClusterHealthStatus status) {
+        return status != null ? status.name().toLowerCase(Locale.ROOT) : null;
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder,
+            final Params params) throws IOException {
+        builder.startObject();
+        builder.field("index", index);
+        builder.field("health", health());
+        builder.field("previous_health", previousHealth());
+        builder.field("created", created);
+        builder.field("deleted", deleted);
+        builder.field("shards_started", shardsStarted);
+        builder.field("shards_relocating", shardsRelocating);
+        builder.field("shards_relocated", shardsRelocated);
+        builder.field("shards_failed", shardsFailed);
+        builder.field("mappings_changed", mappingsChanged);
+        builder.field("settings_changed", settingsChanged);
+        builder.endObject();
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buf = new StringBuilder();
+        buf.append(index).append('[');
+        if (created) {
+            buf.append("created, ");
+        } else if (deleted) {
+            buf.append("deleted, ");
+        }
+        buf.append(previousHealth()).append("->").append(health());
+        if (shardsStarted > 0) {
+            buf.append(", started=").append(shardsStarted);
+        }
+        if (shardsRelocating > 0) {
+            buf.append(", relocating=").append(shardsRelocating);
+        }
+        if (shardsRelocated > 0) {
+            buf.append(", relocated=").append(shardsRelocated);
+        }
+        if (shardsFailed > 0) {
+            buf.append(", failed=").append(shardsFailed);
+        }
+        if (mappingsChanged) {
+            buf.append(", mappings");
+        }
+        if (settingsChanged) {
+            buf.append(", settings");
+        }
+        return buf.append(']').toString();
+    }
+}
@@ -0,0 +1,21 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.List;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+
+// an index_changed event carries the changes computed once for all hooks
+public class IndexChangedEvent extends ClusterChangedEvent {
+
+    private final List<IndexChange> indexChanges;
+
+    public IndexChangedEvent(final ClusterChangedEvent event,
+            final List<IndexChange> indexChanges) {
+        super(event.source(), event.state(), event.previousState());
+        this.indexChanges = indexChanges;
+    }
+
+    public List<IndexChange> indexChanges() {
+        return indexChanges;
+    }
+}
@@ -0,0 +1,191 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.hppc.cursors.ObjectCursor;
+
+public final class IndexDiff {
+
+    private IndexDiff() {
+    }
+
+    // only indices whose metadata or routing table instance changed are
+    // compared, so an event touching a few indices is cheap on any cluster
+    public static List<IndexChange> diff(final ClusterChangedEvent event) {
+        final boolean metaDataChanged = event.metaDataChanged();
+        final boolean routingTableChanged = event.routingTableChanged();
+        if (!metaDataChanged && !routingTableChanged) {
+            return Collections.emptyList();
+        }
+
+        final MetaData metaData = event.state().metaData();
+        final MetaData previousMetaData = event.previousState().metaData();
+        final RoutingTable routingTable = event.state().routingTable();
+        final RoutingTable previousRoutingTable = event.previousState()
+                .routingTable();
+        final List<IndexChange> changes = new ArrayList<IndexChange>();
+        for (final ObjectCursor<IndexMetaData> cursor : metaData.indices()
+                .values()) {
+            final IndexMetaData current = cursor.value;
+            final String index = current.index();
+            final IndexMetaData previous = previousMetaData.index(index);
+            if (current == previous
+                    && (!routingTableChanged || !event
+                            .indexRoutingTableChanged(index))) {
+                continue;
+            }
+            final IndexChange change = diff(index, current, previous,
+                    routingTable.index(index),
+                    previousRoutingTable.index(index));
+            if (change != null) {
+                changes.add(change);
+            }
+        }
+        if (metaDataChanged) {
+            for (final ObjectCursor<IndexMetaData> cursor : previousMetaData
+                    .indices().values()) {
+                final String index = cursor.value.index();
+                if (!metaData.hasIndex(index)) {
+                    changes.add(new IndexChange(index, null,
+                            health(previousRoutingTable.index(index)), false,
+                            true, 0, 0, 0, 0, false, false));
+                }
+            }
+        }
+        return changes;
+    }
+
+    // returns null if nothing visible to hooks changed
+    static IndexChange diff(final String index, final IndexMetaData current,
+            final IndexMetaData previous, final IndexRoutingTable routing,
+            final IndexRoutingTable previousRouting) {
+        final boolean created = previous == null;
+        boolean mappingsChanged = false;
+        boolean settingsChanged = false;
+        if (!created && current != previous) {
+            mappingsChanged = !current.mappings().equals(previous.mappings());
+            settingsChanged = !current.settings().equals(previous.settings());
+        }
+
+        // [started, relocating, relocated, failed]
+        final int[] counts = new int[4];
+        if (routing != null && previousRouting != null
+                && routing != previousRouting) {
+            for (final IndexShardRoutingTable shardTable : routing) {
+                final IndexShardRoutingTable previousShardTable = previousRouting
+                        .shard(shardTable.shardId().id());
+                if (previousShardTable != null) {
+                    diffShard(shardTable, previousShardTable, counts);
+                }
+            }
+        }
+        final ClusterHealthStatus health = health(routing);
+        final ClusterHealthStatus previousHealth = created ? null
+                : health(previousRouting);
+
+        if (!created && health == previousHealth && counts[0] == 0
+                && counts[1] == 0 && counts[2] == 0 && counts[3] == 0
+                && !mappingsChanged && !settingsChanged) {
+            return null;
+        }
+        return new IndexChange(index, health, previousHealth, created, false,
+                counts[0], counts[1], counts[2], counts[3], mappingsChanged,
+                settingsChanged);
+    }
+
+    // copies are matched by nodes because routing tables are rebuilt
+    private static void diffShard(final IndexShardRoutingTable shardTable,
+            final IndexShardRoutingTable previousShardTable, final int[] counts) {
+        final List<ShardRouting> shards = shardTable.shards();
+        final List<ShardRouting> previousShards = previousShardTable.shards();
+        if (shards.equals(previousShards)) {
+            return;
+        }
+
+        for (final ShardRouting shard : shards) {
+            if (!shard.assignedToNode()) {
+                continue;
+            }
+            final ShardRouting previous = findOnNode(previousShards,
+                    shard.currentNodeId());
+            if (previous != null) {
+                if (previous.initializing() && shard.active()) {
+                    counts[0]++;
+                }
+                if (shard.relocating() && !previous.relocating()) {
+                    counts[1]++;
+                }
+            } else if (isRelocationTarget(previousShards,
+                    shard.currentNodeId())) {
+                counts[2]++;
+            } else if (shard.active()) {
+                counts[0]++;
+            }
+        }
+        for (final ShardRouting previous : previousShards) {
+            if (!previous.assignedToNode()
+                    || findOnNode(shards, previous.currentNodeId()) != null) {
+                continue;
+            }
+            if (previous.relocating()
+                    && findOnNode(shards, previous.relocatingNodeId()) != null) {
+                // counted as relocated
+                continue;
+            }
+            counts[3]++;
+        }
+    }
+
+    private static ShardRouting findOnNode(final List<ShardRouting> shards,
+            final String nodeId) {
+        for (final ShardRouting shard : shards) {
+            if (nodeId.equals(shard.currentNodeId())) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isRelocationTarget(
+            final List<ShardRouting> shards, final String nodeId) {
+        for (final ShardRouting shard : shards) {
+            if (shard.relocating() && nodeId.equals(shard.relocatingNodeId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // same as cluster health without allocation explanations
+    static ClusterHealthStatus health(final IndexRoutingTable routing) {
+        if (routing == null) {
+            return null;
+        }
+        ClusterHealthStatus status = ClusterHealthStatus.GREEN;
+        for (final IndexShardRoutingTable shardTable : routing) {
+            final ShardRouting primary = shardTable.primaryShard();
+            if (primary == null || !primary.active()) {
+                return ClusterHealthStatus.RED;
+            }
+            if (status == ClusterHealthStatus.GREEN) {
+                for (final ShardRouting shard : shardTable) {
+                    if (!shard.active()) {
+                        status = ClusterHealthStatus.YELLOW;
+                        break;
+                    }
+                }
+            }
+        }
+        return status;
+    }
+}
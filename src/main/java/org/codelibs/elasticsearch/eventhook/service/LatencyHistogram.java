@@ -0,0 +1,131 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+public class LatencyHistogram implements Streamable, ToXContent {
+
+    // bucket i holds values in [2^(i-1), 2^i) micros
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(final long nanos) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0));
+        final int index = Math.min(64 - Long.numberOfLeadingZeros(micros),
+                BUCKETS - 1);
+        buckets.incrementAndGet(index);
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long current = max.get();
+        while (micros > current && !max.compareAndSet(current, micros)) {
+            current = max.get();
+        }
+    }
+
+    public void merge(final LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.addAndGet(i, other.buckets.get(i));
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        long current = max.get();
+        final long otherMax = other.max.get();
+        while (otherMax > current && !max.compareAndSet(current, otherMax)) {
+            current = max.get();
+        }
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long sumMicros() {
+        return sum.get();
+    }
+
+    public long maxMicros() {
+        return max.get();
+    }
+
+    // returns the upper bound of the bucket, capped by max
+    public long percentileMicros(final double percentile) {
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max((long) Math.ceil(total * percentile / 100),
+                1);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min((1L << i) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public static LatencyHistogram readLatencyHistogram(final StreamInput in)
+            throws IOException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.readFrom(in);
+        return histogram;
+    }
+
+    @Override
+    public void readFrom(final StreamInput in) throws IOException {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, in.readVLong());
+        }
+        count.set(in.readVLong());
+        sum.set(in.readVLong());
+        max.set(in.readVLong());
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        for (int i = 0; i < BUCKETS; i++) {
+            out.writeVLong(buckets.get(i));
+        }
+        out.writeVLong(count.get());
+        out.writeVLong(sum.get());
+        out.writeVLong(max.get());
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder,
+            final Params params) throws IOException {
+        final long total = count.get();
+        builder.field("count", total);
+        microsField(builder, "avg", total == 0 ? 0 : sum.get() / total);
+        microsField(builder, "p50", percentileMicros(50));
+        microsField(builder, "p99", percentileMicros(99));
+        microsField(builder, "max", max.get());
+        return builder;
+    }
+
+    static void microsField(final XContentBuilder builder, final String name,
+            final long micros) throws IOException {
+        if (builder.humanReadable()) {
+            builder.field(name, new TimeValue(micros, TimeUnit.MICROSECONDS)
+                    .toString());
+        }
+        builder.field(name + "_in_micros", micros);
+    }
+}
@@ -0,0 +1,77 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.unit.TimeValue;
+
+public class RateLimit {
+
+    private static final TimeValue DEFAULT_INTERVAL = TimeValue
+            .timeValueMinutes(1);
+
+    private final int events;
+
+    private final TimeValue interval;
+
+    private RateLimit(final int events, final TimeValue interval) {
+        this.events = events;
+        this.interval = interval;
+    }
+
+    // events per interval like 10/1m, or events per minute like 10
+    public static RateLimit parse(final Object value) {
+        if (value == null) {
+            return null;
+        }
+        final String rateLimit = value.toString().trim();
+        final int pos = rateLimit.indexOf('/');
+        final String eventsValue = pos >= 0 ? rateLimit.substring(0, pos)
+                .trim() : rateLimit;
+        final int events;
+        try {
+            events = Integer.parseInt(eventsValue);
+        } catch (final NumberFormatException e) {
+            throw new ElasticsearchIllegalArgumentException(
+                    "Invalid rate_limit: " + value);
+        }
+        final TimeValue interval = pos >= 0 ? TimeValue.parseTimeValue(
+                rateLimit.substring(pos + 1).trim(), null) : DEFAULT_INTERVAL;
+        if (events <= 0 || interval == null || interval.nanos() <= 0) {
+            throw new ElasticsearchIllegalArgumentException(
+                    "Invalid rate_limit: " + value);
+        }
+        return new RateLimit(events, interval);
+    }
+
+    public int events() {
+        return events;
+    }
+
+    public TimeValue interval() {
+        return interval;
+    }
+
+    // a time to refill one event
+    long emissionNanos() {
+        return Math.max(interval.nanos() / events, 1);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof RateLimit)) {
+            return false;
+        }
+        final RateLimit other = (RateLimit) obj;
+        return events == other.events
+                && interval.nanos() == other.interval.nanos();
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * events + (int) interval.nanos();
+    }
+
+    @Override
+    public String toString() {
+        return events + "/" + interval;
+    }
+}
@@ -0,0 +1,112 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+public class ReplayReport implements ToXContent {
+
+    private final String name;
+
+    private final boolean dryRun;
+
+    private final int eventCount;
+
+    private final long dispatchNanos;
+
+    private final long totalNanos;
+
+    private final int maxQueueSize;
+
+    private final long droppedCount;
+
+    private final List<HookStats> hookStats;
+
+    public ReplayReport(final String name, final boolean dryRun,
+            final int eventCount, final long dispatchNanos,
+            final long totalNanos, final int maxQueueSize,
+            final long droppedCount, final List<HookStats> hookStats) {
+        this.name = name;
+        this.dryRun = dryRun;
+        this.eventCount = eventCount;
+        this.dispatchNanos = dispatchNanos;
+        this.totalNanos = totalNanos;
+        this.maxQueueSize = maxQueueSize;
+        this.droppedCount = droppedCount;
+        this.hookStats = hookStats;
+    }
+
+    // stats of a dry run only have compile times
+    public boolean dryRun() {
+        return dryRun;
+    }
+
+    public int eventCount() {
+        return eventCount;
+    }
+
+    public double eventsPerSecond() {
+        if (totalNanos <= 0) {
+            return 0;
+        }
+        return eventCount * (double) TimeUnit.SECONDS.toNanos(1) / totalNanos;
+    }
+
+    public int maxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public long droppedCount() {
+        return droppedCount;
+    }
+
+    public List<HookStats> hookStats() {
+        return hookStats;
+    }
+
+    public HookStats hookStats(final String key) {
+        for (final HookStats stats : hookStats) {
+            if (stats.key().equals(key)) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder,
+            final Params params) throws IOException {
+        builder.field("name", name, XContentBuilder.FieldCaseConversion.NONE);
+        builder.field("mode", dryRun ? "compile_only" : "execute");
+        builder.field("events", eventCount);
+        timeField(builder, "dispatch_time", dispatchNanos);
+        timeField(builder, "total_time", totalNanos);
+        builder.field("events_per_second", eventsPerSecond());
+        builder.startObject("executor");
+        builder.field("max_queue", maxQueueSize);
+        builder.field("dropped", droppedCount);
+        builder.endObject();
+        builder.startObject("hooks");
+        for (final HookStats stats : hookStats) {
+            builder.startObject(stats.key(),
+                    XContentBuilder.FieldCaseConversion.NONE);
+            stats.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    private static void timeField(final XContentBuilder builder,
+            final String name, final long nanos) throws IOException {
+        final TimeValue time = TimeValue.timeValueNanos(nanos);
+        if (builder.humanReadable()) {
+            builder.field(name, time.toString());
+        }
+        builder.field(name + "_in_millis", time.millis());
+    }
+}
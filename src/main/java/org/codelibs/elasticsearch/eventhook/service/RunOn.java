@@ -0,0 +1,93 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Locale;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+
+public class RunOn {
+
+    public static final RunOn ALL = new RunOn(Mode.ALL, null, null);
+
+    public static final RunOn MASTER = new RunOn(Mode.MASTER, null, null);
+
+    public static final RunOn DATA = new RunOn(Mode.DATA, null, null);
+
+    public static final RunOn SHARDED = new RunOn(Mode.SHARDED, null, null);
+
+    private final Mode mode;
+
+    private final String attributeName;
+
+    private final String attributeValue;
+
+    private RunOn(final Mode mode, final String attributeName,
+            final String attributeValue) {
+        this.mode = mode;
+        this.attributeName = attributeName;
+        this.attributeValue = attributeValue;
+    }
+
+    // all, master, data, sharded or a node attribute filter like rack=r1
+    public static RunOn parse(final Object value) {
+        if (value == null) {
+            return ALL;
+        }
+        final String runOn = value.toString().trim();
+        final int pos = runOn.indexOf('=');
+        if (pos > 0) {
+            return new RunOn(Mode.ATTRIBUTE, runOn.substring(0, pos).trim(),
+                    runOn.substring(pos + 1).trim());
+        }
+        final String name = runOn.toLowerCase(Locale.ROOT);
+        if (name.length() == 0 || "all".equals(name)) {
+            return ALL;
+        } else if ("master".equals(name)) {
+            return MASTER;
+        } else if ("data".equals(name)) {
+            return DATA;
+        } else if ("sharded".equals(name)) {
+            return SHARDED;
+        }
+        throw new ElasticsearchIllegalArgumentException("Unknown run_on: "
+                + value);
+    }
+
+    public boolean isAll() {
+        return mode == Mode.ALL;
+    }
+
+    // an owner of a sharded hook is chosen by HookRing
+    public boolean isSharded() {
+        return mode == Mode.SHARDED;
+    }
+
+    public boolean matches(final DiscoveryNode localNode,
+            final boolean localMaster) {
+        switch (mode) {
+        case MASTER:
+            return localMaster;
+        case DATA:
+            return localNode != null && localNode.dataNode();
+        case ATTRIBUTE:
+            return localNode != null
+                    && attributeValue.equals(localNode.attributes().get(
+                            attributeName));
+        case ALL:
+        default:
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (mode == Mode.ATTRIBUTE) {
+            return attributeName + "=" + attributeValue;
+        }
+        return mode.name().toLowerCase(Locale.ROOT);
+    }
+
+    private enum Mode {
+        ALL, MASTER, DATA, SHARDED, ATTRIBUTE;
+    }
+}
@@ -0,0 +1,139 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.RemovalCause;
+import org.elasticsearch.common.cache.RemovalListener;
+import org.elasticsearch.common.cache.RemovalNotification;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.script.CompiledScript;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.script.ScriptService.ScriptType;
+
+public class ScriptCache extends AbstractComponent {
+
+    private static final String CLUSTER_EVENTHOOK_SCRIPT_CACHE_MAX_SIZE = "cluster.eventhook.script.cache.max_size";
+
+    private static final String CLUSTER_EVENTHOOK_SCRIPT_CACHE_EXPIRE = "cluster.eventhook.script.cache.expire";
+
+    private final ScriptService scriptService;
+
+    private final Cache<String, Entry> cache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public ScriptCache(final Settings settings,
+            final ScriptService scriptService) {
+        super(settings);
+        this.scriptService = scriptService;
+
+        final int cacheMaxSize = settings.getAsInt(
+                CLUSTER_EVENTHOOK_SCRIPT_CACHE_MAX_SIZE, 100);
+        final TimeValue cacheExpire = settings.getAsTime(
+                CLUSTER_EVENTHOOK_SCRIPT_CACHE_EXPIRE, null);
+        logger.debug("using script cache with max_size [{}], expire [{}]",
+                cacheMaxSize, cacheExpire);
+
+        final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder
+                .newBuilder();
+        if (cacheMaxSize >= 0) {
+            cacheBuilder.maximumSize(cacheMaxSize);
+        }
+        if (cacheExpire != null) {
+            cacheBuilder.expireAfterAccess(cacheExpire.nanos(),
+                    TimeUnit.NANOSECONDS);
+        }
+        cache = cacheBuilder.removalListener(
+                new RemovalListener<String, Entry>() {
+                    @Override
+                    public void onRemoval(
+                            final RemovalNotification<String, Entry> notification) {
+                        if (notification.getCause() == RemovalCause.SIZE
+                                || notification.getCause() == RemovalCause.EXPIRED) {
+                            evictionCount.incrementAndGet();
+                        }
+                    }
+                }).build();
+    }
+
+    public CompiledScript compile(final Hook hook) {
+        if (hook.scriptType() != ScriptType.INLINE) {
+            // the content is not versioned with the hook, so ScriptService
+            // resolves indexed and file scripts and caches them by content
+            return scriptService.compile(hook.lang(), hook.script(),
+                    hook.scriptType());
+        }
+
+        final String key = hook.type() + "/" + hook.id();
+        final Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.version == hook.version()) {
+            hitCount.incrementAndGet();
+            return entry.compiledScript;
+        }
+
+        // not compiled yet or the hook was updated
+        missCount.incrementAndGet();
+        final CompiledScript compiledScript = scriptService.compile(
+                hook.lang(), hook.script(), hook.scriptType());
+        cache.put(key, new Entry(hook.version(), compiledScript));
+        return compiledScript;
+    }
+
+    // compiles the hook if needed without counting hits and misses
+    public boolean warm(final Hook hook) {
+        if (hook.scriptType() != ScriptType.INLINE) {
+            return false;
+        }
+
+        final String key = hook.type() + "/" + hook.id();
+        final Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.version == hook.version()) {
+            return false;
+        }
+
+        final CompiledScript compiledScript = scriptService.compile(
+                hook.lang(), hook.script(), hook.scriptType());
+        cache.put(key, new Entry(hook.version(), compiledScript));
+        return true;
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    private static class Entry {
+        final long version;
+
+        final CompiledScript compiledScript;
+
+        Entry(final long version, final CompiledScript compiledScript) {
+            this.version = version;
+            this.compiledScript = compiledScript;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.collect.ImmutableMap;
+import org.elasticsearch.common.unit.TimeValue;
+
+public class Webhook {
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final TimeValue DEFAULT_FLUSH_INTERVAL = TimeValue
+            .timeValueSeconds(1);
+
+    private final URI url;
+
+    private final int batchSize;
+
+    private final TimeValue flushInterval;
+
+    private final Map<String, String> headers;
+
+    private Webhook(final URI url, final int batchSize,
+            final TimeValue flushInterval, final Map<String, String> headers) {
+        this.url = url;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.headers = headers;
+    }
+
+    // {"url":"http://...","batch_size":100,"flush_interval":"1s","headers":{}}
+    public static Webhook parse(final Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof Map)) {
+            throw new ElasticsearchIllegalArgumentException(
+                    "webhook should be an object: " + value);
+        }
+        final Map<?, ?> map = (Map<?, ?>) value;
+        final Object urlValue = map.get("url");
+        if (urlValue == null) {
+            throw new ElasticsearchIllegalArgumentException(
+                    "webhook.url is required.");
+        }
+        final URI url;
+        try {
+            url = new URI(urlValue.toString());
+        } catch (final URISyntaxException e) {
+            throw new ElasticsearchIllegalArgumentException(
+                    "Invalid webhook.url: " + urlValue, e);
+        }
+        if (!"http".equalsIgnoreCase(url.getScheme())
+                && !"https".equalsIgnoreCase(url.getScheme())
+                || url.getHost() == null) {
+            throw new ElasticsearchIllegalArgumentException(
+                    "Invalid webhook.url: " + urlValue);
+        }
+
+        int batchSize = DEFAULT_BATCH_SIZE;
+        final Object batchSizeValue = map.get("batch_size");
+        if (batchSizeValue instanceof Number) {
+            batchSize = ((Number) batchSizeValue).intValue();
+        } else if (batchSizeValue != null) {
+            try {
+                batchSize = Integer.parseInt(batchSizeValue.toString());
+            } catch (final NumberFormatException e) {
+                batchSize = 0;
+            }
+        }
+        if (batchSize <= 0) {
+            throw new ElasticsearchIllegalArgumentException(
+                    "Invalid webhook.batch_size: " + batchSizeValue);
+        }
+
+        TimeValue flushInterval = DEFAULT_FLUSH_INTERVAL;
+        final Object flushIntervalValue = map.get("flush_interval");
+        if (flushIntervalValue instanceof Number) {
+            flushInterval = TimeValue
+                    .timeValueMillis(((Number) flushIntervalValue).longValue());
+        } else if (flushIntervalValue != null) {
+            flushInterval = TimeValue.parseTimeValue(
+                    flushIntervalValue.toString(), DEFAULT_FLUSH_INTERVAL);
+        }
+
+        final ImmutableMap.Builder<String, String> headers = ImmutableMap
+                .builder();
+        if (map.get("headers") instanceof Map) {
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) map
+                    .get("headers")).entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    headers.put(entry.getKey().toString(), entry.getValue()
+                            .toString());
+                }
+            }
+        }
+        return new Webhook(url, batchSize, flushInterval, headers.build());
+    }
+
+    public URI url() {
+        return url;
+    }
+
+    // shown as a script of a hook, so headers are not included
+    public String endpoint() {
+        return url.toString();
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public TimeValue flushInterval() {
+        return flushInterval;
+    }
+
+    public Map<String, String> headers() {
+        return headers;
+    }
+
+    public boolean secure() {
+        return "https".equalsIgnoreCase(url.getScheme());
+    }
+
+    public int port() {
+        if (url.getPort() > 0) {
+            return url.getPort();
+        }
+        return secure() ? 443 : 80;
+    }
+
+    // events are batched per url, headers and batch settings, so hooks
+    // with the same webhook share a queue
+    @Override
+    public int hashCode() {
+        int result = url.hashCode();
+        result = 31 * result + batchSize;
+        result = 31 * result
+                + (int) (flushInterval.millis() ^ flushInterval.millis() >>> 32);
+        result = 31 * result + headers.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Webhook)) {
+            return false;
+        }
+        final Webhook other = (Webhook) obj;
+        return url.equals(other.url) && batchSize == other.batchSize
+                && flushInterval.millis() == other.flushInterval.millis()
+                && headers.equals(other.headers);
+    }
+
+    @Override
+    public String toString() {
+        return url.toString();
+    }
+}
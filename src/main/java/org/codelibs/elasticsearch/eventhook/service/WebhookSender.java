@@ -0,0 +1,602 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import static org.elasticsearch.common.util.concurrent.EsExecutors.daemonThreadFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.base.Charsets;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.netty.bootstrap.ClientBootstrap;
+import org.elasticsearch.common.netty.buffer.ChannelBuffer;
+import org.elasticsearch.common.netty.buffer.ChannelBuffers;
+import org.elasticsearch.common.netty.channel.Channel;
+import org.elasticsearch.common.netty.channel.ChannelFuture;
+import org.elasticsearch.common.netty.channel.ChannelFutureListener;
+import org.elasticsearch.common.netty.channel.ChannelHandlerContext;
+import org.elasticsearch.common.netty.channel.ChannelPipeline;
+import org.elasticsearch.common.netty.channel.ChannelPipelineFactory;
+import org.elasticsearch.common.netty.channel.ChannelStateEvent;
+import org.elasticsearch.common.netty.channel.Channels;
+import org.elasticsearch.common.netty.channel.ExceptionEvent;
+import org.elasticsearch.common.netty.channel.MessageEvent;
+import org.elasticsearch.common.netty.channel.SimpleChannelUpstreamHandler;
+import org.elasticsearch.common.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.elasticsearch.common.netty.channel.socket.nio.NioWorkerPool;
+import org.elasticsearch.common.netty.handler.codec.http.DefaultHttpRequest;
+import org.elasticsearch.common.netty.handler.codec.http.HttpChunkAggregator;
+import org.elasticsearch.common.netty.handler.codec.http.HttpClientCodec;
+import org.elasticsearch.common.netty.handler.codec.http.HttpHeaders;
+import org.elasticsearch.common.netty.handler.codec.http.HttpMethod;
+import org.elasticsearch.common.netty.handler.codec.http.HttpRequest;
+import org.elasticsearch.common.netty.handler.codec.http.HttpResponse;
+import org.elasticsearch.common.netty.handler.codec.http.HttpVersion;
+import org.elasticsearch.common.netty.handler.ssl.SslHandler;
+import org.elasticsearch.common.netty.handler.timeout.ReadTimeoutHandler;
+import org.elasticsearch.common.netty.util.HashedWheelTimer;
+import org.elasticsearch.common.netty.util.Timer;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.threadpool.ThreadPool;
+
+public class WebhookSender extends AbstractComponent {
+
+    private static final String CLUSTER_EVENTHOOK_WEBHOOK_QUEUE_SIZE = "cluster.eventhook.webhook.queue_size";
+
+    private static final String CLUSTER_EVENTHOOK_WEBHOOK_MAX_RETRIES = "cluster.eventhook.webhook.max_retries";
+
+    private static final String CLUSTER_EVENTHOOK_WEBHOOK_RETRY_DELAY = "cluster.eventhook.webhook.retry_delay";
+
+    private static final String CLUSTER_EVENTHOOK_WEBHOOK_MAX_RETRY_DELAY = "cluster.eventhook.webhook.max_retry_delay";
+
+    private static final String CLUSTER_EVENTHOOK_WEBHOOK_TIMEOUT = "cluster.eventhook.webhook.timeout";
+
+    private static final int MAX_RESPONSE_LENGTH = 1024 * 1024;
+
+    private static final ChannelBuffer BODY_START = ChannelBuffers
+            .unmodifiableBuffer(ChannelBuffers.copiedBuffer("{\"events\":[",
+                    Charsets.UTF_8));
+
+    private static final ChannelBuffer BODY_SEPARATOR = ChannelBuffers
+            .unmodifiableBuffer(ChannelBuffers.copiedBuffer(",",
+                    Charsets.UTF_8));
+
+    private static final ChannelBuffer BODY_END = ChannelBuffers
+            .unmodifiableBuffer(ChannelBuffers.copiedBuffer("]}",
+                    Charsets.UTF_8));
+
+    private final ThreadPool threadPool;
+
+    private final int queueSize;
+
+    private final int maxRetries;
+
+    private final TimeValue retryDelay;
+
+    private final TimeValue maxRetryDelay;
+
+    private final TimeValue timeout;
+
+    private final ConcurrentMap<Webhook, Endpoint> endpoints = new ConcurrentHashMap<Webhook, Endpoint>();
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final AtomicLong retryCount = new AtomicLong();
+
+    private ClientBootstrap bootstrap;
+
+    private Timer timer;
+
+    public WebhookSender(final Settings settings, final ThreadPool threadPool) {
+        super(settings);
+        this.threadPool = threadPool;
+
+        queueSize = settings.getAsInt(CLUSTER_EVENTHOOK_WEBHOOK_QUEUE_SIZE,
+                10000);
+        maxRetries = settings.getAsInt(CLUSTER_EVENTHOOK_WEBHOOK_MAX_RETRIES,
+                3);
+        retryDelay = settings.getAsTime(CLUSTER_EVENTHOOK_WEBHOOK_RETRY_DELAY,
+                TimeValue.timeValueSeconds(1));
+        maxRetryDelay = settings.getAsTime(
+                CLUSTER_EVENTHOOK_WEBHOOK_MAX_RETRY_DELAY,
+                TimeValue.timeValueSeconds(30));
+        timeout = settings.getAsTime(CLUSTER_EVENTHOOK_WEBHOOK_TIMEOUT,
+                TimeValue.timeValueSeconds(10));
+    }
+
+    // created on the first request because few nodes use webhooks
+    private synchronized ClientBootstrap bootstrap() {
+        if (bootstrap == null) {
+            timer = new HashedWheelTimer(daemonThreadFactory(settings,
+                    "eventhook_webhook_timer"));
+            bootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(
+                    Executors.newCachedThreadPool(daemonThreadFactory(
+                            settings, "eventhook_webhook_boss")), 1,
+                    new NioWorkerPool(Executors
+                            .newCachedThreadPool(daemonThreadFactory(settings,
+                                    "eventhook_webhook_worker")), 1), timer));
+            bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+                @Override
+                public ChannelPipeline getPipeline() throws Exception {
+                    final ChannelPipeline pipeline = Channels.pipeline();
+                    pipeline.addLast("timeout", new ReadTimeoutHandler(timer,
+                            timeout.millis(), TimeUnit.MILLISECONDS));
+                    pipeline.addLast("codec", new HttpClientCodec());
+                    pipeline.addLast("aggregator", new HttpChunkAggregator(
+                            MAX_RESPONSE_LENGTH));
+                    pipeline.addLast("handler", new ResponseHandler());
+                    return pipeline;
+                }
+            });
+            bootstrap.setOption("connectTimeoutMillis", timeout.millis());
+            bootstrap.setOption("tcpNoDelay", true);
+        }
+        return bootstrap;
+    }
+
+    public synchronized void close() {
+        if (bootstrap != null) {
+            bootstrap.releaseExternalResources();
+            bootstrap = null;
+        }
+        if (timer != null) {
+            timer.stop();
+            timer = null;
+        }
+    }
+
+    // returns false if the event is dropped
+    public boolean send(final Hook hook, final EventHookContext context)
+            throws IOException {
+        final EventHookService.Event event = context.event();
+        final XContentBuilder builder = XContentFactory.jsonBuilder();
+        builder.startObject();
+        builder.field("@timestamp", System.currentTimeMillis());
+        builder.field("event_type", context.eventType());
+        builder.field("source", event.source());
+        builder.field("hook", hook.type() + "/" + hook.id());
+        final ClusterState state = event.state();
+        builder.field("cluster_name", state.getClusterName().value());
+        builder.field("version", state.version());
+        final DiscoveryNode localNode = state.nodes().localNode();
+        if (localNode != null) {
+            builder.field("node", localNode.name());
+        }
+        builder.field("is_master", context.isMaster());
+        if (event.nodesChanged()) {
+            builder.startArray("nodes_added");
+            for (final DiscoveryNode node : event.nodesDelta().addedNodes()) {
+                builder.value(node.id());
+            }
+            builder.endArray();
+            builder.startArray("nodes_removed");
+            for (final DiscoveryNode node : event.nodesDelta().removedNodes()) {
+                builder.value(node.id());
+            }
+            builder.endArray();
+        }
+        if (event.metaDataChanged()) {
+            builder.field("indices_created", event.indicesCreated());
+            builder.field("indices_deleted", event.indicesDeleted());
+        }
+        if (HookSet.INDEX_CHANGED_TYPE.equals(context.eventType())) {
+            builder.startArray("index_changes");
+            for (final IndexChange change : event.indexChanges()) {
+                change.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            }
+            builder.endArray();
+        }
+        builder.endObject();
+        return offer(hook.webhook(), builder.bytes());
+    }
+
+    boolean offer(final Webhook webhook, final BytesReference payload) {
+        final Endpoint endpoint = endpoint(webhook);
+        if (!endpoint.queue.offer(payload)) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        if (endpoint.queue.size() >= webhook.batchSize()) {
+            if (!endpoint.sending.get()) {
+                threadPool.generic().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush(endpoint);
+                    }
+                });
+            }
+        } else {
+            scheduleFlush(endpoint);
+        }
+        return true;
+    }
+
+    // a hook with other headers or batch settings gets its own queue
+    private Endpoint endpoint(final Webhook webhook) {
+        Endpoint endpoint = endpoints.get(webhook);
+        if (endpoint == null) {
+            final Endpoint newEndpoint = new Endpoint(webhook);
+            endpoint = endpoints.putIfAbsent(webhook, newEndpoint);
+            if (endpoint == null) {
+                endpoint = newEndpoint;
+            }
+        }
+        return endpoint;
+    }
+
+    private void scheduleFlush(final Endpoint endpoint) {
+        if (!endpoint.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        threadPool.schedule(endpoint.webhook.flushInterval(),
+                ThreadPool.Names.GENERIC, new Runnable() {
+                    @Override
+                    public void run() {
+                        endpoint.scheduled.set(false);
+                        flush(endpoint);
+                    }
+                });
+    }
+
+    // removes endpoints no hook sends to, and payloads already queued are
+    // still sent by their scheduled flush
+    public void retain(final HookSet hookSet) {
+        final Set<Webhook> webhooks = new HashSet<Webhook>();
+        for (final Hook hook : hookSet.hooks()) {
+            if (hook.webhook() != null) {
+                webhooks.add(hook.webhook());
+            }
+        }
+        endpoints.keySet().retainAll(webhooks);
+    }
+
+    public void flushAll() {
+        for (final Endpoint endpoint : endpoints.values()) {
+            flush(endpoint);
+        }
+    }
+
+    private void flush(final Endpoint endpoint) {
+        if (endpoint.queue.isEmpty()
+                || !endpoint.sending.compareAndSet(false, true)) {
+            return;
+        }
+
+        final Webhook webhook = endpoint.webhook;
+        final List<BytesReference> payloads = new ArrayList<BytesReference>(
+                webhook.batchSize());
+        endpoint.queue.drainTo(payloads, webhook.batchSize());
+        if (payloads.isEmpty()) {
+            endpoint.sending.set(false);
+            return;
+        }
+
+        // payloads are wrapped without copying
+        final ChannelBuffer[] buffers = new ChannelBuffer[payloads.size() * 2 + 1];
+        buffers[0] = BODY_START.duplicate();
+        for (int i = 0; i < payloads.size(); i++) {
+            buffers[i * 2 + 1] = payloads.get(i).toChannelBuffer();
+            buffers[i * 2 + 2] = i < payloads.size() - 1 ? BODY_SEPARATOR
+                    .duplicate() : BODY_END.duplicate();
+        }
+        final ChannelBuffer body = ChannelBuffers.wrappedBuffer(buffers);
+        post(endpoint, webhook, body, payloads.size(), 0);
+    }
+
+    private void post(final Endpoint endpoint, final Webhook webhook,
+            final ChannelBuffer body, final int size, final int retries) {
+        requestCount.incrementAndGet();
+        execute(webhook, body.duplicate(), new Callback() {
+            @Override
+            public void onResponse(final int status) {
+                if (status >= 200 && status < 300) {
+                    sentCount.addAndGet(size);
+                    finishFlush(endpoint);
+                } else if (status == 429 || status >= 500) {
+                    retry(endpoint, webhook, body, size, retries, "status "
+                            + status, null);
+                } else {
+                    logger.warn("Failed to send {} events to {}: status {}",
+                            size, webhook, status);
+                    failedCount.addAndGet(size);
+                    finishFlush(endpoint);
+                }
+            }
+
+            @Override
+            public void onFailure(final Throwable e) {
+                retry(endpoint, webhook, body, size, retries, e.toString(), e);
+            }
+        });
+    }
+
+    private void retry(final Endpoint endpoint, final Webhook webhook,
+            final ChannelBuffer body, final int size, final int retries,
+            final String reason, final Throwable e) {
+        if (retries >= maxRetries) {
+            logger.warn("Failed to send {} events to {} after {} retries: {}",
+                    e, size, webhook, retries, reason);
+            failedCount.addAndGet(size);
+            finishFlush(endpoint);
+            return;
+        }
+
+        retryCount.incrementAndGet();
+        final TimeValue delay = retryDelay(retries);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Retrying to send {} events to {} in {}: {}", size,
+                    webhook, delay, reason);
+        }
+        threadPool.schedule(delay, ThreadPool.Names.GENERIC, new Runnable() {
+            @Override
+            public void run() {
+                post(endpoint, webhook, body, size, retries + 1);
+            }
+        });
+    }
+
+    // doubled on each retry up to max_retry_delay
+    TimeValue retryDelay(final int retries) {
+        final long delay = retryDelay.millis() << Math.min(retries, 30);
+        return TimeValue.timeValueMillis(Math.min(delay,
+                maxRetryDelay.millis()));
+    }
+
+    private void finishFlush(final Endpoint endpoint) {
+        endpoint.sending.set(false);
+        if (endpoint.queue.size() >= endpoint.webhook.batchSize()) {
+            // on a generic thread instead of a network thread
+            threadPool.generic().execute(new Runnable() {
+                @Override
+                public void run() {
+                    flush(endpoint);
+                }
+            });
+        } else if (!endpoint.queue.isEmpty()) {
+            scheduleFlush(endpoint);
+        }
+    }
+
+    private void execute(final Webhook webhook, final ChannelBuffer body,
+            final Callback callback) {
+        final URI url = webhook.url();
+        final ChannelFuture connectFuture;
+        try {
+            connectFuture = bootstrap().connect(
+                    new InetSocketAddress(url.getHost(), webhook.port()));
+        } catch (final Exception e) {
+            callback.onFailure(e);
+            return;
+        }
+        connectFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(final ChannelFuture future)
+                    throws Exception {
+                if (!future.isSuccess()) {
+                    callback.onFailure(future.getCause());
+                    return;
+                }
+                final Channel channel = future.getChannel();
+                final PendingRequest pendingRequest = new PendingRequest(
+                        callback);
+                channel.setAttachment(pendingRequest);
+                final HttpRequest request = createRequest(webhook, body);
+                if (!webhook.secure()) {
+                    write(channel, request, pendingRequest);
+                    return;
+                }
+
+                final SSLEngine engine = SSLContext.getDefault()
+                        .createSSLEngine(url.getHost(), webhook.port());
+                engine.setUseClientMode(true);
+                // a certificate must match the host name of the url
+                final SSLParameters sslParameters = engine.getSSLParameters();
+                sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+                engine.setSSLParameters(sslParameters);
+                final SslHandler sslHandler = new SslHandler(engine);
+                channel.getPipeline().addFirst("ssl", sslHandler);
+                sslHandler.handshake().addListener(
+                        new ChannelFutureListener() {
+                            @Override
+                            public void operationComplete(
+                                    final ChannelFuture future)
+                                    throws Exception {
+                                if (future.isSuccess()) {
+                                    write(channel, request, pendingRequest);
+                                } else {
+                                    pendingRequest.onFailure(future
+                                            .getCause());
+                                    channel.close();
+                                }
+                            }
+                        });
+            }
+        });
+    }
+
+    private static HttpRequest createRequest(final Webhook webhook,
+            final ChannelBuffer body) {
+        final URI url = webhook.url();
+        String path = url.getRawPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+        if (url.getRawQuery() != null) {
+            path = path + "?" + url.getRawQuery();
+        }
+        final HttpRequest request = new DefaultHttpRequest(
+                HttpVersion.HTTP_1_1, HttpMethod.POST, path);
+        final HttpHeaders headers = request.headers();
+        headers.set(HttpHeaders.Names.HOST,
+                url.getPort() > 0 ? url.getHost() + ":" + url.getPort()
+                        : url.getHost());
+        headers.set(HttpHeaders.Names.CONTENT_TYPE, "application/json");
+        headers.set(HttpHeaders.Names.CONTENT_LENGTH, body.readableBytes());
+        // a connection per batch, so nothing to keep alive between batches
+        headers.set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+        for (final Map.Entry<String, String> entry : webhook.headers()
+                .entrySet()) {
+            headers.set(entry.getKey(), entry.getValue());
+        }
+        request.setContent(body);
+        return request;
+    }
+
+    private static void write(final Channel channel,
+            final HttpRequest request, final PendingRequest pendingRequest) {
+        channel.write(request).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(final ChannelFuture future)
+                    throws Exception {
+                if (!future.isSuccess()) {
+                    pendingRequest.onFailure(future.getCause());
+                    channel.close();
+                }
+            }
+        });
+    }
+
+    public int queueSize() {
+        int size = 0;
+        for (final Endpoint endpoint : endpoints.values()) {
+            size += endpoint.queue.size();
+        }
+        return size;
+    }
+
+    public int endpointCount() {
+        return endpoints.size();
+    }
+
+    public long sentCount() {
+        return sentCount.get();
+    }
+
+    public long failedCount() {
+        return failedCount.get();
+    }
+
+    public long droppedCount() {
+        return droppedCount.get();
+    }
+
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    public long retryCount() {
+        return retryCount.get();
+    }
+
+    private class Endpoint {
+        final Webhook webhook;
+
+        final BlockingQueue<BytesReference> queue = new ArrayBlockingQueue<BytesReference>(
+                queueSize);
+
+        // one batch in flight per endpoint, including its retries
+        final AtomicBoolean sending = new AtomicBoolean(false);
+
+        final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        Endpoint(final Webhook webhook) {
+            this.webhook = webhook;
+        }
+    }
+
+    private interface Callback {
+        void onResponse(int status);
+
+        void onFailure(Throwable e);
+    }
+
+    // completes a callback once whichever of a response, an error or a
+    // close comes first
+    private static class PendingRequest {
+        private final Callback callback;
+
+        private final AtomicBoolean done = new AtomicBoolean(false);
+
+        PendingRequest(final Callback callback) {
+            this.callback = callback;
+        }
+
+        void onResponse(final int status) {
+            if (done.compareAndSet(false, true)) {
+                callback.onResponse(status);
+            }
+        }
+
+        void onFailure(final Throwable e) {
+            if (done.compareAndSet(false, true)) {
+                callback.onFailure(e);
+            }
+        }
+    }
+
+    private static class ResponseHandler extends SimpleChannelUpstreamHandler {
+        @Override
+        public void messageReceived(final ChannelHandlerContext ctx,
+                final MessageEvent e) throws Exception {
+            final PendingRequest pendingRequest = (PendingRequest) ctx
+                    .getChannel().getAttachment();
+            if (pendingRequest != null && e.getMessage() instanceof HttpResponse) {
+                pendingRequest.onResponse(((HttpResponse) e.getMessage())
+                        .getStatus().getCode());
+            }
+            ctx.getChannel().close();
+        }
+
+        @Override
+        public void exceptionCaught(final ChannelHandlerContext ctx,
+                final ExceptionEvent e) throws Exception {
+            final PendingRequest pendingRequest = (PendingRequest) ctx
+                    .getChannel().getAttachment();
+            if (pendingRequest != null) {
+                pendingRequest.onFailure(e.getCause());
+            }
+            ctx.getChannel().close();
+        }
+
+        @Override
+        public void channelClosed(final ChannelHandlerContext ctx,
+                final ChannelStateEvent e) throws Exception {
+            final PendingRequest pendingRequest = (PendingRequest) ctx
+                    .getChannel().getAttachment();
+            if (pendingRequest != null) {
+                pendingRequest.onFailure(new IOException(
+                        "Connection closed before a response."));
+            }
+        }
+    }
+}
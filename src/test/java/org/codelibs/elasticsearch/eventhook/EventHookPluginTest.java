@@ -1,17 +1,47 @@
 package org.codelibs.elasticsearch.eventhook;
 
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.TestCase;
 
+import org.codelibs.elasticsearch.eventhook.action.history.EventHookHistoryAction;
+import org.codelibs.elasticsearch.eventhook.action.history.EventHookHistoryRequest;
+import org.codelibs.elasticsearch.eventhook.action.history.EventHookHistoryResponse;
+import org.codelibs.elasticsearch.eventhook.action.stats.EventHookStatsAction;
+import org.codelibs.elasticsearch.eventhook.action.stats.EventHookStatsRequest;
+import org.codelibs.elasticsearch.eventhook.action.stats.EventHookStatsResponse;
+import org.codelibs.elasticsearch.eventhook.action.stats.NodeEventHookStats;
+import org.codelibs.elasticsearch.eventhook.service.EventHook;
+import org.codelibs.elasticsearch.eventhook.service.EventHookContext;
+import org.codelibs.elasticsearch.eventhook.service.EventHookService;
+import org.codelibs.elasticsearch.eventhook.service.EventReplayer;
+import org.codelibs.elasticsearch.eventhook.service.HookHistory;
+import org.codelibs.elasticsearch.eventhook.service.HookStats;
+import org.codelibs.elasticsearch.eventhook.service.ReplayReport;
 import org.codelibs.elasticsearch.runner.ElasticsearchClusterRunner;
+import org.elasticsearch.action.admin.cluster.settings.ClusterUpdateSettingsResponse;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.collect.Lists;
+import org.elasticsearch.common.inject.AbstractModule;
+import org.elasticsearch.common.inject.Module;
+import org.elasticsearch.common.inject.multibindings.Multibinder;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.ImmutableSettings.Builder;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.node.Node;
+import org.elasticsearch.plugins.AbstractPlugin;
 import org.elasticsearch.search.sort.SortBuilders;
 
 public class EventHookPluginTest extends TestCase {
@@ -21,14 +51,27 @@ public class EventHookPluginTest extends TestCase {
 
     private ElasticsearchClusterRunner runner;
 
+    private File eventDir;
+
     @Override
     protected void setUp() throws Exception {
+        eventDir = File.createTempFile("eventhook", "");
+        eventDir.delete();
         // create runner instance
         runner = new ElasticsearchClusterRunner();
         // create ES nodes
         runner.onBuild(new ElasticsearchClusterRunner.Builder() {
             @Override
             public void build(final int number, final Builder settingsBuilder) {
+                settingsBuilder.put("plugin.types",
+                        CountingHookPlugin.class.getName());
+                // load hooks with scroll
+                settingsBuilder.put("cluster.eventhook.size", 2);
+                settingsBuilder.put("cluster.eventhook.journal.enable", true);
+                settingsBuilder.put("cluster.eventhook.journal.flush_interval",
+                        "1s");
+                settingsBuilder.put("cluster.eventhook.recorder.path",
+                        eventDir.getAbsolutePath());
             }
         }).build(new String[] { "-numOfNode", "5", "-indexStoreType", "ram" });
 
@@ -42,13 +85,27 @@ public class EventHookPluginTest extends TestCase {
         runner.close();
         // delete all files
         runner.clean();
+        final File[] files = eventDir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        eventDir.delete();
     }
 
     public void test_runCluster() throws Exception {
 
+        // .eventhook is created by the plugin
         final String eventIndex = ".eventhook";
-        runner.createIndex(eventIndex, null);
-        runner.ensureYellow(eventIndex);
+        for (int i = 0; i < 100 && !runner.indexExists(eventIndex); i++) {
+            Thread.sleep(100L);
+        }
+        assertTrue(runner.indexExists(eventIndex));
+        // wait for a copy on each node
+        runner.ensureGreen(eventIndex);
+        assertEquals("0-all", runner.clusterService().state().metaData()
+                .index(eventIndex).settings().get("index.auto_expand_replicas"));
 
         runner.insert(
                 eventIndex,
@@ -75,6 +132,23 @@ public class EventHookPluginTest extends TestCase {
                         + "cluster.setTransientSettings(\\\"cluster.routing.allocation.enable\\\",\\\"all\\\");"
                         + "println(\\\"EVENT[\\\"+cluster.getLocalNode().name()+\\\"]: allocation enabled\\\")}\","
                         + "\"script_type\":\"inline\"}");
+        // same condition with run_on and a filter instead of nodeInfo()
+        runner.insert(
+                eventIndex,
+                "zen_disco_node_left",
+                "rebalance_limit",
+                "{\"priority\":2,\"lang\":\"groovy\",\"run_on\":\"master\","
+                        + "\"filter\":{\"min_nodes\":3,\"max_nodes\":3},"
+                        + "\"script\":\"cluster.setTransientSettings(\\\"cluster.routing.allocation.cluster_concurrent_rebalance\\\",\\\"3\\\")\","
+                        + "\"script_type\":\"inline\"}");
+        runner.insert(
+                eventIndex,
+                "on_master",
+                "recovery_streams",
+                "{\"priority\":3,\"lang\":\"groovy\","
+                        + "\"script\":\"cluster.updateTransientSettings(\\\"indices.recovery.concurrent_streams\\\",\\\"5\\\")\","
+                        + "\"script_type\":\"inline\"}");
+        runner.ensureGreen();
         runner.flush();
 
         final String index = "test_index";
@@ -150,6 +224,7 @@ public class EventHookPluginTest extends TestCase {
         // close master node
         final Node masterNode = runner.masterNode();
         int masterNodeIndex = runner.getNodeIndex(masterNode);
+        final String masterNodeName = masterNode.settings().get("name");
         logger.info("Closing masterNode[{}]", masterNodeIndex);
         masterNode.close();
 
@@ -158,6 +233,8 @@ public class EventHookPluginTest extends TestCase {
 
         assertEquals("none", runner.clusterService().state().metaData()
                 .transientSettings().get("cluster.routing.allocation.enable"));
+        assertEquals("5", runner.clusterService().state().metaData()
+                .transientSettings().get("indices.recovery.concurrent_streams"));
 
         // close master node
         final Node nonMasterNode = runner.nonMasterNode();
@@ -170,6 +247,9 @@ public class EventHookPluginTest extends TestCase {
 
         assertEquals("all", runner.clusterService().state().metaData()
                 .transientSettings().get("cluster.routing.allocation.enable"));
+        assertEquals("3", runner.clusterService().state().metaData()
+                .transientSettings()
+                .get("cluster.routing.allocation.cluster_concurrent_rebalance"));
 
         logger.info("Starting masterNode[{}]", masterNodeIndex);
         assertTrue(runner.startNode(masterNodeIndex));
@@ -183,5 +263,189 @@ public class EventHookPluginTest extends TestCase {
         // wait
         Thread.sleep(5000L);
 
+        // journal
+        {
+            runner.refresh();
+            final SearchResponse searchResponse = runner.client()
+                    .prepareSearch(".eventhook-journal-*").setTypes("hook")
+                    .setQuery(QueryBuilders.termQuery("hook_id",
+                            "recovery_streams")).execute().actionGet();
+            assertTrue(searchResponse.getHits().getTotalHits() > 0);
+        }
+
+        // hook stats
+        {
+            final EventHookStatsResponse statsResponse = runner.client()
+                    .admin().cluster()
+                    .execute(EventHookStatsAction.INSTANCE,
+                            new EventHookStatsRequest()).actionGet();
+            assertEquals(5, statsResponse.getNodes().length);
+            for (final NodeEventHookStats nodeStats : statsResponse
+                    .getNodes()) {
+                // hooks are compiled before events need them
+                assertTrue(nodeStats.getWarmupCount() > 0);
+            }
+            final HookStats stats = statsResponse.getTotalHookStats().get(
+                    "on_master/recovery_streams");
+            assertNotNull(stats);
+            assertTrue(stats.invocationCount() > 0);
+            assertEquals(0, stats.failureCount());
+            assertEquals(stats.invocationCount(), stats.executionTime()
+                    .count());
+
+            // run_on master executes it once for the node_left event
+            final HookStats filteredStats = statsResponse
+                    .getTotalHookStats().get(
+                            "zen_disco_node_left/rebalance_limit");
+            assertNotNull(filteredStats);
+            assertEquals(1, filteredStats.invocationCount());
+
+            final HookStats nativeStats = statsResponse.getTotalHookStats()
+                    .get("all/counting_hook");
+            assertNotNull(nativeStats);
+            assertTrue(nativeStats.invocationCount() > 0);
+            assertEquals(0, nativeStats.failureCount());
+        }
+        assertTrue(CountingHook.COUNT.get() > 0);
+
+        // execution history
+        {
+            final EventHookHistoryResponse historyResponse = runner.client()
+                    .admin().cluster()
+                    .execute(EventHookHistoryAction.INSTANCE,
+                            new EventHookHistoryRequest().size(10)
+                                    .hooks("all/*")).actionGet();
+            assertEquals(5, historyResponse.getNodes().length);
+            final List<HookHistory.Entry> entries = historyResponse
+                    .getEntries();
+            assertEquals(10, entries.size());
+            for (final HookHistory.Entry entry : entries) {
+                assertTrue(entry.hookKey().startsWith("all/"));
+                assertNotNull(entry.node());
+            }
+            for (int i = 1; i < entries.size(); i++) {
+                assertTrue(entries.get(i - 1).startTime() >= entries.get(i)
+                        .startTime());
+            }
+        }
+
+        // replay events recorded by the first master node
+        {
+            final String prefix = masterNodeName.replaceAll("[^\\w\\-]", "_")
+                    + "-";
+            final File[] files = eventDir.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(final File dir, final String name) {
+                    return name.startsWith(prefix);
+                }
+            });
+            assertTrue(files.length > 0);
+            Arrays.sort(files);
+
+            final EventReplayer replayer = new EventReplayer(
+                    runner.getInstance(EventHookService.class),
+                    runner.clusterService());
+            final ReplayReport report = replayer.replay(files[0], 0,
+                    TimeValue.timeValueSeconds(30));
+            final XContentBuilder builder = XContentFactory.jsonBuilder()
+                    .humanReadable(true).startObject();
+            report.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            logger.info("Replayed: {}", builder.endObject().string());
+            assertTrue(report.dryRun());
+            assertTrue(report.eventCount() > 0);
+            final HookStats stats = report.hookStats("all/print_event");
+            assertNotNull(stats);
+            assertTrue(stats.invocationCount() > 0);
+        }
+
+        // dynamic settings
+        {
+            final ClusterUpdateSettingsResponse response = runner
+                    .client()
+                    .admin()
+                    .cluster()
+                    .prepareUpdateSettings()
+                    .setTransientSettings(
+                            ImmutableSettings.settingsBuilder()
+                                    .put("cluster.eventhook.enable", false)
+                                    .put("cluster.eventhook.rate_limit",
+                                            "a/1m")).execute().actionGet();
+            assertEquals("false", response.getTransientSettings().get(
+                    "cluster.eventhook.enable"));
+            // an invalid value is ignored
+            assertNull(response.getTransientSettings().get(
+                    "cluster.eventhook.rate_limit"));
+            Thread.sleep(1000L);
+
+            final EventHookService eventHookService = runner
+                    .getInstance(EventHookService.class);
+            assertFalse(eventHookService.config().enabled());
+            assertNull(eventHookService.config().rateLimit());
+            final int count = CountingHook.COUNT.get();
+            runner.createIndex("disabled_index", null);
+            runner.ensureYellow("disabled_index");
+            Thread.sleep(1000L);
+            assertEquals(count, CountingHook.COUNT.get());
+
+            runner.client().admin().cluster().prepareUpdateSettings()
+                    .setTransientSettings(ImmutableSettings.settingsBuilder()
+                            .put("cluster.eventhook.enable", true))
+                    .execute().actionGet();
+            Thread.sleep(1000L);
+            assertTrue(eventHookService.config().enabled());
+        }
+    }
+
+    public static class CountingHookPlugin extends AbstractPlugin {
+        @Override
+        public String name() {
+            return "CountingHookPlugin";
+        }
+
+        @Override
+        public String description() {
+            return "This is a test plugin for native hooks.";
+        }
+
+        @Override
+        public Collection<Class<? extends Module>> modules() {
+            final Collection<Class<? extends Module>> modules = Lists
+                    .newArrayList();
+            modules.add(CountingHookModule.class);
+            return modules;
+        }
+    }
+
+    public static class CountingHookModule extends AbstractModule {
+        @Override
+        protected void configure() {
+            Multibinder.newSetBinder(binder(), EventHook.class).addBinding()
+                    .to(CountingHook.class);
+        }
+    }
+
+    public static class CountingHook implements EventHook {
+        static final AtomicInteger COUNT = new AtomicInteger();
+
+        @Override
+        public String id() {
+            return "counting_hook";
+        }
+
+        @Override
+        public String type() {
+            return "all";
+        }
+
+        @Override
+        public long priority() {
+            return 1;
+        }
+
+        @Override
+        public boolean execute(final EventHookContext context) {
+            COUNT.incrementAndGet();
+            return context.eventType() != null;
+        }
     }
 }
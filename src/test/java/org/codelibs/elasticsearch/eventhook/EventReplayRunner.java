@@ -0,0 +1,84 @@
+package org.codelibs.elasticsearch.eventhook;
+
+import java.io.File;
+import java.util.Map;
+
+import org.codelibs.elasticsearch.eventhook.service.EventHookService;
+import org.codelibs.elasticsearch.eventhook.service.EventReplayer;
+import org.codelibs.elasticsearch.eventhook.service.ReplayReport;
+import org.codelibs.elasticsearch.runner.ElasticsearchClusterRunner;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+
+// replays recorded events on a local node
+// usage: EventReplayRunner events_file [hooks_file] [speed] [execute]
+//   hooks_file: a JSON like {"type":{"id":{"lang":...}}} to create hooks
+//   speed: 1 for real time, 0 for max speed (default)
+//   execute: true to execute hooks on this node instead of a dry run
+public class EventReplayRunner {
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: EventReplayRunner events_file [hooks_file] [speed] [execute]");
+            System.exit(1);
+        }
+        final File eventFile = new File(args[0]);
+        final File hookFile = args.length > 1 ? new File(args[1]) : null;
+        final double speed = args.length > 2 ? Double.parseDouble(args[2])
+                : 0;
+        final boolean execute = args.length > 3
+                && Boolean.parseBoolean(args[3]);
+
+        final ElasticsearchClusterRunner runner = new ElasticsearchClusterRunner();
+        runner.build(new String[] { "-numOfNode", "1", "-indexStoreType",
+                "ram" });
+        try {
+            final String eventIndex = ".eventhook";
+            for (int i = 0; i < 100 && !runner.indexExists(eventIndex); i++) {
+                Thread.sleep(100L);
+            }
+            runner.ensureGreen(eventIndex);
+
+            if (hookFile != null) {
+                final Map<String, Object> hooks = XContentHelper
+                        .convertToMap(Streams.copyToByteArray(hookFile),
+                                false).v2();
+                for (final Map.Entry<String, Object> typeEntry : hooks
+                        .entrySet()) {
+                    @SuppressWarnings("unchecked")
+                    final Map<String, Object> typeHooks = (Map<String, Object>) typeEntry
+                            .getValue();
+                    for (final Map.Entry<String, Object> entry : typeHooks
+                            .entrySet()) {
+                        runner.client()
+                                .prepareIndex(eventIndex, typeEntry.getKey(),
+                                        entry.getKey())
+                                .setSource(
+                                        XContentFactory.jsonBuilder().value(
+                                                entry.getValue()))
+                                .setRefresh(true).execute().actionGet();
+                    }
+                }
+                // wait for reloading hooks
+                Thread.sleep(2000L);
+            }
+
+            final EventReplayer replayer = new EventReplayer(
+                    runner.getInstance(EventHookService.class),
+                    runner.clusterService());
+            final ReplayReport report = replayer.replay(eventFile, speed,
+                    TimeValue.timeValueMinutes(5), !execute);
+            final XContentBuilder builder = XContentFactory.jsonBuilder()
+                    .prettyPrint().humanReadable(true).startObject();
+            report.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            System.out.println(builder.endObject().string());
+        } finally {
+            runner.close();
+            runner.clean();
+        }
+    }
+}
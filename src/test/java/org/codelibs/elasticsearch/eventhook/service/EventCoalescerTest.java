@@ -0,0 +1,221 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.indices.InternalIndicesLifecycle;
+import org.elasticsearch.threadpool.ThreadPool;
+
+public class EventCoalescerTest extends TestCase {
+
+    private static final String TYPE = "zen_disco_node_left";
+
+    private ManualThreadPool threadPool;
+
+    private final Map<String, Flushed> flushed = new LinkedHashMap<String, Flushed>();
+
+    private ClusterState state = ClusterState.builder(new ClusterName("test"))
+            .version(0).build();
+
+    @Override
+    protected void setUp() throws Exception {
+        threadPool = new ManualThreadPool("EventCoalescerTest");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        threadPool.shutdownNow();
+    }
+
+    private static Hook createHook(final String id, final String coalesce) {
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("lang", "groovy");
+        source.put("script", "true");
+        if (coalesce != null) {
+            source.put("coalesce", coalesce);
+        }
+        return new Hook(id, TYPE, 1, source);
+    }
+
+    private EventCoalescer createCoalescer(final Settings settings,
+            final Hook... hooks) {
+        final HookRegistry hookRegistry = new StaticHookRegistry(settings,
+                threadPool, Arrays.asList(hooks));
+        return new EventCoalescer(settings, threadPool, hookRegistry,
+                new EventCoalescer.Listener() {
+                    @Override
+                    public void onEvent(final String type, final long window,
+                            final ClusterChangedEvent firstEvent,
+                            final ClusterChangedEvent lastEvent,
+                            final int count) {
+                        assertNull(flushed.put(type + "@" + window,
+                                new Flushed(firstEvent, lastEvent, count)));
+                    }
+                });
+    }
+
+    private ClusterChangedEvent nextEvent() {
+        final ClusterState previousState = state;
+        state = ClusterState.builder(previousState)
+                .version(previousState.version() + 1).build();
+        return new ClusterChangedEvent(TYPE, state, previousState);
+    }
+
+    public void test_typeSetting() throws Exception {
+        final Settings settings = ImmutableSettings.settingsBuilder()
+                .put("cluster.eventhook.coalesce." + TYPE, "1s").build();
+        // the setting is used instead of the windows of hooks
+        final EventCoalescer coalescer = createCoalescer(settings,
+                createHook("h1", "5s"), createHook("h2", null));
+
+        final ClusterChangedEvent first = nextEvent();
+        assertTrue(coalescer.offer(TYPE, first));
+        assertTrue(coalescer.offer(TYPE, nextEvent()));
+        final ClusterChangedEvent last = nextEvent();
+        assertTrue(coalescer.offer(TYPE, last));
+        assertEquals(1, threadPool.delays().size());
+        assertEquals(1000, threadPool.delays().get(0).millis());
+        assertTrue(flushed.isEmpty());
+
+        assertEquals(1, threadPool.runScheduled());
+        assertEquals(1, flushed.size());
+        assertFlushed(flushed.get(TYPE + "@" + HookSet.ANY_WINDOW), first,
+                last, 3);
+    }
+
+    public void test_hookWindow() throws Exception {
+        final EventCoalescer coalescer = createCoalescer(
+                ImmutableSettings.EMPTY, createHook("h1", "1s"),
+                createHook("h2", "5s"), createHook("h3", "5s"),
+                createHook("h4", null));
+
+        // h4 receives each event when it is dispatched
+        final ClusterChangedEvent first = nextEvent();
+        assertFalse(coalescer.offer(TYPE, first));
+        final ClusterChangedEvent last = nextEvent();
+        assertFalse(coalescer.offer(TYPE, last));
+        final List<TimeValue> delays = threadPool.delays();
+        assertEquals(2, delays.size());
+        assertEquals(6000, delays.get(0).millis() + delays.get(1).millis());
+
+        assertEquals(2, threadPool.runScheduled());
+        assertEquals(2, flushed.size());
+        assertFlushed(flushed.get(TYPE + "@1000"), first, last, 2);
+        assertFlushed(flushed.get(TYPE + "@5000"), first, last, 2);
+    }
+
+    public void test_noWindow() throws Exception {
+        final EventCoalescer coalescer = createCoalescer(
+                ImmutableSettings.EMPTY, createHook("h1", null));
+
+        assertFalse(coalescer.offer(TYPE, nextEvent()));
+        assertTrue(threadPool.delays().isEmpty());
+        coalescer.flushAll();
+        assertTrue(flushed.isEmpty());
+    }
+
+    public void test_flushAll() throws Exception {
+        final Settings settings = ImmutableSettings.settingsBuilder()
+                .put("cluster.eventhook.coalesce." + TYPE, "1m").build();
+        final EventCoalescer coalescer = createCoalescer(settings,
+                createHook("h1", "5s"));
+
+        final ClusterChangedEvent first = nextEvent();
+        assertTrue(coalescer.offer(TYPE, first));
+        final ClusterChangedEvent last = nextEvent();
+        assertTrue(coalescer.offer(TYPE, last));
+
+        // the service flushes pending events on stop without their delay
+        coalescer.flushAll();
+        assertEquals(1, flushed.size());
+        assertFlushed(flushed.get(TYPE + "@" + HookSet.ANY_WINDOW), first,
+                last, 2);
+
+        // the scheduled flush finds nothing left
+        flushed.clear();
+        assertEquals(1, threadPool.runScheduled());
+        assertTrue(flushed.isEmpty());
+
+        // a later event starts a new window
+        final ClusterChangedEvent next = nextEvent();
+        assertTrue(coalescer.offer(TYPE, next));
+        assertEquals(1, threadPool.runScheduled());
+        assertFlushed(flushed.get(TYPE + "@" + HookSet.ANY_WINDOW), next,
+                next, 1);
+    }
+
+    public void test_applyConfig() throws Exception {
+        final Settings settings = ImmutableSettings.settingsBuilder()
+                .put("cluster.eventhook.coalesce." + TYPE, "1s").build();
+        final EventCoalescer coalescer = createCoalescer(settings,
+                createHook("h1", "5s"));
+
+        final ClusterChangedEvent first = nextEvent();
+        assertTrue(coalescer.offer(TYPE, first));
+
+        // removing the setting falls back to the window of the hook
+        coalescer.applyConfig(new EventHookConfig(ImmutableSettings.EMPTY));
+        final ClusterChangedEvent second = nextEvent();
+        assertFalse(coalescer.offer(TYPE, second));
+
+        assertEquals(2, threadPool.runScheduled());
+        assertEquals(2, flushed.size());
+        assertFlushed(flushed.get(TYPE + "@" + HookSet.ANY_WINDOW), first,
+                first, 1);
+        assertFlushed(flushed.get(TYPE + "@5000"), second, second, 1);
+    }
+
+    private static void assertFlushed(final Flushed actual,
+            final ClusterChangedEvent firstEvent,
+            final ClusterChangedEvent lastEvent, final int count) {
+        assertNotNull(actual);
+        assertSame(firstEvent, actual.firstEvent);
+        assertSame(lastEvent, actual.lastEvent);
+        assertEquals(count, actual.count);
+    }
+
+    private static class Flushed {
+        final ClusterChangedEvent firstEvent;
+
+        final ClusterChangedEvent lastEvent;
+
+        final int count;
+
+        Flushed(final ClusterChangedEvent firstEvent,
+                final ClusterChangedEvent lastEvent, final int count) {
+            this.firstEvent = firstEvent;
+            this.lastEvent = lastEvent;
+            this.count = count;
+        }
+    }
+
+    // windows of the given hooks without loading them from an index
+    private static class StaticHookRegistry extends HookRegistry {
+        private final HookSet hookSet;
+
+        StaticHookRegistry(final Settings settings,
+                final ThreadPool threadPool, final List<Hook> hooks) {
+            super(settings, null, null, threadPool,
+                    new InternalIndicesLifecycle(settings), Collections
+                            .<EventHook> emptySet());
+            hookSet = new HookSet(hooks);
+        }
+
+        @Override
+        public List<TimeValue> coalesceWindows(final String type) {
+            return hookSet.coalesceWindows(type);
+        }
+    }
+}
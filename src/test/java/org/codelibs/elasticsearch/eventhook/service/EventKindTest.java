@@ -0,0 +1,79 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+
+public class EventKindTest extends TestCase {
+
+    private static ClusterState createState(final int numOfNodes,
+            final String... indices) {
+        final DiscoveryNodes.Builder nodesBuilder = DiscoveryNodes.builder();
+        for (int i = 0; i < numOfNodes; i++) {
+            nodesBuilder.put(new DiscoveryNode("node" + i,
+                    DummyTransportAddress.INSTANCE, Version.CURRENT));
+        }
+        nodesBuilder.localNodeId("node0").masterNodeId("node0");
+        final MetaData.Builder metaDataBuilder = MetaData.builder();
+        for (final String index : indices) {
+            metaDataBuilder.put(IndexMetaData.builder(index).settings(
+                    ImmutableSettings.settingsBuilder()
+                            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+                            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                            .put(IndexMetaData.SETTING_VERSION_CREATED,
+                                    Version.CURRENT)));
+        }
+        return ClusterState.builder(ClusterName.DEFAULT)
+                .nodes(nodesBuilder).metaData(metaDataBuilder).build();
+    }
+
+    public void test_parse() {
+        assertEquals(EventKind.INDICES_CREATED,
+                EventKind.parse("indices_created"));
+        assertEquals(EventKind.INDICES_CREATED,
+                EventKind.parse("indicesCreated"));
+        assertEquals(EventKind.NODES_REMOVED.mask()
+                | EventKind.BLOCKS_CHANGED.mask(),
+                EventKind.toMask(Arrays.asList("nodesRemoved",
+                        "blocks_changed")));
+        try {
+            EventKind.parse("foo");
+            fail();
+        } catch (final ElasticsearchIllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void test_classify() {
+        final ClusterState state1 = createState(3, "a");
+        final ClusterState state2 = createState(2, "a", "b");
+
+        final ClusterChangedEvent event = new ClusterChangedEvent("test",
+                state2, state1);
+        final int kinds = EventKind.classify(event, EventKind.ALL_MASK);
+        assertTrue((kinds & EventKind.INDICES_CREATED.mask()) != 0);
+        assertTrue((kinds & EventKind.NODES_REMOVED.mask()) != 0);
+        assertTrue((kinds & EventKind.METADATA_CHANGED.mask()) != 0);
+        assertEquals(0, kinds & EventKind.INDICES_DELETED.mask());
+        assertEquals(0, kinds & EventKind.NODES_ADDED.mask());
+
+        // only subscribed kinds are checked
+        assertEquals(EventKind.NODES_REMOVED.mask(), EventKind.classify(
+                event, EventKind.NODES_REMOVED.mask()
+                        | EventKind.INDICES_DELETED.mask()));
+        assertEquals(0, EventKind.classify(event, 0));
+        assertEquals(0, EventKind.classify(null, EventKind.ALL_MASK));
+    }
+}
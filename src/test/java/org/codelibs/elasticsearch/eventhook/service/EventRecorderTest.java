@@ -0,0 +1,273 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.ImmutableShardRouting;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.common.collect.ImmutableMap;
+import org.elasticsearch.common.hppc.cursors.ObjectCursor;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.threadpool.ThreadPool;
+
+public class EventRecorderTest extends TestCase {
+
+    private ThreadPool threadPool;
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        threadPool = new ThreadPool(ImmutableSettings.settingsBuilder()
+                .put("name", "EventRecorderTest").build(), null);
+        dir = File.createTempFile("eventhook", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        threadPool.shutdownNow();
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static DiscoveryNode createNode(final String id) {
+        return new DiscoveryNode(id, id, DummyTransportAddress.INSTANCE,
+                ImmutableMap.<String, String> of(), Version.CURRENT);
+    }
+
+    private static IndexRoutingTable createRouting(final String index,
+            final String nodeId, final ShardRoutingState state) {
+        return IndexRoutingTable
+                .builder(index)
+                .addIndexShard(
+                        new IndexShardRoutingTable.Builder(new ShardId(index,
+                                0), true).addShard(
+                                new ImmutableShardRouting(index, 0, nodeId,
+                                        true, state, 1)).build()).build();
+    }
+
+    public void test_roundTrip() throws Exception {
+        final EventRecorder recorder = new EventRecorder(ImmutableSettings
+                .settingsBuilder()
+                .put("cluster.eventhook.recorder.path", dir.getAbsolutePath())
+                .build(), threadPool);
+        recorder.start();
+
+        final DiscoveryNode node1 = createNode("node1");
+        final List<ClusterState> states = new ArrayList<ClusterState>();
+        final List<String> sources = new ArrayList<String>();
+        ClusterState state = ClusterState
+                .builder(new ClusterName("test"))
+                .version(1)
+                .nodes(DiscoveryNodes.builder().put(node1)
+                        .localNodeId(node1.id()).masterNodeId(node1.id()))
+                .build();
+        states.add(state);
+
+        // index create
+        state = ClusterState
+                .builder(state)
+                .version(2)
+                .metaData(
+                        MetaData.builder(state.metaData()).put(
+                                IndexMetaData
+                                        .builder("logs")
+                                        .settings(
+                                                ImmutableSettings
+                                                        .settingsBuilder()
+                                                        .put(IndexMetaData.SETTING_VERSION_CREATED,
+                                                                Version.CURRENT))
+                                        .numberOfShards(1)
+                                        .numberOfReplicas(0)))
+                .routingTable(
+                        RoutingTable.builder(state.routingTable()).add(
+                                createRouting("logs", null,
+                                        ShardRoutingState.UNASSIGNED)))
+                .build();
+        states.add(state);
+        sources.add("create-index [logs], cause [api]");
+
+        // mapping change
+        state = ClusterState
+                .builder(state)
+                .version(3)
+                .metaData(
+                        MetaData.builder(state.metaData()).put(
+                                IndexMetaData.builder(
+                                        state.metaData().index("logs"))
+                                        .putMapping("doc",
+                                                "{\"doc\":{\"properties\":{}}}")))
+                .build();
+        states.add(state);
+        sources.add("put-mapping [doc]");
+
+        // routing change
+        state = ClusterState
+                .builder(state)
+                .version(4)
+                .routingTable(
+                        RoutingTable.builder(state.routingTable()).add(
+                                createRouting("logs", node1.id(),
+                                        ShardRoutingState.STARTED))).build();
+        states.add(state);
+        sources.add("shard-started ([logs][0], node[node1], [P])");
+
+        // node join
+        state = ClusterState
+                .builder(state)
+                .version(5)
+                .nodes(DiscoveryNodes.builder(state.nodes()).put(
+                        createNode("node2"))).build();
+        states.add(state);
+        sources.add("zen-disco-receive(join from node[node2])");
+
+        // cluster settings, so metadata is written in full
+        state = ClusterState
+                .builder(state)
+                .version(6)
+                .metaData(
+                        MetaData.builder(state.metaData()).persistentSettings(
+                                ImmutableSettings.settingsBuilder()
+                                        .put("cluster.eventhook.enable", true)
+                                        .build())).build();
+        states.add(state);
+        sources.add("cluster_update_settings");
+
+        // index delete
+        state = ClusterState
+                .builder(state)
+                .version(7)
+                .metaData(MetaData.builder(state.metaData()).remove("logs"))
+                .routingTable(
+                        RoutingTable.builder(state.routingTable()).remove(
+                                "logs")).build();
+        states.add(state);
+        sources.add("delete-index [logs]");
+
+        // unchanged
+        state = ClusterState.builder(state).version(8).build();
+        states.add(state);
+        sources.add("reroute_after_cluster_update_settings");
+
+        final List<ClusterChangedEvent> events = new ArrayList<ClusterChangedEvent>();
+        for (int i = 1; i < states.size(); i++) {
+            final ClusterChangedEvent event = new ClusterChangedEvent(
+                    sources.get(i - 1), states.get(i), states.get(i - 1));
+            events.add(event);
+            recorder.record(event);
+        }
+        recorder.stop();
+        assertEquals(events.size(), recorder.recordedCount());
+        assertEquals(0, recorder.droppedCount());
+
+        final EventRecorder.Reader reader = new EventRecorder.Reader(
+                recorder.file());
+        try {
+            assertEquals(node1.id(), reader.localNode().id());
+            for (final ClusterChangedEvent expected : events) {
+                final EventRecorder.RecordedEvent recorded = reader.next();
+                assertNotNull(recorded);
+                assertTrue(recorded.timestamp() > 0);
+                assertEvent(expected, recorded.event());
+            }
+            assertNull(reader.next());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void assertEvent(final ClusterChangedEvent expected,
+            final ClusterChangedEvent actual) {
+        final String source = expected.source();
+        assertEquals(source, actual.source());
+        assertEquals(source, expected.state().version(), actual.state()
+                .version());
+        assertEquals(source, expected.metaDataChanged(),
+                actual.metaDataChanged());
+        assertEquals(source, expected.routingTableChanged(),
+                actual.routingTableChanged());
+        assertEquals(source, expected.nodesChanged(), actual.nodesChanged());
+        assertEquals(source, expected.blocksChanged(), actual.blocksChanged());
+        if (expected.metaDataChanged()) {
+            assertEquals(source, sorted(expected.indicesCreated()),
+                    sorted(actual.indicesCreated()));
+            assertEquals(source, sorted(expected.indicesDeleted()),
+                    sorted(actual.indicesDeleted()));
+        }
+
+        final ClusterState expectedState = expected.state();
+        final ClusterState actualState = actual.state();
+        assertEquals(source, nodeIds(expectedState.nodes()),
+                nodeIds(actualState.nodes()));
+        assertEquals(source, expectedState.nodes().localNodeId(), actualState
+                .nodes().localNodeId());
+        assertEquals(source, expectedState.metaData().persistentSettings(),
+                actualState.metaData().persistentSettings());
+        assertEquals(source, indexNames(expectedState.metaData()),
+                indexNames(actualState.metaData()));
+        for (final ObjectCursor<IndexMetaData> cursor : expectedState
+                .metaData().indices().values()) {
+            final IndexMetaData indexMetaData = actualState.metaData().index(
+                    cursor.value.index());
+            assertEquals(source, cursor.value.version(),
+                    indexMetaData.version());
+            assertEquals(source, cursor.value.mappings().size(),
+                    indexMetaData.mappings().size());
+        }
+        assertEquals(source, expectedState.routingTable().indicesRouting()
+                .keySet(), actualState.routingTable().indicesRouting()
+                .keySet());
+        for (final IndexRoutingTable routing : expectedState.routingTable()) {
+            assertEquals(source, routing.shard(0).shards(), actualState
+                    .routingTable().index(routing.index()).shard(0).shards());
+        }
+    }
+
+    private static List<String> sorted(final List<String> values) {
+        final List<String> list = new ArrayList<String>(values);
+        Collections.sort(list);
+        return list;
+    }
+
+    private static List<String> nodeIds(final DiscoveryNodes nodes) {
+        final List<String> ids = new ArrayList<String>();
+        for (final DiscoveryNode node : nodes) {
+            ids.add(node.id());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static List<String> indexNames(final MetaData metaData) {
+        final List<String> names = new ArrayList<String>();
+        for (final ObjectCursor<String> cursor : metaData.indices().keys()) {
+            names.add(cursor.value);
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,111 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+
+public class HookCircuitBreakerTest extends TestCase {
+
+    public void test_openAndClose() throws Exception {
+        final Settings settings = ImmutableSettings.settingsBuilder()
+                .put("cluster.eventhook.breaker.failure_threshold", 3)
+                .put("cluster.eventhook.breaker.open_time", "200ms").build();
+        final HookMetrics hookMetrics = new HookMetrics();
+        final HookCircuitBreaker breaker = new HookCircuitBreaker(settings,
+                hookMetrics);
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("lang", "groovy");
+        source.put("script", "true");
+        final Hook hook = new Hook("test", "all", 1, source);
+
+        assertTrue(breaker.allow(hook));
+        breaker.record(hook, HookPipeline.Outcome.FAILURE);
+        breaker.record(hook, HookPipeline.Outcome.SUCCESS);
+        breaker.record(hook, HookPipeline.Outcome.FAILURE);
+        breaker.record(hook, HookPipeline.Outcome.TIMEOUT);
+        assertEquals(HookCircuitBreaker.State.CLOSED, breaker.state(hook));
+        breaker.record(hook, HookPipeline.Outcome.FAILURE);
+        assertEquals(HookCircuitBreaker.State.OPEN, breaker.state(hook));
+        assertFalse(breaker.allow(hook));
+        assertEquals(1, hookMetrics.get(hook).skippedCount());
+        assertEquals(1, hookMetrics.get(hook).timeoutCount());
+
+        // a failed probe opens the circuit again
+        Thread.sleep(300L);
+        assertTrue(breaker.allow(hook));
+        assertEquals(HookCircuitBreaker.State.HALF_OPEN, breaker.state(hook));
+        assertFalse(breaker.allow(hook));
+        breaker.record(hook, HookPipeline.Outcome.FAILURE);
+        assertEquals(HookCircuitBreaker.State.OPEN, breaker.state(hook));
+
+        // a successful probe closes the circuit
+        Thread.sleep(300L);
+        assertTrue(breaker.allow(hook));
+        breaker.record(hook, HookPipeline.Outcome.SUCCESS);
+        assertEquals(HookCircuitBreaker.State.CLOSED, breaker.state(hook));
+        assertEquals(HookCircuitBreaker.State.CLOSED, hookMetrics.get(hook)
+                .breakerState());
+        assertTrue(breaker.allow(hook));
+    }
+
+    public void test_declined() throws Exception {
+        final Settings settings = ImmutableSettings.settingsBuilder()
+                .put("cluster.eventhook.breaker.failure_threshold", 2)
+                .build();
+        final HookMetrics hookMetrics = new HookMetrics();
+        final HookCircuitBreaker breaker = new HookCircuitBreaker(settings,
+                hookMetrics);
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("lang", "groovy");
+        source.put("script", "false");
+        final Hook hook = new Hook("guard", "all", 1, source);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(breaker.allow(hook));
+            breaker.record(hook, HookPipeline.Outcome.of(Boolean.FALSE));
+        }
+        assertEquals(HookCircuitBreaker.State.CLOSED, breaker.state(hook));
+
+        // false between errors resets the failure count
+        breaker.record(hook, HookPipeline.Outcome.FAILURE);
+        breaker.record(hook, HookPipeline.Outcome.DECLINED);
+        breaker.record(hook, HookPipeline.Outcome.FAILURE);
+        assertEquals(HookCircuitBreaker.State.CLOSED, breaker.state(hook));
+        breaker.record(hook, HookPipeline.Outcome.FAILURE);
+        assertEquals(HookCircuitBreaker.State.OPEN, breaker.state(hook));
+    }
+
+    public void test_retain() throws Exception {
+        final Settings settings = ImmutableSettings.settingsBuilder()
+                .put("cluster.eventhook.breaker.failure_threshold", 1)
+                .build();
+        final HookMetrics hookMetrics = new HookMetrics();
+        final HookCircuitBreaker breaker = new HookCircuitBreaker(settings,
+                hookMetrics);
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("lang", "groovy");
+        source.put("script", "true");
+        final Hook kept = new Hook("kept", "all", 1, source);
+        final Hook deleted = new Hook("deleted", "all", 1, source);
+
+        breaker.record(kept, HookPipeline.Outcome.FAILURE);
+        breaker.record(deleted, HookPipeline.Outcome.FAILURE);
+        assertFalse(breaker.allow(kept));
+        assertFalse(breaker.allow(deleted));
+        assertEquals(2, hookMetrics.stats().size());
+
+        // reloaded without the deleted hook
+        final HookSet hookSet = new HookSet(Arrays.asList(kept));
+        breaker.retain(hookSet);
+        hookMetrics.retain(hookSet);
+        assertEquals(HookCircuitBreaker.State.OPEN, breaker.state(kept));
+        assertEquals(HookCircuitBreaker.State.CLOSED, breaker.state(deleted));
+        assertEquals(1, hookMetrics.stats().size());
+        assertEquals("all/kept", hookMetrics.stats().get(0).key());
+    }
+}
@@ -0,0 +1,122 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+
+public class HookExecutorTest extends TestCase {
+
+    private ThreadPool threadPool;
+
+    private final CountDownLatch blocked = new CountDownLatch(1);
+
+    private final List<String> runs = Collections
+            .synchronizedList(new ArrayList<String>());
+
+    private final List<String> rejections = Collections
+            .synchronizedList(new ArrayList<String>());
+
+    @Override
+    protected void tearDown() throws Exception {
+        blocked.countDown();
+        threadPool.shutdownNow();
+    }
+
+    // one thread and a queue of two
+    private HookExecutor createExecutor(final String rejectionPolicy) {
+        final Settings settings = ImmutableSettings.settingsBuilder()
+                .put("name", "HookExecutorTest")
+                .put("threadpool.eventhook.type", "fixed")
+                .put("threadpool.eventhook.size", 1)
+                .put("threadpool.eventhook.queue_size", 2)
+                .put("cluster.eventhook.rejection_policy", rejectionPolicy)
+                .build();
+        threadPool = new ThreadPool(settings, null);
+        return new HookExecutor(settings, threadPool);
+    }
+
+    private HookExecutor.Task createTask(final String name,
+            final CountDownLatch done) {
+        return new HookExecutor.Task() {
+            @Override
+            public void run() {
+                try {
+                    if ("t1".equals(name)) {
+                        // keeps the only thread busy
+                        blocked.await(10, TimeUnit.SECONDS);
+                    }
+                    runs.add(name);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onRejected() {
+                rejections.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    private void fill(final HookExecutor hookExecutor,
+            final CountDownLatch done) {
+        hookExecutor.execute(createTask("t1", done));
+        hookExecutor.execute(createTask("t2", done));
+        hookExecutor.execute(createTask("t3", done));
+        assertEquals(2, hookExecutor.queueSize());
+        assertEquals(0, hookExecutor.droppedCount());
+    }
+
+    public void test_dropNewest() throws Exception {
+        final HookExecutor hookExecutor = createExecutor("drop_newest");
+        assertEquals(HookExecutor.RejectionPolicy.DROP_NEWEST,
+                hookExecutor.rejectionPolicy());
+        final CountDownLatch done = new CountDownLatch(4);
+        fill(hookExecutor, done);
+
+        hookExecutor.execute(createTask("t4", done));
+        assertEquals(Arrays.asList("t4"), rejections);
+        assertEquals(1, hookExecutor.droppedCount());
+        assertEquals(2, hookExecutor.queueSize());
+
+        blocked.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("t1", "t2", "t3"), runs);
+        assertEquals(1, hookExecutor.droppedCount());
+    }
+
+    public void test_dropOldest() throws Exception {
+        final HookExecutor hookExecutor = createExecutor("drop_oldest");
+        assertEquals(HookExecutor.RejectionPolicy.DROP_OLDEST,
+                hookExecutor.rejectionPolicy());
+        final CountDownLatch done = new CountDownLatch(5);
+        fill(hookExecutor, done);
+
+        // the queued task waiting longest makes room for the new one
+        hookExecutor.execute(createTask("t4", done));
+        assertEquals(Arrays.asList("t2"), rejections);
+        assertEquals(1, hookExecutor.droppedCount());
+        assertEquals(2, hookExecutor.queueSize());
+
+        hookExecutor.execute(createTask("t5", done));
+        assertEquals(Arrays.asList("t2", "t3"), rejections);
+        assertEquals(2, hookExecutor.droppedCount());
+
+        blocked.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("t1", "t4", "t5"), runs);
+        assertEquals(2, hookExecutor.droppedCount());
+    }
+}
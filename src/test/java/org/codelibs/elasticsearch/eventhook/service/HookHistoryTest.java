@@ -0,0 +1,116 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.ImmutableSettings;
+
+public class HookHistoryTest extends TestCase {
+
+    public void test_ringBuffer() throws Exception {
+        final HookHistory history = new HookHistory(ImmutableSettings
+                .settingsBuilder().put("cluster.eventhook.history.size", 4)
+                .build());
+        final Hook hook1 = createHook("hook1", "node_left");
+        final Hook hook2 = createHook("hook2", "node_join");
+        assertTrue(history.entries(10, null).isEmpty());
+
+        for (int i = 0; i < 6; i++) {
+            final Hook hook = i % 2 == 0 ? hook1 : hook2;
+            final Exception failure = i == 5 ? new Exception("test") : null;
+            history.record(hook.type(), "zen-disco-receive", hook, i, 10, 20,
+                    failure == null, i, failure);
+        }
+        assertEquals(6, history.recordedCount());
+
+        // the oldest 2 entries are overwritten
+        final List<HookHistory.Entry> entries = history.entries(10, null);
+        assertEquals(4, entries.size());
+        assertEquals(5, entries.get(0).startTime());
+        assertFalse(entries.get(0).success());
+        assertEquals("java.lang.Exception: test", entries.get(0).failure());
+        assertNull(entries.get(1).failure());
+        assertEquals(2, entries.get(3).startTime());
+        assertEquals(2, history.entries(2, null).size());
+
+        final List<HookHistory.Entry> hook1Entries = history.entries(10,
+                new String[] { "node_left/*" });
+        assertEquals(2, hook1Entries.size());
+        assertEquals("node_left/hook1", hook1Entries.get(0).hookKey());
+        assertEquals(4, hook1Entries.get(0).startTime());
+
+        // entries are sent to a node which aggregates them
+        final BytesStreamOutput out = new BytesStreamOutput();
+        entries.get(0).node("node1");
+        entries.get(0).writeTo(out);
+        final HookHistory.Entry entry = HookHistory.Entry
+                .readEntry(new BytesStreamInput(out.bytes()));
+        assertEquals("node1", entry.node());
+        assertEquals("node_join/hook2", entry.hookKey());
+        assertEquals(5, entry.startTime());
+
+        history.clear();
+        assertTrue(history.entries(10, null).isEmpty());
+    }
+
+    public void test_result() throws Exception {
+        final HookHistory history = new HookHistory(ImmutableSettings
+                .settingsBuilder().put("cluster.eventhook.history.size", 4)
+                .build());
+        final Hook hook = createHook("hook1", "all");
+        final AtomicInteger toStringCount = new AtomicInteger();
+        final Object scriptObject = new Object() {
+            @Override
+            public String toString() {
+                toStringCount.incrementAndGet();
+                return "script object";
+            }
+        };
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            buf.append('x');
+        }
+
+        history.record("all", "test", hook, 0, 0, 0, true, Boolean.TRUE, null);
+        history.record("all", "test", hook, 1, 0, 0, true, 42L, null);
+        history.record("all", "test", hook, 2, 0, 0, true, scriptObject,
+                null);
+        history.record("all", "test", hook, 3, 0, 0, true, buf.toString(),
+                null);
+        // summarized once when recorded
+        assertEquals(1, toStringCount.get());
+
+        final List<HookHistory.Entry> entries = history.entries(10, null);
+        assertEquals(4, entries.size());
+        assertEquals(259, entries.get(0).result().length());
+        assertTrue(entries.get(0).result().endsWith("..."));
+        assertEquals("script object", entries.get(1).result());
+        assertEquals("42", entries.get(2).result());
+        assertEquals("true", entries.get(3).result());
+        assertNull(entries.get(3).failure());
+        assertEquals(1, toStringCount.get());
+    }
+
+    public void test_disabled() throws Exception {
+        final HookHistory history = new HookHistory(ImmutableSettings
+                .settingsBuilder().put("cluster.eventhook.history.size", 0)
+                .build());
+        assertFalse(history.enabled());
+        history.record("all", "test", createHook("hook1", "all"), 0, 0, 0,
+                true, null, null);
+        assertTrue(history.entries(10, null).isEmpty());
+    }
+
+    private static Hook createHook(final String id, final String type) {
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("lang", "groovy");
+        source.put("script", "true");
+        return new Hook(id, type, 1, source);
+    }
+}
@@ -0,0 +1,254 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+
+public class HookPipelineTest extends TestCase {
+
+    private static final ESLogger logger = Loggers
+            .getLogger(HookPipelineTest.class);
+
+    private ThreadPool threadPool;
+
+    private HookExecutor hookExecutor;
+
+    @Override
+    protected void setUp() throws Exception {
+        final Settings settings = ImmutableSettings.settingsBuilder()
+                .put("name", "HookPipelineTest")
+                .put("threadpool.eventhook.type", "fixed")
+                .put("threadpool.eventhook.size", 4)
+                .put("threadpool.eventhook.queue_size", 100).build();
+        threadPool = new ThreadPool(settings, null);
+        hookExecutor = new HookExecutor(settings, threadPool);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        threadPool.shutdownNow();
+    }
+
+    private static Hook createHook(final String id, final int priority,
+            final boolean stopOnFailure) {
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("priority", priority);
+        source.put("lang", "groovy");
+        source.put("script", id);
+        source.put("stop_on_failure", stopOnFailure);
+        return new Hook(id, "all", 1, source);
+    }
+
+    public void test_bandOrder() throws Exception {
+        final List<Hook> hooks = new ArrayList<Hook>();
+        hooks.add(createHook("a1", 1, false));
+        hooks.add(createHook("a2", 1, false));
+        hooks.add(createHook("b1", 2, false));
+        hooks.add(createHook("c1", 3, false));
+        hooks.add(createHook("c2", 3, false));
+        Collections.sort(hooks);
+
+        final List<String> results = Collections
+                .synchronizedList(new ArrayList<String>());
+        final CountDownLatch latch = new CountDownLatch(hooks.size());
+        final CountDownLatch finished = new CountDownLatch(1);
+        new HookPipeline(logger, hookExecutor, hooks,
+                new HookPipeline.Runner() {
+                    @Override
+                    public boolean accept(final Hook hook) {
+                        return true;
+                    }
+
+                    @Override
+                    public HookPipeline.Outcome run(final Hook hook,
+                            final long queueNanos) {
+                        try {
+                            Thread.sleep(hook.priority() == 1 ? 200L : 10L);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        results.add(hook.id());
+                        latch.countDown();
+                        return HookPipeline.Outcome.SUCCESS;
+                    }
+
+                    @Override
+                    public void onCompleted(final Hook hook,
+                            final HookPipeline.Outcome outcome) {
+                    }
+
+                    @Override
+                    public void onFinished() {
+                        finished.countDown();
+                    }
+                }).start();
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals(5, results.size());
+        assertTrue(results.get(0).startsWith("a"));
+        assertTrue(results.get(1).startsWith("a"));
+        assertEquals("b1", results.get(2));
+        assertTrue(results.get(3).startsWith("c"));
+        assertTrue(results.get(4).startsWith("c"));
+    }
+
+    public void test_stopOnFailure() throws Exception {
+        final List<Hook> hooks = new ArrayList<Hook>();
+        hooks.add(createHook("guard", 1, true));
+        hooks.add(createHook("other", 1, false));
+        hooks.add(createHook("expensive", 2, false));
+
+        final List<String> results = Collections
+                .synchronizedList(new ArrayList<String>());
+        final CountDownLatch latch = new CountDownLatch(2);
+        final CountDownLatch finished = new CountDownLatch(1);
+        new HookPipeline(logger, hookExecutor, hooks,
+                new HookPipeline.Runner() {
+                    @Override
+                    public boolean accept(final Hook hook) {
+                        return true;
+                    }
+
+                    @Override
+                    public HookPipeline.Outcome run(final Hook hook,
+                            final long queueNanos) {
+                        results.add(hook.id());
+                        latch.countDown();
+                        return "guard".equals(hook.id()) ? HookPipeline.Outcome.DECLINED
+                                : HookPipeline.Outcome.SUCCESS;
+                    }
+
+                    @Override
+                    public void onCompleted(final Hook hook,
+                            final HookPipeline.Outcome outcome) {
+                    }
+
+                    @Override
+                    public void onFinished() {
+                        finished.countDown();
+                    }
+                }).start();
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals(2, results.size());
+        assertFalse(results.contains("expensive"));
+    }
+
+    public void test_timeout() throws Exception {
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("priority", 1);
+        source.put("lang", "groovy");
+        source.put("script", "slow");
+        source.put("timeout", "100ms");
+        final List<Hook> hooks = new ArrayList<Hook>();
+        hooks.add(new Hook("slow", "all", 1, source));
+        hooks.add(createHook("next", 2, false));
+
+        final List<String> results = Collections
+                .synchronizedList(new ArrayList<String>());
+        final CountDownLatch finished = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final long startTime = System.currentTimeMillis();
+        new HookPipeline(logger, hookExecutor, hooks,
+                new HookPipeline.Runner() {
+                    @Override
+                    public boolean accept(final Hook hook) {
+                        return true;
+                    }
+
+                    @Override
+                    public HookPipeline.Outcome run(final Hook hook,
+                            final long queueNanos) {
+                        if ("slow".equals(hook.id())) {
+                            try {
+                                Thread.sleep(10000L);
+                            } catch (final InterruptedException e) {
+                                interrupted.countDown();
+                            }
+                        }
+                        return HookPipeline.Outcome.SUCCESS;
+                    }
+
+                    @Override
+                    public void onCompleted(final Hook hook,
+                            final HookPipeline.Outcome outcome) {
+                        results.add(hook.id() + ":" + outcome);
+                    }
+
+                    @Override
+                    public void onFinished() {
+                        finished.countDown();
+                    }
+                }).start();
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - startTime < 5000L);
+        assertTrue(results.contains("slow:TIMEOUT"));
+        assertTrue(results.contains("next:SUCCESS"));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    public void test_guardKeepsCircuitClosed() throws Exception {
+        final Settings settings = ImmutableSettings.settingsBuilder()
+                .put("cluster.eventhook.breaker.failure_threshold", 3)
+                .build();
+        final HookMetrics hookMetrics = new HookMetrics();
+        final HookCircuitBreaker breaker = new HookCircuitBreaker(settings,
+                hookMetrics);
+        final List<Hook> hooks = new ArrayList<Hook>();
+        hooks.add(createHook("guard", 1, true));
+        hooks.add(createHook("expensive", 2, false));
+
+        // a guard returning false stops lower bands on every event, but is
+        // never counted as a failure of the guard
+        for (int i = 0; i < 10; i++) {
+            final List<String> results = Collections
+                    .synchronizedList(new ArrayList<String>());
+            final CountDownLatch finished = new CountDownLatch(1);
+            new HookPipeline(logger, hookExecutor, hooks,
+                    new HookPipeline.Runner() {
+                        @Override
+                        public boolean accept(final Hook hook) {
+                            return breaker.allow(hook);
+                        }
+
+                        @Override
+                        public HookPipeline.Outcome run(final Hook hook,
+                                final long queueNanos) {
+                            results.add(hook.id());
+                            return HookPipeline.Outcome.DECLINED;
+                        }
+
+                        @Override
+                        public void onCompleted(final Hook hook,
+                                final HookPipeline.Outcome outcome) {
+                            breaker.record(hook, outcome);
+                        }
+
+                        @Override
+                        public void onFinished() {
+                            finished.countDown();
+                        }
+                    }).start();
+            assertTrue(finished.await(10, TimeUnit.SECONDS));
+            assertEquals("[guard]", results.toString());
+        }
+        assertEquals(HookCircuitBreaker.State.CLOSED,
+                breaker.state(hooks.get(0)));
+        assertEquals(0, hookMetrics.get(hooks.get(0)).skippedCount());
+    }
+}
@@ -0,0 +1,156 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.settings.ImmutableSettings;
+
+public class HookRateLimiterTest extends TestCase {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public void test_rateLimit() throws Exception {
+        final HookMetrics hookMetrics = new HookMetrics();
+        final HookRateLimiter limiter = new HookRateLimiter(hookMetrics);
+        final Hook hook = createHook("limited", 1, "2/1m", null);
+
+        // a burst of 2 events, then 1 event per 30s
+        final long start = System.nanoTime();
+        assertTrue(limiter.acquire(hook, start));
+        assertTrue(limiter.acquire(hook, start + SECOND));
+        assertFalse(limiter.acquire(hook, start + 2 * SECOND));
+        assertFalse(limiter.acquire(hook, start + 29 * SECOND));
+        assertTrue(limiter.acquire(hook, start + 30 * SECOND));
+        assertFalse(limiter.acquire(hook, start + 31 * SECOND));
+        assertEquals(3, hookMetrics.get(hook).rateLimitedCount());
+
+        // full after an idle interval
+        final long later = start + 200 * SECOND;
+        assertTrue(limiter.acquire(hook, later));
+        assertTrue(limiter.acquire(hook, later));
+        assertFalse(limiter.acquire(hook, later));
+
+        // an updated hook gets a new bucket
+        final Hook updated = createHook("limited", 2, "3/1m", null);
+        assertTrue(limiter.acquire(updated, later));
+        assertTrue(limiter.acquire(updated, later));
+        assertTrue(limiter.acquire(updated, later));
+        assertFalse(limiter.acquire(updated, later));
+    }
+
+    public void test_cooldown() throws Exception {
+        final HookMetrics hookMetrics = new HookMetrics();
+        final HookRateLimiter limiter = new HookRateLimiter(hookMetrics);
+        final Hook hook = createHook("cooldown", 1, null, "10s");
+        final Hook both = createHook("both", 1, "2/1m", "10s");
+        final Hook free = createHook("free", 1, null, null);
+
+        final long start = System.nanoTime();
+        assertTrue(limiter.acquire(hook, start));
+        assertFalse(limiter.acquire(hook, start + 5 * SECOND));
+        assertTrue(limiter.acquire(hook, start + 10 * SECOND));
+        assertEquals(1, hookMetrics.get(hook).rateLimitedCount());
+
+        assertTrue(limiter.acquire(both, start));
+        assertFalse(limiter.acquire(both, start + 5 * SECOND));
+        assertTrue(limiter.acquire(both, start + 10 * SECOND));
+        assertFalse(limiter.acquire(both, start + 20 * SECOND));
+        assertTrue(limiter.acquire(both, start + 30 * SECOND));
+
+        // only limited hooks are removed
+        final Hook listed = createHook("listed", 1, null, "1m");
+        final List<Hook> hooks = Arrays.asList(free, listed, free);
+        assertEquals(3, limiter.acquire(hooks).size());
+        final List<Hook> targets = limiter.acquire(hooks);
+        assertEquals(2, targets.size());
+        assertSame(free, targets.get(0));
+        assertSame(free, targets.get(1));
+        assertEquals(0, hookMetrics.get(free).rateLimitedCount());
+    }
+
+    public void test_defaultRateLimit() throws Exception {
+        final HookMetrics hookMetrics = new HookMetrics();
+        final HookRateLimiter limiter = new HookRateLimiter(hookMetrics);
+        final Hook free = createHook("free", 1, null, null);
+        final Hook own = createHook("own", 1, "2/1m", null);
+
+        final long start = System.nanoTime();
+        limiter.applyConfig(new EventHookConfig(ImmutableSettings
+                .settingsBuilder()
+                .put("cluster.eventhook.rate_limit", "1/1m").build()));
+        assertTrue(limiter.acquire(free, start));
+        assertFalse(limiter.acquire(free, start + SECOND));
+        // rate_limit of a hook is used instead
+        assertTrue(limiter.acquire(own, start));
+        assertTrue(limiter.acquire(own, start + SECOND));
+        assertFalse(limiter.acquire(own, start + 2 * SECOND));
+
+        // an empty value removes the limit
+        limiter.applyConfig(new EventHookConfig(ImmutableSettings
+                .settingsBuilder().put("cluster.eventhook.rate_limit", "")
+                .build()));
+        assertTrue(limiter.acquire(free, start + 2 * SECOND));
+        assertTrue(limiter.acquire(free, start + 2 * SECOND));
+        assertEquals(1, hookMetrics.get(free).rateLimitedCount());
+
+        assertNotNull(EventHookConfig.RATE_LIMIT_VALIDATOR.validate(
+                "cluster.eventhook.rate_limit", "a/1m"));
+        assertNull(EventHookConfig.RATE_LIMIT_VALIDATOR.validate(
+                "cluster.eventhook.rate_limit", "10/1s"));
+    }
+
+    public void test_parse() throws Exception {
+        assertNull(RateLimit.parse(null));
+        assertEquals(10, RateLimit.parse("10/1s").events());
+        assertEquals(1000, RateLimit.parse("10/1s").interval().millis());
+        assertEquals(60000, RateLimit.parse(5).interval().millis());
+        for (final String value : new String[] { "0/1m", "a/1m", "10/0s" }) {
+            try {
+                RateLimit.parse(value);
+                fail(value);
+            } catch (final ElasticsearchIllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void test_retain() throws Exception {
+        final HookMetrics hookMetrics = new HookMetrics();
+        final HookRateLimiter limiter = new HookRateLimiter(hookMetrics);
+        final Hook kept = createHook("kept", 1, null, "1m");
+        final Hook deleted = createHook("deleted", 1, null, "1m");
+
+        final long start = System.nanoTime();
+        assertTrue(limiter.acquire(kept, start));
+        assertTrue(limiter.acquire(deleted, start));
+        assertFalse(limiter.acquire(kept, start + SECOND));
+        assertFalse(limiter.acquire(deleted, start + SECOND));
+
+        // reloaded without the deleted hook
+        final HookSet hookSet = new HookSet(Arrays.asList(kept));
+        limiter.retain(hookSet);
+        hookMetrics.retain(hookSet);
+        assertEquals(1, hookMetrics.stats().size());
+        assertEquals(1, hookMetrics.get(kept).rateLimitedCount());
+        assertFalse(limiter.acquire(kept, start + 2 * SECOND));
+        // a hook created again with the same id starts with a new bucket
+        assertTrue(limiter.acquire(deleted, start + 2 * SECOND));
+        assertEquals(0, hookMetrics.get(deleted).rateLimitedCount());
+    }
+
+    private static Hook createHook(final String id, final long version,
+            final String rateLimit, final String cooldown) {
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("lang", "groovy");
+        source.put("script", "true");
+        source.put("rate_limit", rateLimit);
+        source.put("cooldown", cooldown);
+        return new Hook(id, "node_left", version, source);
+    }
+}
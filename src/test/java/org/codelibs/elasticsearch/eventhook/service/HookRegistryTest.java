@@ -0,0 +1,277 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.collect.ImmutableMap;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.text.StringText;
+import org.elasticsearch.indices.InternalIndicesLifecycle;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+
+public class HookRegistryTest extends TestCase {
+
+    private static final String TYPE = "zen_disco_node_left";
+
+    private ManualThreadPool threadPool;
+
+    private ClusterState state;
+
+    private ClusterChangedEvent event;
+
+    private TestHookRegistry hookRegistry;
+
+    private final List<HookSet> loadedHookSets = new ArrayList<HookSet>();
+
+    @Override
+    protected void setUp() throws Exception {
+        threadPool = new ManualThreadPool("HookRegistryTest");
+        state = ClusterState
+                .builder(new ClusterName("test"))
+                .metaData(
+                        MetaData.builder().put(
+                                IndexMetaData
+                                        .builder(".eventhook")
+                                        .settings(
+                                                ImmutableSettings
+                                                        .settingsBuilder()
+                                                        .put(IndexMetaData.SETTING_VERSION_CREATED,
+                                                                Version.CURRENT))
+                                        .numberOfShards(1)
+                                        .numberOfReplicas(0))).build();
+        event = new ClusterChangedEvent(TYPE, state, state);
+        hookRegistry = new TestHookRegistry(ImmutableSettings.EMPTY);
+        hookRegistry.addListener(new HookRegistry.Listener() {
+            @Override
+            public void onLoaded(final HookSet hookSet) {
+                loadedHookSets.add(hookSet);
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        threadPool.shutdownNow();
+    }
+
+    private Lookup lookup() {
+        final Lookup lookup = new Lookup();
+        hookRegistry.lookup(TYPE, HookSet.ANY_WINDOW, event, state.nodes(),
+                false, lookup);
+        return lookup;
+    }
+
+    private static InternalSearchHit createHit(final String id,
+            final long version) {
+        final InternalSearchHit hit = new InternalSearchHit(0, id,
+                new StringText(TYPE), ImmutableMap.<String, SearchHitField> of());
+        hit.sourceRef(new BytesArray(
+                "{\"lang\":\"groovy\",\"script\":\"true\",\"priority\":1}"));
+        hit.version(version);
+        return hit;
+    }
+
+    private static SearchResponse createResponse(final String scrollId,
+            final long totalHits, final InternalSearchHit... hits) {
+        return new SearchResponse(new InternalSearchResponse(
+                new InternalSearchHits(hits, totalHits, 1.0f), null, null,
+                null, false, null), scrollId, 1, 1, 1,
+                ShardSearchFailure.EMPTY_ARRAY);
+    }
+
+    private static List<String> versions(final List<Hook> hooks) {
+        final List<String> versions = new ArrayList<String>();
+        for (final Hook hook : hooks) {
+            versions.add(hook.id() + ":" + hook.version());
+        }
+        return versions;
+    }
+
+    public void test_lookupWhileLoading() throws Exception {
+        final Lookup lookup1 = lookup();
+        final Lookup lookup2 = lookup();
+        // one search for both lookups
+        assertEquals(Arrays.asList(".eventhook"), hookRegistry.searches);
+        assertNull(lookup1.hooks);
+        assertNull(lookup2.hooks);
+        assertEquals(2, hookRegistry.missCount());
+
+        hookRegistry.respond(0,
+                createResponse("s1", 2, createHit("h1", 1)));
+        assertEquals(Arrays.asList(".eventhook", "scroll:s1"),
+                hookRegistry.searches);
+        assertNull(lookup1.hooks);
+        hookRegistry.respond(1,
+                createResponse("s2", 2, createHit("h2", 1)));
+
+        assertEquals(Arrays.asList("s2"), hookRegistry.clearedScrollIds);
+        assertEquals(Arrays.asList("h1:1", "h2:1"), versions(lookup1.hooks));
+        assertEquals(Arrays.asList("h1:1", "h2:1"), versions(lookup2.hooks));
+        assertEquals(1, hookRegistry.reloadCount());
+        assertEquals(1, loadedHookSets.size());
+
+        final Lookup lookup3 = lookup();
+        assertEquals(Arrays.asList("h1:1", "h2:1"), versions(lookup3.hooks));
+        assertEquals(1, hookRegistry.hitCount());
+        assertEquals(2, hookRegistry.searches.size());
+    }
+
+    public void test_indexingInvalidation() throws Exception {
+        lookup();
+        hookRegistry.respond(0, createResponse("s1", 1, createHit("h1", 1)));
+        assertEquals(1, hookRegistry.reloadCount());
+
+        // writes to the local shard schedule one reload
+        hookRegistry.indexingListener.postIndex(null);
+        hookRegistry.indexingListener.postDelete(null);
+        assertEquals(1, threadPool.delays().size());
+        assertEquals(500, threadPool.delays().get(0).millis());
+
+        // the loaded hooks are used until the reload finishes
+        final Lookup lookup1 = lookup();
+        assertEquals(Arrays.asList("h1:1"), versions(lookup1.hooks));
+
+        assertEquals(1, threadPool.runScheduled());
+        assertEquals(2, hookRegistry.searches.size());
+        hookRegistry.respond(1, createResponse("s2", 1, createHit("h1", 2)));
+        assertEquals(2, hookRegistry.reloadCount());
+
+        final Lookup lookup2 = lookup();
+        assertEquals(Arrays.asList("h1:2"), versions(lookup2.hooks));
+        assertTrue(threadPool.delays().isEmpty());
+    }
+
+    public void test_staleResult() throws Exception {
+        final Lookup lookup1 = lookup();
+        assertEquals(1, hookRegistry.searches.size());
+
+        // a write after the search started
+        hookRegistry.indexingListener.postIndex(null);
+        hookRegistry.respond(0, createResponse("s1", 1, createHit("h1", 1)));
+
+        // the result is dropped and the lookup waits for a reload
+        assertEquals(Arrays.asList("s1"), hookRegistry.clearedScrollIds);
+        assertNull(lookup1.hooks);
+        assertNull(hookRegistry.hookSet());
+        assertEquals(0, hookRegistry.reloadCount());
+        assertTrue(loadedHookSets.isEmpty());
+
+        assertEquals(1, threadPool.runScheduled());
+        assertEquals(2, hookRegistry.searches.size());
+        hookRegistry.respond(1, createResponse("s2", 1, createHit("h1", 2)));
+        assertEquals(Arrays.asList("h1:2"), versions(lookup1.hooks));
+        assertEquals(1, hookRegistry.reloadCount());
+        assertEquals(1, loadedHookSets.size());
+        assertTrue(threadPool.delays().isEmpty());
+    }
+
+    public void test_indexChanged() throws Exception {
+        final Lookup lookup1 = lookup();
+
+        // hooks from the previous index are not used
+        hookRegistry.applyConfig(new EventHookConfig(ImmutableSettings
+                .settingsBuilder().put("cluster.eventhook.index", ".hooks")
+                .build()));
+        hookRegistry.respond(0, createResponse("s1", 1, createHit("h1", 1)));
+        assertNull(lookup1.hooks);
+        assertNull(hookRegistry.hookSet());
+
+        assertEquals(1, threadPool.runScheduled());
+        assertEquals(Arrays.asList(".eventhook", ".hooks"),
+                hookRegistry.searches);
+        hookRegistry.respond(1, createResponse("s2", 1, createHit("h2", 1)));
+        assertEquals(Arrays.asList("h2:1"), versions(lookup1.hooks));
+    }
+
+    private static class Lookup implements ActionListener<List<Hook>> {
+        volatile List<Hook> hooks;
+
+        @Override
+        public void onResponse(final List<Hook> hooks) {
+            assertNull(this.hooks);
+            this.hooks = hooks;
+        }
+
+        @Override
+        public void onFailure(final Throwable e) {
+            fail(e.toString());
+        }
+    }
+
+    // answers searches from the test instead of a client
+    private class TestHookRegistry extends HookRegistry {
+        final List<String> searches = new ArrayList<String>();
+
+        final List<ActionListener<SearchResponse>> listeners = new ArrayList<ActionListener<SearchResponse>>();
+
+        final List<String> clearedScrollIds = new ArrayList<String>();
+
+        TestHookRegistry(final Settings settings) {
+            super(settings, createClusterService(), null, threadPool,
+                    new InternalIndicesLifecycle(settings), Collections
+                            .<EventHook> emptySet());
+        }
+
+        @Override
+        void search(final String index, final int size,
+                final ActionListener<SearchResponse> listener) {
+            searches.add(index);
+            listeners.add(listener);
+        }
+
+        @Override
+        void searchScroll(final String scrollId,
+                final ActionListener<SearchResponse> listener) {
+            searches.add("scroll:" + scrollId);
+            listeners.add(listener);
+        }
+
+        @Override
+        void clearScroll(final String scrollId) {
+            clearedScrollIds.add(scrollId);
+        }
+
+        void respond(final int index, final SearchResponse response) {
+            listeners.get(index).onResponse(response);
+        }
+    }
+
+    private ClusterService createClusterService() {
+        return (ClusterService) Proxy.newProxyInstance(
+                ClusterService.class.getClassLoader(),
+                new Class<?>[] { ClusterService.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy,
+                            final Method method, final Object[] args) {
+                        if ("state".equals(method.getName())) {
+                            return state;
+                        }
+                        throw new UnsupportedOperationException(method
+                                .getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,353 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.collect.ImmutableMap;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+
+public class HookSetTest extends TestCase {
+
+    private static Hook createHook(final String id, final String type,
+            final long priority, final String runOn) {
+        final Map<String, Object> source = new HashMap<String, Object>();
+        if (runOn != null) {
+            source.put("run_on", runOn);
+        }
+        return createHook(id, type, priority, source);
+    }
+
+    private static Hook createHook(final String id, final String type,
+            final long priority, final Map<String, Object> source) {
+        source.put("priority", priority);
+        source.put("lang", "groovy");
+        source.put("script", "true");
+        return new Hook(id, type, 1, source);
+    }
+
+    private static DiscoveryNodes createNodes(final DiscoveryNode localNode,
+            final DiscoveryNode... otherNodes) {
+        final DiscoveryNodes.Builder builder = DiscoveryNodes.builder()
+                .put(localNode).localNodeId(localNode.id());
+        for (final DiscoveryNode node : otherNodes) {
+            builder.put(node);
+        }
+        return builder.build();
+    }
+
+    private static ClusterState createState(final String... indices) {
+        final MetaData.Builder builder = MetaData.builder();
+        for (final String index : indices) {
+            builder.put(IndexMetaData
+                    .builder(index)
+                    .settings(
+                            ImmutableSettings.settingsBuilder().put(
+                                    IndexMetaData.SETTING_VERSION_CREATED,
+                                    Version.CURRENT)).numberOfShards(1)
+                    .numberOfReplicas(0));
+        }
+        return ClusterState.builder(new ClusterName("test"))
+                .metaData(builder).build();
+    }
+
+    private static List<String> ids(final List<Hook> hooks) {
+        final List<String> ids = new ArrayList<String>();
+        for (final Hook hook : hooks) {
+            ids.add(hook.id());
+        }
+        return ids;
+    }
+
+    public void test_runOn() throws Exception {
+        final List<Hook> hooks = new ArrayList<Hook>();
+        hooks.add(createHook("h1", "test", 1, (String) null));
+        hooks.add(createHook("h2", "test", 2, "master"));
+        hooks.add(createHook("h3", "test", 3, "data"));
+        hooks.add(createHook("h4", "test", 4, "rack=r1"));
+        hooks.add(createHook("h5", "all", 5, "MASTER"));
+        final HookSet hookSet = new HookSet(hooks);
+
+        final DiscoveryNode dataNode = new DiscoveryNode("node0", "node0",
+                DummyTransportAddress.INSTANCE,
+                ImmutableMap.of("rack", "r1"), Version.CURRENT);
+        final DiscoveryNode clientNode = new DiscoveryNode("node1", "node1",
+                DummyTransportAddress.INSTANCE, ImmutableMap.of("data",
+                        "false", "rack", "r2"), Version.CURRENT);
+
+        final DiscoveryNodes dataNodes = createNodes(dataNode);
+        final DiscoveryNodes clientNodes = createNodes(clientNode);
+
+        assertEquals("[h1, h2, h3, h4, h5]",
+                ids(hookSet.get("test", null, dataNodes, true)).toString());
+        assertEquals("[h1, h3, h4]",
+                ids(hookSet.get("test", null, dataNodes, false)).toString());
+        assertEquals("[h1, h2, h5]",
+                ids(hookSet.get("test", null, clientNodes, true)).toString());
+        assertEquals("[h1]",
+                ids(hookSet.get("test", null, clientNodes, false)).toString());
+        assertTrue(hookSet.get("other", null, clientNodes, false).isEmpty());
+
+        try {
+            RunOn.parse("unknown");
+            fail();
+        } catch (final ElasticsearchIllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void test_coalesceWindows() throws Exception {
+        final List<Hook> hooks = new ArrayList<Hook>();
+        hooks.add(createHook("h1", "test", 1, (String) null));
+        final Map<String, Object> source2 = new HashMap<String, Object>();
+        source2.put("coalesce", "1s");
+        hooks.add(createHook("h2", "test", 2, source2));
+        final Map<String, Object> source3 = new HashMap<String, Object>();
+        source3.put("coalesce", "5s");
+        hooks.add(createHook("h3", "test", 3, source3));
+        final Map<String, Object> source4 = new HashMap<String, Object>();
+        source4.put("coalesce", "1s");
+        hooks.add(createHook("h4", "all", 4, source4));
+        final HookSet hookSet = new HookSet(hooks);
+
+        assertEquals("[1s, 5s]", hookSet.coalesceWindows("test").toString());
+        assertTrue(hookSet.coalesceWindows("all").isEmpty());
+        assertTrue(hookSet.coalesceWindows("other").isEmpty());
+
+        final DiscoveryNodes nodes = createNodes(new DiscoveryNode("node0",
+                DummyTransportAddress.INSTANCE, Version.CURRENT));
+        // a window of a hook does not change events of other hooks
+        assertEquals("[h1, h4]", ids(hookSet.get("test", HookSet.NO_WINDOW,
+                null, nodes, true)).toString());
+        assertEquals("[h2]", ids(hookSet.get("test", 1000, null, nodes,
+                true)).toString());
+        assertEquals("[h3]", ids(hookSet.get("test", 5000, null, nodes,
+                true)).toString());
+        assertEquals("[h1, h2, h3, h4]", ids(hookSet.get("test",
+                HookSet.ANY_WINDOW, null, nodes, true)).toString());
+        assertEquals("[h4]", ids(hookSet.get("other", HookSet.NO_WINDOW,
+                null, nodes, true)).toString());
+        assertTrue(hookSet.get("other", 1000, null, nodes, true).isEmpty());
+    }
+
+    public void test_filter() throws Exception {
+        final List<Hook> hooks = new ArrayList<Hook>();
+        hooks.add(createHook("h1", "test", 1,
+                new HashMap<String, Object>()));
+        hooks.add(createHook("h2", "test", 2, filter("indices",
+                Arrays.asList("logs-*", "metrics"))));
+        hooks.add(createHook("h3", "test", 3, filter("is_master", true)));
+        hooks.add(createHook("h4", "test", 4, filter("min_nodes", 2)));
+        hooks.add(createHook("h5", "test", 5, filter("max_nodes", "1")));
+        hooks.add(createHook("h6", "test", 6,
+                filter("node_attributes", ImmutableMap.of("rack", "r1"))));
+        hooks.add(createHook("h7", "test", 7,
+                filter("changed", "indices_deleted")));
+        final HookSet hookSet = new HookSet(hooks);
+
+        final DiscoveryNode node0 = new DiscoveryNode("node0", "node0",
+                DummyTransportAddress.INSTANCE,
+                ImmutableMap.of("rack", "r1"), Version.CURRENT);
+        final DiscoveryNode node1 = new DiscoveryNode("node1", "node1",
+                DummyTransportAddress.INSTANCE,
+                ImmutableMap.of("rack", "r2"), Version.CURRENT);
+
+        // on_master and off_master events
+        assertEquals("[h1, h3, h5, h6]",
+                ids(hookSet.get("test", null, createNodes(node0), true))
+                        .toString());
+        assertEquals("[h1, h4]",
+                ids(hookSet.get("test", null, createNodes(node1, node0),
+                        false)).toString());
+
+        final ClusterState previousState = createState("metrics", "test");
+        final ClusterChangedEvent createdEvent = new ClusterChangedEvent(
+                "test", createState("metrics", "test", "logs-1"),
+                previousState);
+        assertEquals("[h1, h2, h5]",
+                ids(hookSet.get("test", createdEvent, createNodes(node1),
+                        false)).toString());
+        final ClusterChangedEvent deletedEvent = new ClusterChangedEvent(
+                "test", createState("test"), previousState);
+        assertEquals("[h1, h2, h5, h7]",
+                ids(hookSet.get("test", deletedEvent, createNodes(node1),
+                        false)).toString());
+        final ClusterChangedEvent otherEvent = new ClusterChangedEvent(
+                "test", createState("metrics", "test", "other"),
+                previousState);
+        assertEquals("[h1, h5]",
+                ids(hookSet.get("test", otherEvent, createNodes(node1), false))
+                        .toString());
+
+        try {
+            HookFilter.parse(filter("unknown", true));
+            fail();
+        } catch (final ElasticsearchIllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void test_filterChanged() throws Exception {
+        final List<Hook> hooks = new ArrayList<Hook>();
+        hooks.add(createHook("h1", "test", 1,
+                filter("changed", "indices_deleted")));
+        hooks.add(createHook("h2", "test", 2,
+                filter("changed", "nodes_removed")));
+        hooks.add(createHook("h3", "test", 3,
+                filter("changed", Arrays.asList("indices_created",
+                        "indices_deleted"))));
+        final Map<String, Object> kindSource = new HashMap<String, Object>();
+        kindSource.put("kinds", "indices_created");
+        hooks.add(createHook("h4", "other", 4, kindSource));
+        final HookSet hookSet = new HookSet(hooks);
+
+        final DiscoveryNodes nodes = createNodes(new DiscoveryNode("node0",
+                DummyTransportAddress.INSTANCE, Version.CURRENT));
+        // metadata_changed and kinds of other hooks do not match a filter
+        final ClusterChangedEvent createdEvent = new ClusterChangedEvent(
+                "test", createState("logs-1", "metrics"),
+                createState("metrics"));
+        assertEquals("[h3, h4]",
+                ids(hookSet.get("test", createdEvent, nodes, true))
+                        .toString());
+        final ClusterChangedEvent deletedEvent = new ClusterChangedEvent(
+                "test", createState(), createState("metrics"));
+        assertEquals("[h1, h3]",
+                ids(hookSet.get("test", deletedEvent, nodes, true))
+                        .toString());
+        final ClusterChangedEvent sameEvent = new ClusterChangedEvent(
+                "test", createState("metrics"), createState("metrics"));
+        assertTrue(hookSet.get("test", sameEvent, nodes, true).isEmpty());
+    }
+
+    public void test_indexChanged() throws Exception {
+        final List<Hook> hooks = new ArrayList<Hook>();
+        hooks.add(createHook("h1", "all", 1, (String) null));
+        hooks.add(createHook("h2", "index_changed", 2,
+                filter("indices", "logs-*")));
+        hooks.add(createHook("h3", "index_changed", 3, (String) null));
+        final Map<String, Object> kindSource = new HashMap<String, Object>();
+        kindSource.put("kinds", "metadata_changed");
+        hooks.add(createHook("h4", "test", 4, kindSource));
+        final HookSet hookSet = new HookSet(hooks);
+        assertTrue(hookSet.hasType("index_changed"));
+
+        final DiscoveryNodes nodes = createNodes(new DiscoveryNode("node0",
+                DummyTransportAddress.INSTANCE, Version.CURRENT));
+        final ClusterChangedEvent event = new ClusterChangedEvent("test",
+                createState("logs-1", "metrics"), createState());
+        final IndexChange logsChange = IndexDiff.diff("logs-1", event
+                .state().metaData().index("logs-1"), null, null, null);
+        final IndexChange metricsChange = IndexDiff.diff("metrics", event
+                .state().metaData().index("metrics"), null, null, null);
+
+        // all and kinds hooks run for the original event only
+        assertEquals("[h1, h4]",
+                ids(hookSet.get("test", event, nodes, true)).toString());
+        assertEquals("[h2, h3]", ids(
+                hookSet.get("index_changed", new IndexChangedEvent(event,
+                        Arrays.asList(logsChange, metricsChange)), nodes,
+                        true)).toString());
+        assertEquals("[h3]", ids(
+                hookSet.get("index_changed", new IndexChangedEvent(event,
+                        Arrays.asList(metricsChange)), nodes, true))
+                .toString());
+        assertTrue(new HookSet(hooks.subList(0, 1)).get("index_changed",
+                event, nodes, true).isEmpty());
+    }
+
+    public void test_sharded() throws Exception {
+        final List<Hook> hooks = new ArrayList<Hook>();
+        hooks.add(createHook("h1", "all", 1, "sharded"));
+        hooks.add(createHook("h2", "test", 2, "sharded"));
+        hooks.add(createHook("h3", "test", 3, (String) null));
+        final HookSet hookSet = new HookSet(hooks);
+
+        final int nodeSize = 5;
+        final DiscoveryNode[] nodes = new DiscoveryNode[nodeSize];
+        for (int i = 0; i < nodeSize; i++) {
+            nodes[i] = new DiscoveryNode("node" + i, "node" + i,
+                    DummyTransportAddress.INSTANCE,
+                    ImmutableMap.<String, String> of(), Version.CURRENT);
+        }
+        final DiscoveryNodes[] views = new DiscoveryNodes[nodeSize];
+        for (int i = 0; i < nodeSize; i++) {
+            final DiscoveryNodes.Builder builder = DiscoveryNodes.builder();
+            for (final DiscoveryNode node : nodes) {
+                builder.put(node);
+            }
+            views[i] = builder.localNodeId(nodes[i].id()).build();
+        }
+
+        final int[] ownedCounts = new int[nodeSize];
+        final ClusterState previousState = createState();
+        for (int version = 1; version <= 100; version++) {
+            final ClusterChangedEvent event = new ClusterChangedEvent("test",
+                    ClusterState.builder(createState()).version(version)
+                            .build(), previousState);
+            int h1Count = 0;
+            int h2Count = 0;
+            for (int i = 0; i < nodeSize; i++) {
+                final List<String> ids = ids(hookSet.get("test", event,
+                        views[i], i == 0));
+                assertTrue(ids.contains("h3"));
+                if (ids.contains("h1")) {
+                    h1Count++;
+                    ownedCounts[i]++;
+                }
+                if (ids.contains("h2")) {
+                    assertEquals(0, i);
+                    h2Count++;
+                }
+            }
+            // one node for each event and hook, and the master for a type
+            assertEquals(1, h1Count);
+            assertEquals(1, h2Count);
+        }
+        for (final int count : ownedCounts) {
+            assertTrue(count > 0);
+        }
+
+        // local events run on this node
+        assertEquals("[h1, h2, h3]",
+                ids(hookSet.get("test", null, views[1], false)).toString());
+
+        // only keys of a removed node move
+        final HookRing ring = new HookRing(views[0]);
+        final HookRing smallRing = new HookRing(DiscoveryNodes
+                .builder(views[0]).remove("node4").build());
+        assertFalse(ring.hasSameNodes(smallRing.nodes()));
+        for (int version = 1; version <= 100; version++) {
+            final String key = HookRing.key(hooks.get(0), version);
+            final String owner = ring.owner(key);
+            if (!"node4".equals(owner)) {
+                assertEquals(owner, smallRing.owner(key));
+            } else {
+                assertFalse("node4".equals(smallRing.owner(key)));
+            }
+        }
+    }
+
+    private static Map<String, Object> filter(final String name,
+            final Object value) {
+        final Map<String, Object> filter = new HashMap<String, Object>();
+        filter.put(name, value);
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("filter", filter);
+        return source;
+    }
+}
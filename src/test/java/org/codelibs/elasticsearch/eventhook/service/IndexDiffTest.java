@@ -0,0 +1,200 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.routing.ImmutableShardRouting;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.index.shard.ShardId;
+
+public class IndexDiffTest extends TestCase {
+
+    private static final ShardRoutingState INITIALIZING = ShardRoutingState.INITIALIZING;
+
+    private static final ShardRoutingState STARTED = ShardRoutingState.STARTED;
+
+    private static final ShardRoutingState RELOCATING = ShardRoutingState.RELOCATING;
+
+    private static final ShardRoutingState UNASSIGNED = ShardRoutingState.UNASSIGNED;
+
+    public void test_shardTransitions() throws Exception {
+        final MetaData metaData = MetaData.builder()
+                .put(createIndex("logs", null))
+                .put(createIndex("other", null)).build();
+        final ClusterState state1 = createState(
+                metaData,
+                createRouting("logs",
+                        shard("logs", "n1", null, true, STARTED),
+                        shard("logs", "n2", null, false, INITIALIZING)),
+                createRouting("other",
+                        shard("other", "n1", null, true, STARTED)));
+
+        // the replica started, and other is rebuilt with the same shards
+        final ClusterState state2 = createState(
+                metaData,
+                createRouting("logs",
+                        shard("logs", "n1", null, true, STARTED),
+                        shard("logs", "n2", null, false, STARTED)),
+                createRouting("other",
+                        shard("other", "n1", null, true, STARTED)));
+        List<IndexChange> changes = IndexDiff.diff(new ClusterChangedEvent(
+                "shard-started", state2, state1));
+        assertEquals(1, changes.size());
+        IndexChange change = changes.get(0);
+        assertEquals("logs", change.index());
+        assertEquals("yellow", change.previousHealth());
+        assertEquals("green", change.health());
+        assertTrue(change.healthChanged());
+        assertEquals(1, change.shardsStarted());
+        assertEquals(0, change.shardsFailed());
+        assertFalse(change.mappingsChanged());
+
+        // the primary moves from n1 to n3
+        final ClusterState state3 = createState(
+                metaData,
+                createRouting("logs",
+                        shard("logs", "n1", "n3", true, RELOCATING),
+                        shard("logs", "n2", null, false, STARTED)),
+                createRouting("other",
+                        shard("other", "n1", null, true, STARTED)));
+        changes = IndexDiff.diff(new ClusterChangedEvent("reroute", state3,
+                state2));
+        assertEquals(1, changes.size());
+        change = changes.get(0);
+        assertFalse(change.healthChanged());
+        assertEquals(1, change.shardsRelocating());
+        assertEquals(0, change.shardsRelocated());
+
+        // the relocation finished, and n2 left
+        final ClusterState state4 = createState(
+                metaData,
+                createRouting("logs",
+                        shard("logs", "n3", null, true, STARTED),
+                        shard("logs", null, null, false, UNASSIGNED)),
+                createRouting("other",
+                        shard("other", "n1", null, true, STARTED)));
+        changes = IndexDiff.diff(new ClusterChangedEvent("node_left", state4,
+                state3));
+        assertEquals(1, changes.size());
+        change = changes.get(0);
+        assertEquals("yellow", change.health());
+        assertEquals(0, change.shardsStarted());
+        assertEquals(1, change.shardsRelocated());
+        assertEquals(1, change.shardsFailed());
+
+        // the primary of other failed
+        final ClusterState state5 = createState(
+                metaData,
+                createRouting("logs",
+                        shard("logs", "n3", null, true, STARTED),
+                        shard("logs", null, null, false, UNASSIGNED)),
+                createRouting("other",
+                        shard("other", null, null, true, UNASSIGNED)));
+        changes = IndexDiff.diff(new ClusterChangedEvent("shard-failed",
+                state5, state4));
+        assertEquals(1, changes.size());
+        change = changes.get(0);
+        assertEquals("other", change.index());
+        assertEquals("red", change.health());
+        assertEquals(1, change.shardsFailed());
+
+        // no changes for the same routing table
+        assertTrue(IndexDiff.diff(
+                new ClusterChangedEvent("test", state5, state5)).isEmpty());
+    }
+
+    public void test_metaDataChanges() throws Exception {
+        final IndexMetaData logs = createIndex("logs", null).build();
+        final ClusterState state1 = createState(MetaData.builder()
+                .put(logs, false).put(createIndex("old", null)).build());
+
+        final ClusterState state2 = createState(MetaData.builder()
+                .put(createIndex("logs", "{\"doc\":{}}"))
+                .put(createIndex("new", null)).build());
+        final List<IndexChange> changes = IndexDiff
+                .diff(new ClusterChangedEvent("put-mapping", state2, state1));
+        assertEquals(3, changes.size());
+        IndexChange logsChange = null;
+        IndexChange newChange = null;
+        IndexChange oldChange = null;
+        for (final IndexChange change : changes) {
+            if ("logs".equals(change.index())) {
+                logsChange = change;
+            } else if ("new".equals(change.index())) {
+                newChange = change;
+            } else if ("old".equals(change.index())) {
+                oldChange = change;
+            }
+        }
+        assertTrue(logsChange.mappingsChanged());
+        assertFalse(logsChange.settingsChanged());
+        assertFalse(logsChange.created());
+        assertTrue(newChange.created());
+        assertTrue(oldChange.deleted());
+
+        // the same instance is not compared
+        final ClusterState state3 = createState(MetaData.builder()
+                .put(logs, false).build());
+        final ClusterState state4 = createState(MetaData.builder()
+                .put(logs, false).build());
+        assertTrue(IndexDiff.diff(
+                new ClusterChangedEvent("test", state4, state3)).isEmpty());
+    }
+
+    private static IndexMetaData.Builder createIndex(final String index,
+            final String mapping) throws Exception {
+        final IndexMetaData.Builder builder = IndexMetaData.builder(index)
+                .settings(
+                        ImmutableSettings
+                                .settingsBuilder()
+                                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+                                .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS,
+                                        1)
+                                .put(IndexMetaData.SETTING_VERSION_CREATED,
+                                        Version.CURRENT));
+        if (mapping != null) {
+            builder.putMapping("doc", mapping);
+        }
+        return builder;
+    }
+
+    private static ClusterState createState(final MetaData metaData,
+            final IndexRoutingTable... indexRoutingTables) {
+        final RoutingTable.Builder builder = RoutingTable.builder();
+        for (final IndexRoutingTable indexRoutingTable : indexRoutingTables) {
+            builder.add(indexRoutingTable);
+        }
+        return ClusterState.builder(new ClusterName("test"))
+                .metaData(metaData).routingTable(builder.build()).build();
+    }
+
+    // a new instance for each call like a rebuilt routing table
+    private static IndexRoutingTable createRouting(final String index,
+            final ImmutableShardRouting... shards) {
+        final IndexShardRoutingTable.Builder builder = new IndexShardRoutingTable.Builder(
+                new ShardId(index, 0), false);
+        for (final ImmutableShardRouting shard : shards) {
+            builder.addShard(shard);
+        }
+        return IndexRoutingTable.builder(index).addIndexShard(builder.build())
+                .build();
+    }
+
+    private static ImmutableShardRouting shard(final String index,
+            final String nodeId, final String relocatingNodeId,
+            final boolean primary, final ShardRoutingState state) {
+        return new ImmutableShardRouting(index, 0, nodeId, relocatingNodeId,
+                primary, state, 1);
+    }
+}
@@ -0,0 +1,49 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+
+public class LatencyHistogramTest extends TestCase {
+
+    public void test_percentile() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileMicros(50));
+
+        for (int i = 0; i < 98; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertEquals(100, histogram.count());
+        assertEquals(50000, histogram.maxMicros());
+        // 100 micros is in [64, 128)
+        assertEquals(127, histogram.percentileMicros(50));
+        // 10 millis is in [8192, 16384)
+        assertEquals(16383, histogram.percentileMicros(99));
+        assertEquals(50000, histogram.percentileMicros(100));
+    }
+
+    public void test_mergeAndStream() throws Exception {
+        final LatencyHistogram histogram1 = new LatencyHistogram();
+        histogram1.record(TimeUnit.MICROSECONDS.toNanos(10));
+        final LatencyHistogram histogram2 = new LatencyHistogram();
+        histogram2.record(TimeUnit.MICROSECONDS.toNanos(1000));
+        histogram2.record(TimeUnit.MICROSECONDS.toNanos(2000));
+
+        final BytesStreamOutput out = new BytesStreamOutput();
+        histogram2.writeTo(out);
+        final LatencyHistogram copy = LatencyHistogram
+                .readLatencyHistogram(new BytesStreamInput(out.bytes()));
+        histogram1.merge(copy);
+
+        assertEquals(3, histogram1.count());
+        assertEquals(3010, histogram1.sumMicros());
+        assertEquals(2000, histogram1.maxMicros());
+        assertEquals(1023, histogram1.percentileMicros(50));
+    }
+}
@@ -0,0 +1,53 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+
+// keeps scheduled tasks until a test runs them, so no test waits for a delay
+class ManualThreadPool extends ThreadPool {
+
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    private final List<TimeValue> delays = new ArrayList<TimeValue>();
+
+    ManualThreadPool(final String name) {
+        super(ImmutableSettings.settingsBuilder().put("name", name).build(),
+                null);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(final TimeValue delay,
+            final String name, final Runnable command) {
+        synchronized (tasks) {
+            tasks.add(command);
+            delays.add(delay);
+        }
+        return null;
+    }
+
+    // delays of the tasks not run yet
+    List<TimeValue> delays() {
+        synchronized (tasks) {
+            return new ArrayList<TimeValue>(delays);
+        }
+    }
+
+    // runs the tasks scheduled so far on the calling thread
+    int runScheduled() {
+        final List<Runnable> list;
+        synchronized (tasks) {
+            list = new ArrayList<Runnable>(tasks);
+            tasks.clear();
+            delays.clear();
+        }
+        for (final Runnable task : list) {
+            task.run();
+        }
+        return list.size();
+    }
+}
@@ -0,0 +1,147 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.script.CompiledScript;
+import org.elasticsearch.script.ScriptEngineService;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.watcher.ResourceWatcherService;
+
+public class ScriptCacheTest extends TestCase {
+
+    private ThreadPool threadPool;
+
+    private CountingScriptService scriptService;
+
+    @Override
+    protected void setUp() throws Exception {
+        final Settings settings = ImmutableSettings.settingsBuilder()
+                .put("name", "ScriptCacheTest")
+                .put("script.auto_reload_enabled", false).build();
+        threadPool = new ThreadPool(settings, null);
+        scriptService = new CountingScriptService(settings, threadPool);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        threadPool.shutdownNow();
+    }
+
+    private static Hook createHook(final String id, final long version,
+            final String scriptType) {
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("lang", "groovy");
+        source.put("script", id);
+        source.put("script_type", scriptType);
+        return new Hook(id, "all", version, source);
+    }
+
+    private ScriptCache createCache(final int maxSize) {
+        return new ScriptCache(ImmutableSettings.settingsBuilder()
+                .put("cluster.eventhook.script.cache.max_size", maxSize)
+                .build(), scriptService);
+    }
+
+    public void test_version() throws Exception {
+        final ScriptCache scriptCache = createCache(10);
+        final Hook hook1 = createHook("h1", 1, "inline");
+
+        final CompiledScript compiled = scriptCache.compile(hook1);
+        assertSame(compiled, scriptCache.compile(hook1));
+        assertEquals(1, scriptService.compileCount.get());
+        assertEquals(1, scriptCache.missCount());
+        assertEquals(1, scriptCache.hitCount());
+
+        // an updated hook is compiled again and replaces the old entry
+        final Hook hook2 = createHook("h1", 2, "inline");
+        assertNotSame(compiled, scriptCache.compile(hook2));
+        assertEquals(2, scriptService.compileCount.get());
+        assertEquals(2, scriptCache.missCount());
+        assertEquals(1, scriptCache.size());
+        scriptCache.compile(hook2);
+        assertEquals(2, scriptCache.hitCount());
+        assertEquals(0, scriptCache.evictionCount());
+
+        scriptCache.clear();
+        assertEquals(0, scriptCache.size());
+        // cleared entries are not evictions
+        assertEquals(0, scriptCache.evictionCount());
+    }
+
+    public void test_eviction() throws Exception {
+        final ScriptCache scriptCache = createCache(2);
+        final Hook hook1 = createHook("h1", 1, "inline");
+        final Hook hook2 = createHook("h2", 1, "inline");
+        final Hook hook3 = createHook("h3", 1, "inline");
+
+        scriptCache.compile(hook1);
+        scriptCache.compile(hook2);
+        // h2 is the least recently used
+        scriptCache.compile(hook1);
+        scriptCache.compile(hook3);
+        assertEquals(2, scriptCache.size());
+        assertEquals(1, scriptCache.evictionCount());
+
+        scriptCache.compile(hook1);
+        assertEquals(2, scriptCache.hitCount());
+        scriptCache.compile(hook2);
+        assertEquals(4, scriptCache.missCount());
+        assertEquals(2, scriptCache.evictionCount());
+        assertEquals(4, scriptService.compileCount.get());
+    }
+
+    public void test_warm() throws Exception {
+        final ScriptCache scriptCache = createCache(10);
+        final Hook hook = createHook("h1", 1, "inline");
+
+        assertTrue(scriptCache.warm(hook));
+        assertFalse(scriptCache.warm(hook));
+        assertEquals(0, scriptCache.missCount());
+        assertEquals(0, scriptCache.hitCount());
+
+        scriptCache.compile(hook);
+        assertEquals(1, scriptCache.hitCount());
+        assertEquals(1, scriptService.compileCount.get());
+    }
+
+    public void test_notInline() throws Exception {
+        final ScriptCache scriptCache = createCache(10);
+        final Hook hook = createHook("h1", 1, "file");
+
+        // resolved by ScriptService on each call
+        scriptCache.compile(hook);
+        scriptCache.compile(hook);
+        assertEquals(2, scriptService.compileCount.get());
+        assertFalse(scriptCache.warm(hook));
+        assertEquals(0, scriptCache.size());
+        assertEquals(0, scriptCache.hitCount());
+        assertEquals(0, scriptCache.missCount());
+    }
+
+    private static class CountingScriptService extends ScriptService {
+        final AtomicInteger compileCount = new AtomicInteger();
+
+        CountingScriptService(final Settings settings,
+                final ThreadPool threadPool) {
+            super(settings, new Environment(settings), Collections
+                    .<ScriptEngineService> emptySet(),
+                    new ResourceWatcherService(settings, threadPool));
+        }
+
+        @Override
+        public CompiledScript compile(final String lang, final String script,
+                final ScriptType scriptType) {
+            compileCount.incrementAndGet();
+            return new CompiledScript(lang, new Object());
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.codelibs.elasticsearch.eventhook.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class WebhookSenderTest extends TestCase {
+
+    private ThreadPool threadPool;
+
+    private WebhookSender webhookSender;
+
+    private HttpServer server;
+
+    private StubHandler handler;
+
+    @Override
+    protected void setUp() throws Exception {
+        handler = new StubHandler();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/hook", handler);
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (webhookSender != null) {
+            webhookSender.close();
+        }
+        if (threadPool != null) {
+            threadPool.shutdownNow();
+        }
+        server.stop(0);
+    }
+
+    private void createSender(final Settings settings) {
+        threadPool = new ThreadPool(ImmutableSettings.settingsBuilder()
+                .put("name", "WebhookSenderTest").build(), null);
+        webhookSender = new WebhookSender(settings, threadPool);
+    }
+
+    private Map<String, Object> createWebhookSource(final int batchSize,
+            final String flushInterval) {
+        final Map<String, Object> map = new HashMap<String, Object>();
+        map.put("url", "http://127.0.0.1:" + server.getAddress().getPort()
+                + "/hook");
+        map.put("batch_size", batchSize);
+        map.put("flush_interval", flushInterval);
+        map.put("headers", Collections.singletonMap("X-Test", "eventhook"));
+        return map;
+    }
+
+    private Webhook createWebhook(final int batchSize,
+            final String flushInterval) {
+        return Webhook.parse(createWebhookSource(batchSize, flushInterval));
+    }
+
+    private Hook createHook(final String id, final int batchSize,
+            final String flushInterval) {
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("webhook", createWebhookSource(batchSize, flushInterval));
+        return new Hook(id, "all", 1, source);
+    }
+
+    private static BytesArray payload(final int n) {
+        return new BytesArray("{\"n\":" + n + "}");
+    }
+
+    private void waitFor(final long sent, final long failed) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            if (webhookSender.sentCount() >= sent
+                    && webhookSender.failedCount() >= failed) {
+                return;
+            }
+            Thread.sleep(100L);
+        }
+        fail("sent: " + webhookSender.sentCount() + ", failed: "
+                + webhookSender.failedCount());
+    }
+
+    public void test_batch() throws Exception {
+        createSender(ImmutableSettings.EMPTY);
+        final Webhook webhook = createWebhook(3, "200ms");
+        for (int i = 0; i < 7; i++) {
+            assertTrue(webhookSender.offer(webhook, payload(i)));
+        }
+        waitFor(7, 0);
+
+        // 2 full batches and the rest after flush_interval
+        assertEquals(7, webhookSender.sentCount());
+        assertEquals(3, webhookSender.requestCount());
+        assertEquals(0, webhookSender.queueSize());
+        assertEquals(1, webhookSender.endpointCount());
+        assertEquals(3, handler.bodies.size());
+        final List<Integer> events = new ArrayList<Integer>();
+        for (final Map<String, Object> body : handler.bodies) {
+            for (final Object event : (List<?>) body.get("events")) {
+                events.add(((Number) ((Map<?, ?>) event).get("n")).intValue());
+            }
+        }
+        Collections.sort(events);
+        assertEquals("[0, 1, 2, 3, 4, 5, 6]", events.toString());
+        assertEquals("eventhook", handler.header);
+    }
+
+    public void test_endpoint() throws Exception {
+        createSender(ImmutableSettings.EMPTY);
+        final Webhook webhook1 = createWebhook(1, "1m");
+        final Webhook webhook2 = createWebhook(100, "1m");
+        assertEquals(webhook1, createWebhook(1, "1m"));
+        assertFalse(webhook1.equals(webhook2));
+
+        // the same url with other batch settings does not share a queue
+        assertTrue(webhookSender.offer(webhook2, payload(1)));
+        assertTrue(webhookSender.offer(createWebhook(1, "1m"), payload(2)));
+        assertTrue(webhookSender.offer(webhook1, payload(3)));
+        waitFor(2, 0);
+        assertEquals(2, webhookSender.endpointCount());
+        assertEquals(1, webhookSender.queueSize());
+        assertEquals(2, webhookSender.requestCount());
+    }
+
+    public void test_retain() throws Exception {
+        createSender(ImmutableSettings.EMPTY);
+        final Hook kept = createHook("kept", 100, "1m");
+        final Hook deleted = createHook("deleted", 1, "200ms");
+        assertTrue(webhookSender.offer(kept.webhook(), payload(1)));
+        assertTrue(webhookSender.offer(deleted.webhook(), payload(2)));
+        assertEquals(2, webhookSender.endpointCount());
+
+        webhookSender.retain(new HookSet(Arrays.asList(kept)));
+        assertEquals(1, webhookSender.endpointCount());
+        // a payload queued for the deleted hook is still sent
+        waitFor(1, 0);
+        assertEquals(1, webhookSender.sentCount());
+        assertEquals(1, webhookSender.queueSize());
+    }
+
+    public void test_retry() throws Exception {
+        createSender(ImmutableSettings.settingsBuilder()
+                .put("cluster.eventhook.webhook.retry_delay", "50ms").build());
+        handler.failures.set(2);
+        final Webhook webhook = createWebhook(2, "100ms");
+        assertTrue(webhookSender.offer(webhook, payload(1)));
+        assertTrue(webhookSender.offer(webhook, payload(2)));
+        waitFor(2, 0);
+        assertEquals(2, webhookSender.retryCount());
+        assertEquals(3, webhookSender.requestCount());
+        assertEquals(0, webhookSender.failedCount());
+
+        // gives up after max_retries
+        handler.failures.set(10);
+        assertTrue(webhookSender.offer(webhook, payload(3)));
+        waitFor(2, 1);
+        assertEquals(2, webhookSender.sentCount());
+        assertEquals(5, webhookSender.retryCount());
+    }
+
+    public void test_drop() throws Exception {
+        createSender(ImmutableSettings.settingsBuilder()
+                .put("cluster.eventhook.webhook.queue_size", 2).build());
+        final Webhook webhook = createWebhook(100, "1m");
+        assertTrue(webhookSender.offer(webhook, payload(1)));
+        assertTrue(webhookSender.offer(webhook, payload(2)));
+        assertFalse(webhookSender.offer(webhook, payload(3)));
+        assertFalse(webhookSender.offer(webhook, payload(4)));
+        assertEquals(2, webhookSender.droppedCount());
+        assertEquals(2, webhookSender.queueSize());
+
+        webhookSender.flushAll();
+        waitFor(2, 0);
+        assertEquals(0, webhookSender.queueSize());
+        assertTrue(webhookSender.offer(webhook, payload(5)));
+    }
+
+    public void test_retryDelay() throws Exception {
+        createSender(ImmutableSettings.settingsBuilder()
+                .put("cluster.eventhook.webhook.retry_delay", "1s")
+                .put("cluster.eventhook.webhook.max_retry_delay", "5s")
+                .build());
+        assertEquals(1000, webhookSender.retryDelay(0).millis());
+        assertEquals(2000, webhookSender.retryDelay(1).millis());
+        assertEquals(4000, webhookSender.retryDelay(2).millis());
+        assertEquals(5000, webhookSender.retryDelay(3).millis());
+        assertEquals(5000, webhookSender.retryDelay(100).millis());
+    }
+
+    public void test_parse() throws Exception {
+        final Map<String, Object> map = new HashMap<String, Object>();
+        map.put("url", "https://example.com/hook?token=a");
+        final Webhook webhook = Webhook.parse(map);
+        assertTrue(webhook.secure());
+        assertEquals(443, webhook.port());
+        assertEquals(100, webhook.batchSize());
+        assertEquals(1000, webhook.flushInterval().millis());
+
+        map.put("url", "ftp://example.com/");
+        try {
+            Webhook.parse(map);
+            fail();
+        } catch (final ElasticsearchIllegalArgumentException e) {
+            // expected
+        }
+        map.put("url", "http://example.com/");
+        map.put("batch_size", 0);
+        try {
+            Webhook.parse(map);
+            fail();
+        } catch (final ElasticsearchIllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static class StubHandler implements HttpHandler {
+        final List<Map<String, Object>> bodies = Collections
+                .synchronizedList(new ArrayList<Map<String, Object>>());
+
+        final AtomicInteger failures = new AtomicInteger();
+
+        volatile String header;
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            final InputStream in = exchange.getRequestBody();
+            final byte[] body = Streams.copyToByteArray(in);
+            header = exchange.getRequestHeaders().getFirst("X-Test");
+            final int status;
+            if (failures.getAndDecrement() > 0) {
+                status = 503;
+            } else {
+                failures.set(0);
+                bodies.add(XContentHelper.convertToMap(body, false).v2());
+                status = 200;
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        }
+    }
+}